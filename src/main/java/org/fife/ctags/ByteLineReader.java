@@ -0,0 +1,115 @@
+package org.fife.ctags;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+
+/**
+ * Reads the lines of a stream as byte arrays, stripping <code>"\n"</code>
+ * or <code>"\r\n"</code> terminators.  Tag files are compared and sorted
+ * byte-wise, so tools that rewrite them work with the raw bytes rather than
+ * decoded strings.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+final class ByteLineReader {
+
+	private InputStream in;
+	private byte[] buf;
+	private int pos;
+	private int end;
+	private byte[] line;			/* the line last read */
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in The stream to read.
+	 */
+	ByteLineReader(InputStream in) {
+		this.in = in;
+		buf = new byte[8192];
+	}
+
+
+	/**
+	 * Closes the underlying stream.
+	 *
+	 * @throws IOException If an I/O error occurs.
+	 */
+	void close() throws IOException {
+		in.close();
+	}
+
+
+	/**
+	 * Returns the line last read.
+	 *
+	 * @return The line, without its terminator, or <code>null</code> at
+	 *         the end of the stream.
+	 * @see #next()
+	 */
+	byte[] getLine() {
+		return line;
+	}
+
+
+	/**
+	 * Reads the next line.
+	 *
+	 * @return Whether a line was read, i.e. <code>false</code> at the end of
+	 *         the stream.
+	 * @throws IOException If an I/O error occurs.
+	 * @see #getLine()
+	 */
+	boolean next() throws IOException {
+
+		int start = pos;
+		while (true) {
+			for (int i=start; i<end; i++) {
+				if (buf[i]=='\n') {
+					setLine(pos, i);
+					pos = i + 1;
+					return true;
+				}
+			}
+			start = end;
+
+			// Make room for more input, keeping the partial line.
+			if (pos>0) {
+				System.arraycopy(buf, pos, buf, 0, end-pos);
+				start -= pos;
+				end -= pos;
+				pos = 0;
+			}
+			else if (end==buf.length) {
+				buf = Arrays.copyOf(buf, buf.length*2);
+			}
+
+			int count = in.read(buf, end, buf.length-end);
+			if (count==-1) {
+				if (pos==end) {
+					line = null;
+					return false;
+				}
+				setLine(pos, end); // Last line has no terminator
+				pos = end;
+				return true;
+			}
+			end += count;
+		}
+
+	}
+
+
+	private void setLine(int start, int lineEnd) {
+		if (lineEnd>start && buf[lineEnd-1]=='\r') {
+			lineEnd--;
+		}
+		line = Arrays.copyOfRange(buf, start, lineEnd);
+	}
+
+
+}
\ No newline at end of file
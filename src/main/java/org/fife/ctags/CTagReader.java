@@ -1,8 +1,11 @@
 package org.fife.ctags;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -51,6 +54,24 @@ public class CTagReader {
 	private String line;			/* last line read */
 	private String name;			/* name of tag in last line read */
 
+	// Used instead of fp when the file is memory-mapped.
+	private boolean memoryMapped;		/* map the next file opened? */
+	private TagFile tagFile;		/* the mapped file, or null */
+	private TagCursor cursor;		/* the search over tagFile */
+
+	private boolean useLineIndex;		/* use a line index for the next file opened? */
+	private TagLineIndex lineIndex;	/* line index of the file, or null */
+	private int searchHash;			/* hash of searchName, for hashed scans */
+	private int searchLine;			/* next line to check in a hashed scan, or -1 */
+	private String filePath;		/* the file opened, for building foldIndex */
+	private TagFoldIndex foldIndex;	/* fold-sorted index, built on first use */
+	private int foldPos;			/* next position to check in foldIndex, or -1 */
+
+	private TagQueryCache queryCache;	/* may be null */
+	private List<String> cachedLines;	/* lines of the last cached search, or null */
+	private int cachedPos;			/* next line to return from cachedLines */
+	private boolean cachedLive;		/* more matches follow cachedLines? */
+
 	// Was "search" struct.
 //	private long searchPos;			/* file position of last match for tag */
 	private String searchName;		/* name of tag last searched for */
@@ -89,10 +110,26 @@ public class CTagReader {
 		searchName = name;
 		searchPartial = (options & TAG_PARTIALMATCH) != 0;
 		searchIgnoreCase = (options & TAG_IGNORECASE) != 0;
+		searchLine = -1;
+		foldPos = -1;
 		//size = fp.length();
 		fp.seek(0);	// Start over at the beginning for the searches below.
 		if ((sortMethod == TAG_SORTED && !searchIgnoreCase) || (sortMethod == TAG_FOLDSORTED && searchIgnoreCase))
-			result = findBinary();
+			result = lineIndex!=null ? findBinaryIndexed() : findBinary();
+		else if (lineIndex!=null && !searchPartial && !searchIgnoreCase) {
+			// Lines are decoded one byte per char, so this is the same
+			// as the line's UTF-8 bytes.
+			searchHash = TagLineIndex.hashName(name.getBytes("ISO-8859-1"));
+			searchLine = 0;
+			result = findHashed();
+		}
+		else if (lineIndex!=null) {
+			if (foldIndex==null) {
+				foldIndex = TagFoldIndex.create(filePath, lineIndex);
+			}
+			foldPos = findFoldStart();
+			result = findFolded();
+		}
 		else
 			result = findSequential();
 
@@ -149,6 +186,100 @@ public class CTagReader {
 	}
 
 
+	/**
+	 * Searches for a name, answering from the query cache if possible.  On
+	 * a miss, the matching lines are collected and cached, unless there are
+	 * too many of them, in which case the rest are found as usual by
+	 * subsequent calls to <code>tagsFindNext</code>.
+	 *
+	 * @param entry The entry to populate with the first match.
+	 * @param name The name to search for.
+	 * @param options The search options.
+	 * @return Whether a match was found.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private boolean findCached(TagEntry entry, String name, int options)
+							throws IOException {
+
+		File file = new File(tagFile!=null ? tagFile.getPath() : filePath);
+		queryCache.validate(file.length(), file.lastModified());
+
+		List<String> lines = queryCache.get(name, options);
+		cachedLive = false;
+		if (lines==null) {
+			lines = new ArrayList<String>();
+			boolean found = cursor!=null ? cursor.find(null, name, options) :
+									find(null, name, options);
+			while (found) {
+				lines.add(cursor!=null ? cursor.getLine() : line);
+				if (lines.size()>TagQueryCache.MAX_RESULTS) {
+					break;
+				}
+				found = cursor!=null ? cursor.findNext(null) : findNext(null);
+			}
+			if (found) {
+				cachedLive = true; // Too many to cache
+			}
+			else {
+				queryCache.put(name, options, lines);
+			}
+		}
+
+		cachedLines = lines;
+		cachedPos = 0;
+		return findNextCached(entry);
+
+	}
+
+
+	/**
+	 * Returns the next match of a search started by
+	 * {@link #findCached(TagEntry, String, int)}.
+	 *
+	 * @param entry The entry to populate.
+	 * @return Whether another match was found.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private boolean findNextCached(TagEntry entry) throws IOException {
+		if (cachedPos<cachedLines.size()) {
+			if (entry!=null)
+				entry.parseTagLine(cachedLines.get(cachedPos));
+			cachedPos++;
+			return true;
+		}
+		if (cachedLive)
+			return cursor!=null ? cursor.findNext(entry) : findNext(entry);
+		return false;
+	}
+
+
+	/**
+	 * Performs a binary search over the lines in the line index.  Only one
+	 * seek and line read is done per probe.
+	 *
+	 * @return Whether a match was found.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private boolean findBinaryIndexed() throws IOException {
+		int low = 0;
+		int high = lineIndex.getLineCount();
+		while (low<high) {
+			int mid = (low + high) >>> 1;
+			fp.seek(lineIndex.getLineOffset(mid));
+			readTagLine();
+			if (nameComparison()>0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if (low<lineIndex.getLineCount()) {
+			fp.seek(lineIndex.getLineOffset(low));
+			return readTagLine() && nameComparison()==0;
+		}
+		return false;
+	}
+
+
 	private boolean findFirstMatchBefore() throws IOException {
 
 		boolean result = false;
@@ -196,7 +327,12 @@ public class CTagReader {
 				result = false;
 		}
 		else {
-			result = findSequential();
+			if (searchLine>-1)
+				result = findHashed();
+			else if (foldPos>-1)
+				result = findFolded();
+			else
+				result = findSequential();
 			if (result == true  &&  entry != null)
 				entry.parseTagLine(line);
 		}
@@ -205,6 +341,74 @@ public class CTagReader {
 
 	}
 
+	/**
+	 * Returns the position in the fold index of the first line whose
+	 * case-folded name is not less than the name searched for.
+	 *
+	 * @return The position.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private int findFoldStart() throws IOException {
+		int low = 0;
+		int high = foldIndex.size();
+		while (low<high) {
+			int mid = (low + high) >>> 1;
+			fp.seek(lineIndex.getLineOffset(foldIndex.getLine(mid)));
+			readTagLine();
+			if (nameComparison(true)>0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+
+	/**
+	 * Walks the fold index from <code>foldPos</code> to the next match.
+	 * Lines that match ignoring case are adjacent in the fold index, so the
+	 * walk stops at the first line that does not.  Matches are returned in
+	 * fold-sorted order, not file order.
+	 *
+	 * @return Whether a match was found.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private boolean findFolded() throws IOException {
+		int count = foldIndex.size();
+		while (foldPos<count) {
+			fp.seek(lineIndex.getLineOffset(foldIndex.getLine(foldPos++)));
+			if (!readTagLine() || nameComparison(true)!=0)
+				break;
+			if (searchIgnoreCase || nameComparison()==0)
+				return true;
+		}
+		foldPos = count;
+		return false;
+	}
+
+
+	/**
+	 * Scans the name hashes in the line index for the next exact match,
+	 * starting at <code>searchLine</code>.  Lines are only read when their
+	 * hashes match.
+	 *
+	 * @return Whether a match was found.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private boolean findHashed() throws IOException {
+		int count = lineIndex.getLineCount();
+		while (searchLine<count) {
+			int i = searchLine++;
+			if (lineIndex.getNameHash(i)==searchHash) {
+				fp.seek(lineIndex.getLineOffset(i));
+				if (readTagLine() && nameComparison()==0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+
 	private boolean findSequential() throws IOException {
 
 		boolean result = false;
@@ -221,25 +425,42 @@ public class CTagReader {
 
 
 	private int nameComparison() {
+		return nameComparison(searchIgnoreCase);
+	}
 
-		int result;
 
-		if (searchIgnoreCase) {
-			if (searchPartial)
-				//result = strnuppercmp (search.name, name,
-				result = searchName.compareToIgnoreCase(name.substring(0,searchName.length()));
-			else
-				result = searchName.compareToIgnoreCase(name);
-		}
-		else {
-			if (searchPartial)
-				//result = strncmp (search.name, name, search.nameLength);
-				result = searchName.compareTo(name.substring(0,searchName.length()));
-			else
-				result = searchName.compareTo(name);
+	/**
+	 * Compares the name searched for to the name of the last line read, in
+	 * the manner of <code>strcmp()</code>/<code>strncmp()</code> or, when
+	 * ignoring case, readtags.c's <code>struppercmp()</code>/
+	 * <code>strnuppercmp()</code>.  Case is folded with ASCII
+	 * <code>toupper()</code>, as ctags does when fold-sorting a file, so
+	 * that a binary search agrees with the file's order for names with
+	 * characters such as <code>'_'</code>.
+	 *
+	 * @param ignoreCase Whether to ignore case.
+	 * @return The comparison result.
+	 */
+	private int nameComparison(boolean ignoreCase) {
+
+		String name = this.name;
+		int len = searchName.length();
+		int nameLen = name.length();
+
+		for (int i=0; i<len; i++) {
+			if (i==nameLen)
+				return 1; // strncmp() treats a shorter name as less.
+			int s = searchName.charAt(i);
+			int n = name.charAt(i);
+			if (ignoreCase) {
+				s = MappedTagBuffer.toUpper(s);
+				n = MappedTagBuffer.toUpper(n);
+			}
+			if (s!=n)
+				return s - n;
 		}
 
-		return result;
+		return searchPartial || nameLen==len ? 0 : -1;
 
 	}
 
@@ -294,23 +515,27 @@ public class CTagReader {
 	 * etc.).
 	 *
 	 * param file The tag file from which to get the pseudotag information.
-	 * @param info The structure in which to place the information.
+	 * @param info The structure in which to place the information.  This
+	 *        may be <code>null</code>.
 	 */
 	private void readPseudoTags(TagFileInfo info) throws IOException {
 
 		long startOfLine;
 		final int prefixLength = PseudoTagPrefix.length();
 
-		if (info==null)
-			return;
+		// The sort method is needed for searching even if info is null.
+		format = 1;
+		sortMethod = TAG_UNSORTED;
 
 		// Initialize the info structure.
-		info.format	= 1;
-		info.sort		= TAG_UNSORTED;
-		info.author	= null;
-		info.name		= null;
-		info.url		= null;
-		info.version	= null;
+		if (info!=null) {
+			info.format	= 1;
+			info.sort		= TAG_UNSORTED;
+			info.author	= null;
+			info.name		= null;
+			info.url		= null;
+			info.version	= null;
+		}
 
 		// Keep reading in lines until a non-pesudotag line is read.
 		while (true) {
@@ -328,7 +553,7 @@ public class CTagReader {
 			key = entry.name.substring(prefixLength);
 			value = entry.file;
 			if (key.equals("TAG_FILE_SORTED"))
-				sortMethod = Integer.parseInt(value);
+				sortMethod = toSortMethod(value);
 			else if (key.equals("TAG_FILE_FORMAT"))
 				format = Integer.parseInt(value);
 			else if (key.equals("TAG_PROGRAM_AUTHOR"))
@@ -340,12 +565,14 @@ public class CTagReader {
 			else if (key.equals("TAG_PROGRAM_VERSION"))
 				programVersion = value;
 
-			info.format = format;
-			info.sort = sortMethod;
-			info.author = programAuthor;
-			info.name = programName;
-			info.url = programUrl;
-			info.version = programVersion;
+			if (info!=null) {
+				info.format = format;
+				info.sort = sortMethod;
+				info.author = programAuthor;
+				info.name = programName;
+				info.url = programUrl;
+				info.version = programVersion;
+			}
 
 		} // End of while (true).
 
@@ -366,7 +593,11 @@ public class CTagReader {
 	 */
 	private boolean readTagLine() throws IOException {
 
-		line = fp.readLine();
+		// Skip empty lines, as readtags.c does.
+		do {
+			pos = fp.getFilePointer();
+			line = fp.readLine();
+		} while (line!=null && line.length()==0);
 
 		// Copy the name from the line into the main name field.
 		if (line!=null) {
@@ -395,7 +626,7 @@ public class CTagReader {
 
 		try {
 
-			fp.seek(fp.getFilePointer()+pos); // May throw IOException if fails.
+			fp.seek(pos); // May throw IOException if fails.
 
 			result = readTagLine();		/* Read probable partial line. */
 			if (pos>0 && result)
@@ -408,7 +639,113 @@ public class CTagReader {
 	}
 
 
+	/**
+	 * Converts the value of a <code>!_TAG_FILE_SORTED</code> pseudo-tag
+	 * (0, 1 or 2) into one of the <code>TAG_*SORTED</code> constants.
+	 *
+	 * @param value The value of the pseudo-tag.
+	 * @return The sort method.
+	 */
+	static int toSortMethod(String value) {
+		if ("1".equals(value))
+			return TAG_SORTED;
+		else if ("2".equals(value))
+			return TAG_FOLDSORTED;
+		return TAG_UNSORTED;
+	}
+
+
 /************************ EXTERNAL INTERFACE *********************************/
+	/**
+	 * Returns whether ctag files are memory-mapped when opened.
+	 *
+	 * @return Whether ctag files are memory-mapped.
+	 * @see #setMemoryMapped(boolean)
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+
+	/**
+	 * Returns whether a line index is used for ctag files.
+	 *
+	 * @return Whether a line index is used.
+	 * @see #setUseLineIndex(boolean)
+	 */
+	public boolean getUseLineIndex() {
+		return useLineIndex;
+	}
+
+
+	/**
+	 * Returns the cache used for <code>tagsFind</code> results.
+	 *
+	 * @return The cache, or <code>null</code> if none is used.
+	 * @see #setQueryCache(TagQueryCache)
+	 */
+	public TagQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+
+	/**
+	 * Sets whether ctag files should be memory-mapped when opened.  A
+	 * memory-mapped file is searched by comparing names directly against
+	 * the file's bytes, rather than reading it a line at a time, which
+	 * is much faster for large files.  Mapped files are decoded as UTF-8,
+	 * while other files are decoded one byte per character.  A reader in
+	 * this mode is simply a {@link TagFile} with a single cursor.<p>
+	 *
+	 * This setting takes effect the next time <code>tagsOpen</code> is
+	 * called.
+	 *
+	 * @param mapped Whether to memory-map ctag files.
+	 * @see #isMemoryMapped()
+	 */
+	public void setMemoryMapped(boolean mapped) {
+		memoryMapped = mapped;
+	}
+
+
+	/**
+	 * Sets the cache used for <code>tagsFind</code> results.  Cached
+	 * results are discarded when the tag file changes or another file is
+	 * opened, so a cache should not be shared by readers of different
+	 * files.
+	 *
+	 * @param cache The cache, or <code>null</code> for none.
+	 * @see #getQueryCache()
+	 */
+	public void setQueryCache(TagQueryCache cache) {
+		queryCache = cache;
+		cachedLines = null;
+	}
+
+
+	/**
+	 * Sets whether a {@link TagLineIndex} should be used for ctag files.
+	 * If this is <code>true</code>, the index is read from the file's
+	 * sidecar, or built and written to it if the sidecar is missing or
+	 * out of date.  Binary searches then search over lines rather than
+	 * byte offsets, with a single seek per probe, and exact-match searches
+	 * that cannot use a binary search compare name hashes rather than
+	 * reading every line.  Other searches that the file's sort order does
+	 * not support, such as case-insensitive searches of a case-sensitively
+	 * sorted file, binary search a fold-sorted index built on first use.<p>
+	 *
+	 * This setting takes effect the next time <code>tagsOpen</code> is
+	 * called.
+	 *
+	 * @param use Whether to use a line index.
+	 * @see #getUseLineIndex()
+	 */
+	public void setUseLineIndex(boolean use) {
+		useLineIndex = use;
+	}
+
+
+
 	/**
 	 * Sets the ctag file to be read by this reader.
 	 *
@@ -420,6 +757,34 @@ public class CTagReader {
 	 */
 	public void tagsOpen(String filePath, TagFileInfo info) throws FileNotFoundException,
 														IOException {
+		cachedLines = null;
+		if (queryCache!=null)
+			queryCache.clear();	// Results are for another file
+		if (memoryMapped) {
+			tagFile = TagFile.open(filePath, useLineIndex);
+			cursor = tagFile.createCursor();
+			size = tagFile.getSize();
+			TagFileInfo temp = tagFile.getInfo();
+			format = temp.format;
+			sortMethod = temp.sort;
+			programAuthor = temp.author;
+			programName = temp.name;
+			programUrl = temp.url;
+			programVersion = temp.version;
+			if (info!=null) {
+				info.format = format;
+				info.sort = sortMethod;
+				info.author = programAuthor;
+				info.name = programName;
+				info.url = programUrl;
+				info.version = programVersion;
+			}
+			initialized = true;
+			return;
+		}
+		if (useLineIndex)
+			lineIndex = TagLineIndex.getIndex(filePath, true);
+		this.filePath = filePath;
 		fp = new RandomAccessFile(filePath, "r");
 		size = fp.length();
 		readPseudoTags(info);	// Read in author, version, etc. tags.
@@ -437,7 +802,9 @@ public class CTagReader {
 	 */
 	public boolean tagsFirst(TagEntry entry) throws IOException {
 		boolean result = false;
-		if (initialized) {
+		if (cursor!=null)
+			result = cursor.first(entry);
+		else if (initialized) {
 
 			// Move to the beginning of the first line containing a
 			// a non-pseudo ctag.
@@ -472,7 +839,9 @@ public class CTagReader {
 	 */
 	public boolean tagsNext(TagEntry entry) throws IOException {
 		boolean result = false;
-		if (initialized)
+		if (cursor!=null)
+			result = cursor.next(entry);
+		else if (initialized)
 			result = readNext(entry);
 		return result;
 	}
@@ -514,10 +883,15 @@ public class CTagReader {
 	 *       qualify.</li>
 	 *
 	 *   <li>TAG_IGNORECASE - Matching will be performed in a case-insenstive
-	 *       manner. Note that this disables binary searches of the tag file.</li>
+	 *       manner. A fold-sorted tag file is still binary searched.  A
+	 *       case-sensitively sorted file is binary searched via a
+	 *       fold-sorted index, built on first use, if a line index is used
+	 *       (see {@link #setUseLineIndex(boolean)}); otherwise it is read
+	 *       sequentially.</li>
 	 *
 	 *   <li>TAG_OBSERVECASE - Matching will be performed in a case-senstive
-	 *       manner. Note that this enables binary searches of the tag file.</li>
+	 *       manner. Note that this enables binary searches of a
+	 *       case-sensitively sorted tag file.</li>
 	 * </ul>
 	 *
 	 * @param entry Will be the ctag entry found, ??? or <code>null</code> if it
@@ -530,7 +904,12 @@ public class CTagReader {
 	 */
 	public boolean tagsFind(TagEntry entry, String name, int options) throws IOException {
 		boolean result = false;
-		if (initialized)
+		cachedLines = null;
+		if (queryCache!=null && initialized)
+			result = findCached(entry, name, options);
+		else if (cursor!=null)
+			result = cursor.find(entry, name, options);
+		else if (initialized)
 			result = find(entry, name, options);
 		return result;
 	}
@@ -548,7 +927,11 @@ public class CTagReader {
 	 */
 	public boolean tagsFindNext(TagEntry entry) throws IOException {
 		boolean result = false;
-		if (initialized)
+		if (cachedLines!=null)
+			result = findNextCached(entry);
+		else if (cursor!=null)
+			result = cursor.findNext(entry);
+		else if (initialized)
 			result = findNext(entry);
 		return result;
 	}
@@ -566,7 +949,17 @@ public class CTagReader {
 	public boolean tagsClose() throws IOException {
 		if (initialized) {
 			initialized = false;
-			fp.close();
+			if (fp!=null)
+				fp.close();
+			fp = null;
+			tagFile = null; // Unmapped when garbage collected.
+			cursor = null;
+			lineIndex = null;
+			foldIndex = null;
+			filePath = null;
+			cachedLines = null;
+			if (queryCache!=null)
+				queryCache.clear();
 			pos = size = 0;
 			line = null;
 			name = null;
@@ -0,0 +1,577 @@
+package org.fife.ctags;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * A ctag file stored as independently compressed blocks of sorted lines.
+ * Large tag files are mostly repeated paths and patterns, and compress to
+ * a fraction of their size, but a compressed stream cannot be binary
+ * searched.  This format keeps a few hundred lines per block, compressed
+ * with <code>java.util.zip.Deflater</code>, and an index of the first name
+ * in each block that is loaded into memory when the file is opened.  A
+ * lookup binary searches the index and decompresses only the block (or,
+ * for names that straddle a boundary, blocks) that can contain the name:
+ *
+ * <pre>
+ * CompressedTagFile.write("tags", "tags.ctz");
+ * CompressedTagFile file = CompressedTagFile.open("tags.ctz");
+ * List&lt;TagEntry&gt; matches = file.find("foo", CTagReader.TAG_FULLMATCH);
+ * </pre>
+ *
+ * The layout is the compressed blocks, then the index (the pseudo-tags of
+ * the original file, and each block's offset, sizes and first name), then
+ * the offset of the index and a magic number.  Recently used blocks are
+ * cached in decompressed form.  Blocks are read with positional reads, so
+ * an instance may be searched by many threads at once.  This class is
+ * public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class CompressedTagFile {
+
+	private String path;
+	private FileChannel channel;
+	private TagFileInfo info;
+	private long[] blockOffsets;
+	private int[] compressedLengths;
+	private int[] lengths;
+	private byte[][] firstNames;
+	private long lineCount;
+	private Map<Integer, Block> cache;
+
+	private static final int MAGIC			= 0x43545a42; // "CTZB"
+	private static final int VERSION			= 1;
+
+	/**
+	 * The default number of lines per block.
+	 */
+	public static final int DEFAULT_BLOCK_LINES	= 256;
+
+	/**
+	 * The number of decompressed blocks cached.
+	 */
+	private static final int CACHED_BLOCKS		= 32;
+
+
+	/**
+	 * Constructor.  Reads the index.
+	 *
+	 * @param path The compressed tag file.
+	 * @throws IOException If an I/O error occurs, or the file is not a
+	 *         compressed tag file.
+	 */
+	private CompressedTagFile(String path) throws IOException {
+
+		this.path = path;
+		RandomAccessFile raf = new RandomAccessFile(path, "r");
+		boolean success = false;
+		try {
+
+			long size = raf.length();
+			if (size<12) {
+				throw new IOException("Not a compressed tag file: " + path);
+			}
+			raf.seek(size - 12);
+			long indexOffset = raf.readLong();
+			if (raf.readInt()!=MAGIC || indexOffset<0 || indexOffset>size-12) {
+				throw new IOException("Not a compressed tag file: " + path);
+			}
+
+			raf.seek(indexOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+								new FileInputStream(raf.getFD())));
+			if (in.readInt()!=VERSION) {
+				throw new IOException("Unsupported compressed tag file " +
+										"version: " + path);
+			}
+			info = new TagFileInfo();
+			info.format = 1;
+			int pseudoTagCount = in.readInt();
+			for (int i=0; i<pseudoTagCount; i++) {
+				TagEntry pseudoTag = new TagEntry(in.readUTF());
+				JsonTagReader.readPseudoTag(info, pseudoTag.name.substring(
+						CTagReader.PseudoTagPrefix.length()), pseudoTag.file);
+			}
+			info.sort = CTagReader.TAG_SORTED;
+
+			lineCount = in.readLong();
+			int count = in.readInt();
+			blockOffsets = new long[count];
+			compressedLengths = new int[count];
+			lengths = new int[count];
+			firstNames = new byte[count][];
+			for (int i=0; i<count; i++) {
+				blockOffsets[i] = in.readLong();
+				compressedLengths[i] = in.readInt();
+				lengths[i] = in.readInt();
+				firstNames[i] = new byte[in.readUnsignedShort()];
+				in.readFully(firstNames[i]);
+			}
+
+			channel = raf.getChannel();
+			success = true;
+
+		} finally {
+			if (!success) {
+				raf.close();
+			}
+		}
+
+		cache = new LinkedHashMap<Integer, Block>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Block> e) {
+				return size()>CACHED_BLOCKS;
+			}
+		};
+
+	}
+
+
+	/**
+	 * Closes this file.
+	 *
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+	/**
+	 * Returns the tags with a given name.
+	 *
+	 * @param name The name to search for.
+	 * @param options Search options; <code>TAG_PARTIALMATCH</code> and
+	 *        <code>TAG_IGNORECASE</code> may be specified.  Since blocks are
+	 *        sorted case-sensitively, a case-insensitive search decompresses
+	 *        every block.
+	 * @return The matching tags, in file order.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public List<TagEntry> find(String name, int options) throws IOException {
+
+		byte[] search = name.getBytes(MappedTagBuffer.UTF8);
+		boolean partial = (options & CTagReader.TAG_PARTIALMATCH)!=0;
+		boolean ignoreCase = (options & CTagReader.TAG_IGNORECASE)!=0;
+		List<TagEntry> matches = new ArrayList<TagEntry>();
+
+		int first = ignoreCase ? 0 : findFirstBlock(search);
+		for (int b=first; b<blockOffsets.length; b++) {
+			Block block = getBlock(b);
+			for (int i=0; i<block.getLineCount(); i++) {
+				int result = block.compareName(i, search, partial, ignoreCase);
+				if (result==0) {
+					matches.add(new TagEntry(block.getLine(i)));
+				}
+				else if (result>0 && !ignoreCase) {
+					return matches; // Past all matches
+				}
+			}
+		}
+		return matches;
+
+	}
+
+
+	/**
+	 * Returns the first block that may contain a name: the last block whose
+	 * first name is less than it, since a run of equal names may start at
+	 * the end of that block.
+	 *
+	 * @param search The name.
+	 * @return The block index.
+	 */
+	private int findFirstBlock(byte[] search) {
+		int low = 0;
+		int high = firstNames.length;
+		while (low<high) {
+			int mid = (low + high) >>> 1;
+			byte[] first = firstNames[mid];
+			if (TagTable.compare(first, 0, first.length,
+								search, 0, search.length)<0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return Math.max(0, low - 1);
+	}
+
+
+	/**
+	 * Returns a block, decompressing it if it is not cached.
+	 *
+	 * @param index The index of the block.
+	 * @return The block.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private Block getBlock(int index) throws IOException {
+
+		Integer key = Integer.valueOf(index);
+		synchronized (cache) {
+			Block block = cache.get(key);
+			if (block!=null) {
+				return block;
+			}
+		}
+
+		ByteBuffer compressed = ByteBuffer.allocate(compressedLengths[index]);
+		long pos = blockOffsets[index];
+		while (compressed.hasRemaining()) {
+			int count = channel.read(compressed, pos);
+			if (count<0) {
+				throw new IOException("Truncated compressed tag file: " + path);
+			}
+			pos += count;
+		}
+
+		byte[] bytes = new byte[lengths[index]];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.array());
+			int len = 0;
+			while (len<bytes.length && !inflater.finished()) {
+				int count = inflater.inflate(bytes, len, bytes.length-len);
+				if (count==0 && inflater.needsInput()) {
+					break;
+				}
+				len += count;
+			}
+			if (len!=bytes.length) {
+				throw new IOException("Corrupt block " + index + ": " + path);
+			}
+		} catch (DataFormatException dfe) {
+			throw new IOException("Corrupt block " + index + ": " + path);
+		} finally {
+			inflater.end();
+		}
+
+		Block block = new Block(bytes);
+		synchronized (cache) {
+			cache.put(key, block);
+		}
+		return block;
+
+	}
+
+
+	/**
+	 * Returns the number of blocks in this file.
+	 *
+	 * @return The number of blocks.
+	 */
+	public int getBlockCount() {
+		return blockOffsets.length;
+	}
+
+
+	/**
+	 * Returns information about the original tag file.  The sort method is
+	 * always <code>TAG_SORTED</code>.
+	 *
+	 * @return The information.
+	 */
+	public TagFileInfo getInfo() {
+		return info;
+	}
+
+
+	/**
+	 * Returns the number of tags in this file.
+	 *
+	 * @return The number of tags.
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+
+	private static byte[] getName(byte[] line) {
+		int end = 0;
+		while (end<line.length && line[end]!='\t') {
+			end++;
+		}
+		byte[] name = new byte[Math.min(end, 0xffff)];
+		System.arraycopy(line, 0, name, 0, name.length);
+		return name;
+	}
+
+
+	/**
+	 * Opens a compressed tag file.
+	 *
+	 * @param path The file.
+	 * @return The file.
+	 * @throws IOException If an I/O error occurs, or the file is not a
+	 *         compressed tag file.
+	 */
+	public static CompressedTagFile open(String path) throws IOException {
+		return new CompressedTagFile(path);
+	}
+
+
+	/**
+	 * Writes a compressed tag file, with the default block size.
+	 *
+	 * @param tagFilePath The tag file to compress.  If it is not sorted
+	 *        case-sensitively, a sorted copy is made first.
+	 * @param outputPath The file to write.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static void write(String tagFilePath, String outputPath)
+								throws IOException {
+		write(tagFilePath, outputPath, DEFAULT_BLOCK_LINES);
+	}
+
+
+	/**
+	 * Writes a compressed tag file.
+	 *
+	 * @param tagFilePath The tag file to compress.  If it is not sorted
+	 *        case-sensitively, a sorted copy is made first.
+	 * @param outputPath The file to write.
+	 * @param blockLines The number of lines per block.  Larger blocks
+	 *        compress better, but each lookup decompresses more.
+	 * @throws IOException If an I/O error occurs.
+	 * @see TagFileSorter
+	 */
+	public static void write(String tagFilePath, String outputPath,
+						int blockLines) throws IOException {
+
+		if (blockLines<1) {
+			throw new IllegalArgumentException("blockLines must be > 0");
+		}
+
+		// The pseudo-tags may claim the file is sorted when it is not, so
+		// the order is also checked while writing.
+		if (writeSorted(tagFilePath, outputPath, blockLines)) {
+			return;
+		}
+		File outputFile = new File(outputPath).getAbsoluteFile();
+		File sorted = File.createTempFile("tags", ".sorted",
+									outputFile.getParentFile());
+		try {
+			new TagFileSorter().sort(tagFilePath, sorted.getPath());
+			if (!writeSorted(sorted.getPath(), outputPath, blockLines)) {
+				throw new IOException("Could not sort " + tagFilePath);
+			}
+		} finally {
+			sorted.delete();
+		}
+
+	}
+
+
+	/**
+	 * Writes a block.
+	 *
+	 * @return The number of compressed bytes written.
+	 */
+	private static int writeBlock(DataOutputStream out, Deflater deflater,
+						ByteArrayOutputStream block, byte[] buf)
+						throws IOException {
+		deflater.reset();
+		deflater.setInput(block.toByteArray());
+		deflater.finish();
+		int total = 0;
+		while (!deflater.finished()) {
+			int count = deflater.deflate(buf);
+			out.write(buf, 0, count);
+			total += count;
+		}
+		return total;
+	}
+
+
+	/**
+	 * Writes a compressed tag file from a sorted tag file.
+	 *
+	 * @return Whether the tag file was sorted.  If it was not, the output
+	 *         is incomplete.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static boolean writeSorted(String tagFilePath, String outputPath,
+						int blockLines) throws IOException {
+
+		ByteLineReader in = new ByteLineReader(
+									new FileInputStream(tagFilePath));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+									new FileOutputStream(outputPath)));
+		Deflater deflater = new Deflater();
+
+		try {
+
+			List<String> pseudoTags = new ArrayList<String>();
+			List<Long> offsets = new ArrayList<Long>();
+			List<Integer> compressed = new ArrayList<Integer>();
+			List<Integer> lengths = new ArrayList<Integer>();
+			List<byte[]> firstNames = new ArrayList<byte[]>();
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			byte[] lastName = null;
+			int linesInBlock = 0;
+			long lineCount = 0;
+			long offset = 0;
+
+			while (in.next()) {
+
+				byte[] line = in.getLine();
+				if (line.length==0) {
+					continue;
+				}
+				if (line.length>=2 && line[0]=='!' && line[1]=='_') {
+					String pseudoTag = new String(line, MappedTagBuffer.UTF8);
+					if (!pseudoTag.startsWith("!_TAG_FILE_SORTED\t")) {
+						pseudoTags.add(pseudoTag);
+					}
+					continue;
+				}
+
+				byte[] name = getName(line);
+				if (lastName!=null && TagTable.compare(lastName, 0,
+						lastName.length, name, 0, name.length)>0) {
+					return false;
+				}
+				lastName = name;
+
+				if (linesInBlock==0) {
+					firstNames.add(name);
+				}
+				block.write(line);
+				block.write('\n');
+				lineCount++;
+				if (++linesInBlock==blockLines) {
+					offsets.add(Long.valueOf(offset));
+					lengths.add(Integer.valueOf(block.size()));
+					int len = writeBlock(out, deflater, block, buf);
+					compressed.add(Integer.valueOf(len));
+					offset += len;
+					block.reset();
+					linesInBlock = 0;
+				}
+
+			}
+
+			if (linesInBlock>0) {
+				offsets.add(Long.valueOf(offset));
+				lengths.add(Integer.valueOf(block.size()));
+				int len = writeBlock(out, deflater, block, buf);
+				compressed.add(Integer.valueOf(len));
+				offset += len;
+			}
+
+			// The index, then the footer.
+			long indexOffset = offset;
+			out.writeInt(VERSION);
+			out.writeInt(pseudoTags.size());
+			for (String pseudoTag : pseudoTags) {
+				out.writeUTF(pseudoTag);
+			}
+			out.writeLong(lineCount);
+			out.writeInt(offsets.size());
+			for (int i=0; i<offsets.size(); i++) {
+				out.writeLong(offsets.get(i).longValue());
+				out.writeInt(compressed.get(i).intValue());
+				out.writeInt(lengths.get(i).intValue());
+				out.writeShort(firstNames.get(i).length);
+				out.write(firstNames.get(i));
+			}
+			out.writeLong(indexOffset);
+			out.writeInt(MAGIC);
+			return true;
+
+		} finally {
+			deflater.end();
+			out.close();
+			in.close();
+		}
+
+	}
+
+
+	/**
+	 * A decompressed block.
+	 */
+	private static final class Block {
+
+		private byte[] bytes;
+		private int[] lineStarts;	/* plus the end of the last line */
+
+		Block(byte[] bytes) {
+			this.bytes = bytes;
+			IntList starts = new IntList();
+			starts.add(0);
+			for (int i=0; i<bytes.length; i++) {
+				if (bytes[i]=='\n') {
+					starts.add(i + 1);
+				}
+			}
+			lineStarts = starts.toArray();
+		}
+
+		/**
+		 * Compares a name against the name of a line.
+		 *
+		 * @return A value less than, equal to, or greater than zero if the
+		 *         line's name is less than, equal to, or greater than
+		 *         <code>search</code>.
+		 */
+		int compareName(int line, byte[] search, boolean partial,
+						boolean ignoreCase) {
+			int start = lineStarts[line];
+			int end = lineStarts[line+1] - 1;
+			int nameEnd = start;
+			while (nameEnd<end && bytes[nameEnd]!='\t') {
+				nameEnd++;
+			}
+			int len = nameEnd - start;
+			if (partial) {
+				len = Math.min(len, search.length);
+			}
+			for (int i=0; i<len && i<search.length; i++) {
+				int b1 = bytes[start+i] & 0xff;
+				int b2 = search[i] & 0xff;
+				if (ignoreCase) {
+					b1 = MappedTagBuffer.toUpper(b1);
+					b2 = MappedTagBuffer.toUpper(b2);
+				}
+				if (b1!=b2) {
+					return b1 - b2;
+				}
+			}
+			return len - search.length;
+		}
+
+		String getLine(int line) {
+			int start = lineStarts[line];
+			return new String(bytes, start, lineStarts[line+1] - 1 - start,
+							MappedTagBuffer.UTF8);
+		}
+
+		int getLineCount() {
+			return lineStarts.length - 1;
+		}
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,810 @@
+package org.fife.ctags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * An index over the tag names in one or more {@link TagTable}s for "Go to
+ * symbol"-style fuzzy searches.  A query matches a name if it is:
+ *
+ * <ul>
+ *   <li>The name itself, or a prefix of it (ignoring case).</li>
+ *   <li>A "camel hump" abbreviation of it, such as <code>gFSF</code> for
+ *       <code>getFileSizeStringFor</code> or <code>fisi</code> for
+ *       <code>file_size</code>.  Each character of the query either
+ *       continues the current hump or starts matching a later one; humps
+ *       may be skipped.  Upper case query characters only match the start
+ *       of a hump.</li>
+ *   <li>A substring of it (ignoring case), for queries of three or more
+ *       characters.</li>
+ * </ul>
+ *
+ * Matches are ranked in that order, then by name length and name.
+ * Candidates for hump matches are found with postings lists of each name's
+ * hump initials, of each ordered pair of them (the first character and the
+ * upper case characters of a query must be hump initials, in order), and of
+ * the first two characters of each hump, then filtered with bit masks of
+ * the characters in each name.  Substring
+ * candidates are found with trigram postings lists.  Only candidates are
+ * checked character by character.<p>
+ *
+ * An index is made of immutable segments, one per table, so it can be
+ * built incrementally: {@link #add(TagTable, ExecutorService)} indexes only
+ * the new table and returns a new index sharing the existing segments.
+ * Each segment is itself built in parallel.  Indexes are immutable and may
+ * be searched by many threads at once.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class FuzzyTagIndex {
+
+	private final Segment[] segments;
+
+	private static final int SCORE_EXACT			= 1000;
+	private static final int SCORE_EXACT_IGNORE_CASE	= 950;
+	private static final int SCORE_PREFIX			= 900;
+	private static final int SCORE_PREFIX_IGNORE_CASE	= 850;
+	private static final int SCORE_FIRST_HUMP		= 700;
+	private static final int SCORE_HUMP			= 600;
+	private static final int SCORE_SUBSTRING		= 500;
+
+	/**
+	 * The minimum number of names indexed per task when building in
+	 * parallel.
+	 */
+	private static final int MIN_CHUNK_SIZE		= 8192;
+
+	private static final Comparator<Match> RANK_ORDER = new Comparator<Match>() {
+		@Override
+		public int compare(Match m1, Match m2) {
+			if (m1.score!=m2.score) {
+				return m2.score - m1.score;
+			}
+			if (m1.name.length()!=m2.name.length()) {
+				return m1.name.length() - m2.name.length();
+			}
+			return m1.name.compareTo(m2.name);
+		}
+	};
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param segments The segments of this index.
+	 */
+	private FuzzyTagIndex(Segment[] segments) {
+		this.segments = segments;
+	}
+
+
+	/**
+	 * Returns a new index containing everything in this one, plus the names
+	 * in a table.  This index is not modified.
+	 *
+	 * @param table The table to add.
+	 * @param executor The executor to build the new segment with, or
+	 *        <code>null</code> to build it on the calling thread.
+	 * @return The new index.
+	 */
+	public FuzzyTagIndex add(TagTable table, ExecutorService executor) {
+		Segment[] newSegments = new Segment[segments.length + 1];
+		System.arraycopy(segments, 0, newSegments, 0, segments.length);
+		newSegments[segments.length] = new Segment(table, executor);
+		return new FuzzyTagIndex(newSegments);
+	}
+
+
+	/**
+	 * Builds an index over a table.
+	 *
+	 * @param table The table.
+	 * @param executor The executor to build the index with, or
+	 *        <code>null</code> to build it on the calling thread.
+	 * @return The index.
+	 */
+	public static FuzzyTagIndex build(TagTable table,
+									ExecutorService executor) {
+		return new FuzzyTagIndex(new Segment[] {
+										new Segment(table, executor) });
+	}
+
+
+	/**
+	 * Returns an index containing no names.
+	 *
+	 * @return The index.
+	 * @see #add(TagTable, ExecutorService)
+	 */
+	public static FuzzyTagIndex empty() {
+		return new FuzzyTagIndex(new Segment[0]);
+	}
+
+
+	/**
+	 * Returns the names best matching a query.
+	 *
+	 * @param query The query, e.g. <code>"gFSF"</code>.
+	 * @param maxResults The maximum number of matches to return.
+	 * @return The matches, best first.
+	 */
+	public List<Match> find(String query, int maxResults) {
+
+		if (query.length()==0 || maxResults<=0) {
+			return Collections.emptyList();
+		}
+
+		PriorityQueue<Match> best = new PriorityQueue<Match>(maxResults + 1,
+									Collections.reverseOrder(RANK_ORDER));
+		Scratch scratch = new Scratch();
+		for (Segment segment : segments) {
+			segment.find(query, maxResults, best, scratch);
+		}
+
+		Match[] matches = best.toArray(new Match[best.size()]);
+		Arrays.sort(matches, RANK_ORDER);
+		return Arrays.asList(matches);
+
+	}
+
+
+	/**
+	 * Returns the total number of distinct names in this index's segments.
+	 *
+	 * @return The number of names.
+	 */
+	public int getNameCount() {
+		int count = 0;
+		for (Segment segment : segments) {
+			count += segment.names.length;
+		}
+		return count;
+	}
+
+
+	/**
+	 * Returns whether a query is a "camel hump" match for a name.
+	 *
+	 * @param name The name.
+	 * @param query The query.
+	 * @param qi The index into <code>query</code> to match from.
+	 * @param ni The index into <code>name</code> to match from.
+	 * @param scratch Records failed <code>(qi, ni)</code> pairs.
+	 * @return Whether the rest of the query matches.
+	 */
+	private static boolean humpMatch(String name, String query, int qi,
+									int ni, Scratch scratch) {
+
+		if (qi==query.length()) {
+			return true;
+		}
+		int key = qi*(name.length()+1) + ni;
+		if (scratch.memo[key]==scratch.stamp) {
+			return false;
+		}
+
+		char qc = query.charAt(qi);
+		char lower = Character.toLowerCase(qc);
+
+		// Continue the current hump
+		if (ni>0 && ni<name.length() && !isHump(name, ni) &&
+				!Character.isUpperCase(qc) &&
+				Character.toLowerCase(name.charAt(ni))==lower &&
+				humpMatch(name, query, qi+1, ni+1, scratch)) {
+			return true;
+		}
+
+		// Start matching a later hump
+		for (int i=ni; i<name.length(); i++) {
+			if (Character.toLowerCase(name.charAt(i))==lower &&
+					isHump(name, i) &&
+					humpMatch(name, query, qi+1, i+1, scratch)) {
+				return true;
+			}
+		}
+
+		scratch.memo[key] = scratch.stamp;
+		return false;
+
+	}
+
+
+	/**
+	 * Returns whether a character of a name starts a hump: the first
+	 * character (so prefix matches are always hump candidates), upper case
+	 * letters that follow a non-upper case character or precede a lower
+	 * case one, and letters and digits that follow a separator (e.g.
+	 * <code>'_'</code>) or a change between letters and digits.
+	 *
+	 * @param name The name.
+	 * @param i The index of the character.
+	 * @return Whether the character starts a hump.
+	 */
+	private static boolean isHump(String name, int i) {
+		if (i==0) {
+			return true;
+		}
+		char ch = name.charAt(i);
+		if (!Character.isLetterOrDigit(ch)) {
+			return false;
+		}
+		char prev = name.charAt(i-1);
+		if (Character.isUpperCase(ch)) {
+			return !Character.isUpperCase(prev) || (i+1<name.length() &&
+					Character.isLowerCase(name.charAt(i+1)));
+		}
+		return !Character.isLetterOrDigit(prev) ||
+				Character.isDigit(ch)!=Character.isDigit(prev);
+	}
+
+
+	/**
+	 * Returns the bit for a character in a mask.  Bits 0-25 are
+	 * <code>'a'</code>-<code>'z'</code>, ignoring case; bit 26 is any digit.
+	 * Other characters are not represented.
+	 *
+	 * @param ch The character.
+	 * @return The bit, or <code>0</code> if the character is not
+	 *         represented.
+	 * @see #mask(String)
+	 */
+	private static int maskBit(char ch) {
+		if (ch>='a' && ch<='z') {
+			return 1 << (ch-'a');
+		}
+		else if (ch>='A' && ch<='Z') {
+			return 1 << (ch-'A');
+		}
+		else if (ch>='0' && ch<='9') {
+			return 1 << 26;
+		}
+		return 0;
+	}
+
+
+	/**
+	 * Returns a bit mask of the ASCII letters and digits in a string.
+	 *
+	 * @param s The string.
+	 * @return The mask.
+	 * @see #maskBit(char)
+	 */
+	private static int mask(CharSequence s) {
+		int mask = 0;
+		for (int i=0; i<s.length(); i++) {
+			mask |= maskBit(s.charAt(i));
+		}
+		return mask;
+	}
+
+
+	/**
+	 * Returns the key of an ordered pair of hump initials.
+	 *
+	 * @param first The first initial, lower case.
+	 * @param second The second initial, lower case.
+	 * @return The key.
+	 */
+	private static int pair(char first, char second) {
+		return (first<<16) | second;
+	}
+
+
+	/**
+	 * Returns how well a query matches a name.
+	 *
+	 * @param name The name.
+	 * @param query The query.
+	 * @param hump Whether to check for hump matches.
+	 * @param substring Whether to check for substring matches.
+	 * @param scratch Working storage for hump matches.
+	 * @return The score, or <code>-1</code> if the query does not match.
+	 */
+	private static int score(String name, String query, boolean hump,
+							boolean substring, Scratch scratch) {
+
+		int qlen = query.length();
+		if (name.startsWith(query)) {
+			return name.length()==qlen ? SCORE_EXACT : SCORE_PREFIX;
+		}
+		if (name.regionMatches(true, 0, query, 0, qlen)) {
+			return name.length()==qlen ? SCORE_EXACT_IGNORE_CASE :
+										SCORE_PREFIX_IGNORE_CASE;
+		}
+
+		if (hump) {
+			scratch.reset((qlen+1) * (name.length()+1));
+			char first = Character.toLowerCase(query.charAt(0));
+			if (Character.toLowerCase(name.charAt(0))==first &&
+					humpMatch(name, query, 1, 1, scratch)) {
+				return SCORE_FIRST_HUMP;
+			}
+			if (humpMatch(name, query, 0, 0, scratch)) {
+				return SCORE_HUMP;
+			}
+		}
+
+		if (substring) {
+			int last = name.length() - qlen;
+			for (int i=1; i<=last; i++) {
+				if (name.regionMatches(true, i, query, 0, qlen)) {
+					return SCORE_SUBSTRING - Math.min(i, 99);
+				}
+			}
+		}
+
+		return -1;
+
+	}
+
+
+	/**
+	 * Returns the key of the trigram starting at an offset in a string.
+	 *
+	 * @param s The string.
+	 * @param offs The offset of the trigram.
+	 * @return The key.  Distinct trigrams may share a key; candidates are
+	 *         always verified.
+	 */
+	private static int trigram(String s, int offs) {
+		int c1 = Character.toLowerCase(s.charAt(offs)) & 0x3ff;
+		int c2 = Character.toLowerCase(s.charAt(offs+1)) & 0x3ff;
+		int c3 = Character.toLowerCase(s.charAt(offs+2)) & 0x3ff;
+		return (c1<<20) | (c2<<10) | c3;
+	}
+
+
+	/**
+	 * A name matching a query.
+	 */
+	public static final class Match {
+
+		private TagTable table;
+		private int firstRow;
+		private String name;
+		private int score;
+
+		private Match(TagTable table, int firstRow, String name, int score) {
+			this.table = table;
+			this.firstRow = firstRow;
+			this.name = name;
+			this.score = score;
+		}
+
+		/**
+		 * Returns the first row in the table with the matched name.
+		 *
+		 * @return The row.
+		 * @see #getRowCount()
+		 * @see #getTable()
+		 */
+		public int getFirstRow() {
+			return firstRow;
+		}
+
+		/**
+		 * Returns the name matched.
+		 *
+		 * @return The name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the number of rows in the table with the matched name.
+		 * These rows are contiguous.
+		 *
+		 * @return The number of rows.
+		 * @see #getFirstRow()
+		 */
+		public int getRowCount() {
+			int end = firstRow + 1;
+			while (end<table.size() && name.equals(table.getName(end))) {
+				end++;
+			}
+			return end - firstRow;
+		}
+
+		/**
+		 * Returns how well the name matched the query.  Higher is better.
+		 *
+		 * @return The score.
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * Returns the table containing the matched tags.
+		 *
+		 * @return The table.
+		 */
+		public TagTable getTable() {
+			return table;
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + score + ")";
+		}
+
+	}
+
+
+	/**
+	 * Working storage for a single query, so that checking candidates does
+	 * not allocate.  A <code>(qi, ni)</code> state has failed for the
+	 * current candidate if its memo entry equals the current stamp.
+	 */
+	private static final class Scratch {
+
+		private int[] memo = new int[256];
+		private int stamp;
+
+		void reset(int size) {
+			if (size>memo.length) {
+				memo = new int[Math.max(size, memo.length*2)];
+				stamp = 0;
+			}
+			if (++stamp==0) {
+				Arrays.fill(memo, 0);
+				stamp = 1;
+			}
+		}
+
+	}
+
+
+	/**
+	 * The index over a single table.
+	 */
+	private static final class Segment {
+
+		private TagTable table;
+		private String[] names;			/* distinct names, in table order */
+		private int[] firstRows;		/* first row of each name */
+		private int[] masks;			/* mask() of each name */
+		private int[] initialMasks;		/* mask() of each name's hump initials */
+		private Map<Integer, int[]> initials;	/* hump initial -> name ids */
+		private Map<Integer, int[]> pairs;	/* pair() of initials -> name ids */
+		private Map<Integer, int[]> starts;	/* pair() of a hump's first two chars -> name ids */
+		private Map<Integer, int[]> trigrams;	/* trigram() -> name ids */
+
+		Segment(TagTable table, ExecutorService executor) {
+
+			this.table = table;
+
+			// Rows are sorted by name, so each distinct name is a run.
+			List<String> nameList = new ArrayList<String>();
+			IntList rows = new IntList();
+			String prev = null;
+			for (int row=0; row<table.size(); row++) {
+				String name = table.getName(row);
+				if (!name.equals(prev)) {
+					nameList.add(name);
+					rows.add(row);
+					prev = name;
+				}
+			}
+			names = nameList.toArray(new String[nameList.size()]);
+			firstRows = rows.toArray();
+			masks = new int[names.length];
+			initialMasks = new int[names.length];
+
+			// Index chunks of names in parallel, then concatenate their
+			// postings in order so that each list stays sorted.
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			int chunkSize = MIN_CHUNK_SIZE;
+			if (executor!=null) {
+				int threads = Runtime.getRuntime().availableProcessors();
+				chunkSize = Math.max(chunkSize, names.length/(threads*4) + 1);
+			}
+			for (int start=0; start<names.length; start+=chunkSize) {
+				chunks.add(new Chunk(start,
+						Math.min(start+chunkSize, names.length)));
+			}
+			TaskUtil.invokeAll(executor, chunks);
+
+			List<Map<Integer, IntList>> maps =
+							new ArrayList<Map<Integer, IntList>>();
+			for (Chunk chunk : chunks) {
+				maps.add(chunk.chunkInitials);
+			}
+			initials = merge(maps);
+			maps.clear();
+			for (Chunk chunk : chunks) {
+				maps.add(chunk.chunkPairs);
+			}
+			pairs = merge(maps);
+			maps.clear();
+			for (Chunk chunk : chunks) {
+				maps.add(chunk.chunkStarts);
+			}
+			starts = merge(maps);
+			maps.clear();
+			for (Chunk chunk : chunks) {
+				maps.add(chunk.chunkTrigrams);
+			}
+			trigrams = merge(maps);
+
+		}
+
+		void find(String query, int maxResults, PriorityQueue<Match> best,
+				Scratch scratch) {
+
+			// Hump (and prefix) candidates: names with the query's first
+			// and upper case characters as hump initials, in order, and
+			// containing all of its characters.  The second character
+			// either continues the first hump or starts a later one,
+			// whatever its case, since the query may be a prefix of the
+			// name ignoring case.  Longer prefixes are substrings, so are
+			// also found via trigrams below.
+			int qmask = mask(query);
+			char first = Character.toLowerCase(query.charAt(0));
+			int initialMask = maskBit(first);
+			int[] ids = null;
+			char prevInitial = first;
+			for (int i=1; i<query.length(); i++) {
+				char ch = query.charAt(i);
+				if (Character.isUpperCase(ch)) {
+					ch = Character.toLowerCase(ch);
+					initialMask |= maskBit(ch);
+					int[] list = get(pairs, pair(prevInitial, ch));
+					if (i==1) {
+						list = union(list, get(starts, pair(first, ch)));
+					}
+					ids = ids==null ? list : intersect(ids, list);
+					prevInitial = ch;
+				}
+				else if (i==1) {
+					int key = pair(first, ch);
+					ids = union(get(pairs, key), get(starts, key));
+				}
+				if (ids.length==0) {
+					break;
+				}
+			}
+			if (ids==null) {
+				ids = get(initials, first);
+			}
+
+			IntList matched = new IntList();
+			for (int id : ids) {
+				String name = names[id];
+				boolean prefix = name.regionMatches(true, 0, query, 0,
+												query.length());
+				if ((masks[id] & qmask)==qmask && (prefix ||
+						(initialMasks[id] & initialMask)==initialMask)) {
+					// Names that don't start with the query can only be
+					// hump matches, so skip them cheaply once they can no
+					// longer make the cut.
+					if (best.size()==maxResults && !prefix) {
+						int bound = Character.toLowerCase(name.charAt(0))==first ?
+								SCORE_FIRST_HUMP : SCORE_HUMP;
+						if (!canBeat(bound, name, best.peek())) {
+							continue;
+						}
+					}
+					int score = score(name, query, true, false, scratch);
+					if (score>-1) {
+						offer(id, score, maxResults, best);
+						matched.add(id);
+					}
+				}
+			}
+
+			// Substring candidates: names containing all of the query's
+			// trigrams.
+			if (query.length()>=3) {
+				ids = intersectTrigrams(query);
+				int m = 0;
+				for (int id : ids) {
+					while (m<matched.size() && matched.get(m)<id) {
+						m++;
+					}
+					if (m<matched.size() && matched.get(m)==id) {
+						continue; // Already scored
+					}
+					int score = score(names[id], query, false, true, scratch);
+					if (score>-1) {
+						offer(id, score, maxResults, best);
+					}
+				}
+			}
+
+		}
+
+		private static boolean canBeat(int score, String name, Match worst) {
+			return score>worst.score || (score==worst.score &&
+					name.length()<=worst.name.length());
+		}
+
+		private static int[] get(Map<Integer, int[]> postings, int key) {
+			int[] ids = postings.get(Integer.valueOf(key));
+			return ids!=null ? ids : new int[0];
+		}
+
+		private int[] intersectTrigrams(String query) {
+			int count = query.length() - 2;
+			int[][] lists = new int[count][];
+			for (int i=0; i<count; i++) {
+				lists[i] = trigrams.get(Integer.valueOf(trigram(query, i)));
+				if (lists[i]==null) {
+					return new int[0];
+				}
+			}
+			Arrays.sort(lists, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] l1, int[] l2) {
+					return l1.length - l2.length;
+				}
+			});
+			int[] result = lists[0];
+			for (int i=1; i<count && result.length>0; i++) {
+				result = intersect(result, lists[i]);
+			}
+			return result;
+		}
+
+		private static int[] intersect(int[] l1, int[] l2) {
+			if (l1.length>l2.length) {
+				int[] temp = l1;
+				l1 = l2;
+				l2 = temp;
+			}
+			int[] result = new int[l1.length];
+			int count = 0;
+			int j = 0;
+			for (int i=0; i<l1.length; i++) {
+				int value = l1[i];
+				int pos = Arrays.binarySearch(l2, j, l2.length, value);
+				if (pos>=0) {
+					result[count++] = value;
+					j = pos + 1;
+				}
+				else {
+					j = -(pos + 1);
+				}
+			}
+			return Arrays.copyOf(result, count);
+		}
+
+		private static int[] union(int[] l1, int[] l2) {
+			int[] result = new int[l1.length + l2.length];
+			int i = 0, j = 0, count = 0;
+			while (i<l1.length && j<l2.length) {
+				int v1 = l1[i];
+				int v2 = l2[j];
+				if (v1<=v2) {
+					i++;
+				}
+				if (v2<=v1) {
+					j++;
+				}
+				result[count++] = Math.min(v1, v2);
+			}
+			while (i<l1.length) {
+				result[count++] = l1[i++];
+			}
+			while (j<l2.length) {
+				result[count++] = l2[j++];
+			}
+			return Arrays.copyOf(result, count);
+		}
+
+		private static Map<Integer, int[]> merge(
+								List<Map<Integer, IntList>> maps) {
+			Map<Integer, IntList> merged = new HashMap<Integer, IntList>();
+			for (Map<Integer, IntList> map : maps) {
+				for (Map.Entry<Integer, IntList> entry : map.entrySet()) {
+					IntList list = merged.get(entry.getKey());
+					if (list==null) {
+						merged.put(entry.getKey(), entry.getValue());
+					}
+					else {
+						IntList ids = entry.getValue();
+						for (int i=0; i<ids.size(); i++) {
+							list.add(ids.get(i));
+						}
+					}
+				}
+			}
+			Map<Integer, int[]> result = new HashMap<Integer, int[]>(
+												merged.size()*4/3 + 1);
+			for (Map.Entry<Integer, IntList> entry : merged.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().toArray());
+			}
+			return result;
+		}
+
+		private void offer(int id, int score, int maxResults,
+						PriorityQueue<Match> best) {
+			Match match = new Match(table, firstRows[id], names[id], score);
+			if (best.size()<maxResults) {
+				best.add(match);
+			}
+			else if (RANK_ORDER.compare(match, best.peek())<0) {
+				best.poll();
+				best.add(match);
+			}
+		}
+
+		/**
+		 * Indexes a range of names.
+		 */
+		private final class Chunk implements Callable<Void> {
+
+			private int start;
+			private int end;
+			private Map<Integer, IntList> chunkInitials;
+			private Map<Integer, IntList> chunkPairs;
+			private Map<Integer, IntList> chunkStarts;
+			private Map<Integer, IntList> chunkTrigrams;
+
+			Chunk(int start, int end) {
+				this.start = start;
+				this.end = end;
+			}
+
+			@Override
+			public Void call() {
+				chunkInitials = new HashMap<Integer, IntList>();
+				chunkPairs = new HashMap<Integer, IntList>();
+				chunkStarts = new HashMap<Integer, IntList>();
+				chunkTrigrams = new HashMap<Integer, IntList>();
+				StringBuilder humps = new StringBuilder();
+				for (int id=start; id<end; id++) {
+					String name = names[id];
+					masks[id] = mask(name);
+					humps.setLength(0);
+					for (int i=0; i<name.length(); i++) {
+						if (isHump(name, i)) {
+							char initial = Character.toLowerCase(name.charAt(i));
+							for (int j=0; j<humps.length(); j++) {
+								add(chunkPairs, pair(humps.charAt(j), initial), id);
+							}
+							humps.append(initial);
+							add(chunkInitials, initial, id);
+							if (i+1<name.length()) {
+								char next = Character.toLowerCase(name.charAt(i+1));
+								add(chunkStarts, pair(initial, next), id);
+							}
+						}
+					}
+					initialMasks[id] = mask(humps);
+					for (int i=0; i+3<=name.length(); i++) {
+						add(chunkTrigrams, trigram(name, i), id);
+					}
+				}
+				return null;
+			}
+
+			private void add(Map<Integer, IntList> map, int key, int id) {
+				Integer k = Integer.valueOf(key);
+				IntList list = map.get(k);
+				if (list==null) {
+					list = new IntList();
+					map.put(k, list);
+				}
+				if (list.size()==0 || list.getLast()!=id) {
+					list.add(id);
+				}
+			}
+
+		}
+
+	}
+
+
+}
\ No newline at end of file
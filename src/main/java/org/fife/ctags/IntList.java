@@ -0,0 +1,81 @@
+package org.fife.ctags;
+
+import java.util.Arrays;
+
+
+/**
+ * A growable list of <code>int</code>s, for building postings lists and
+ * row lists without boxing.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+final class IntList {
+
+	private int[] data;
+	private int size;
+
+
+	/**
+	 * Constructor.
+	 */
+	IntList() {
+		data = new int[4];
+	}
+
+
+	/**
+	 * Appends a value.
+	 *
+	 * @param value The value to append.
+	 */
+	void add(int value) {
+		if (size==data.length) {
+			data = Arrays.copyOf(data, size*2);
+		}
+		data[size++] = value;
+	}
+
+
+	/**
+	 * Returns a value.
+	 *
+	 * @param i The index of the value.
+	 * @return The value.
+	 */
+	int get(int i) {
+		return data[i];
+	}
+
+
+	/**
+	 * Returns the last value.
+	 *
+	 * @return The last value.
+	 */
+	int getLast() {
+		return data[size-1];
+	}
+
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return The number of values.
+	 */
+	int size() {
+		return size;
+	}
+
+
+	/**
+	 * Returns the values as an array.
+	 *
+	 * @return A new array.
+	 */
+	int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+
+}
\ No newline at end of file
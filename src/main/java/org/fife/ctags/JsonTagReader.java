@@ -0,0 +1,561 @@
+package org.fife.ctags;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+
+/**
+ * Reads the JSON output of Universal Ctags
+ * (<code>ctags --output-format=json</code>), one tag at a time.  Each line
+ * of such output is a JSON object, either a tag:
+ *
+ * <pre>
+ * {"_type": "tag", "name": "foo", "path": "foo.c", "pattern": "/^int foo()$/", "line": 3, "kind": "function", "signature": "()"}
+ * </pre>
+ *
+ * or a pseudo-tag (<code>"_type": "ptag"</code>).  Tags fill in the same
+ * {@link TagEntry} objects as tag files do: <code>"path"</code> is the
+ * entry's file, <code>"file": true</code> marks file scope, and members
+ * other than <code>_type</code>, <code>name</code>, <code>path</code>,
+ * <code>pattern</code>, <code>line</code> and <code>kind</code> become
+ * extension fields.  Pseudo-tags fill in the {@link TagFileInfo} returned
+ * by {@link #getInfo()}.  Unlike in a tag file, field values need no
+ * un-escaping, as the JSON escapes are undone while parsing:
+ *
+ * <pre>
+ * Process p = new ProcessBuilder("ctags", "--output-format=json", "-R",
+ *                                "-f", "-", "src").start();
+ * JsonTagReader reader = new JsonTagReader(p.getInputStream());
+ * TagEntry entry = new TagEntry();
+ * while (reader.next(entry)) {
+ *    ...
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * The parser is hand-written, reads straight from a character buffer and
+ * reuses <code>String</code>s for repeated short values such as keys,
+ * kinds and paths, so it allocates little besides the entries' names and
+ * patterns.  Nested objects and arrays, which Universal Ctags does not
+ * currently emit, are skipped.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class JsonTagReader {
+
+	private Reader in;
+	private char[] buf;
+	private int pos;
+	private int end;
+	private int lineNumber;			/* for error messages */
+	private StringBuilder sb;
+	private String[] strings;		/* cache of short strings */
+	private TagFileInfo info;
+
+	private static final int TYPE_UNKNOWN		= 0;
+	private static final int TYPE_TAG			= 1;
+	private static final int TYPE_PTAG		= 2;
+	private static final int TYPE_OTHER		= 3;
+
+	/**
+	 * Values longer than this are not cached.
+	 */
+	private static final int MAX_CACHED_LENGTH	= 48;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in The JSON output to read.  This is assumed to be UTF-8.
+	 */
+	public JsonTagReader(InputStream in) {
+		this(new InputStreamReader(in, MappedTagBuffer.UTF8));
+	}
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in The JSON output to read.
+	 */
+	public JsonTagReader(Reader in) {
+		this.in = in;
+		buf = new char[8192];
+		lineNumber = 1;
+		sb = new StringBuilder();
+		strings = new String[1024];
+		info = new TagFileInfo();
+		info.format = 2;
+		info.sort = CTagReader.TAG_UNSORTED;
+	}
+
+
+	/**
+	 * Closes the underlying stream.
+	 *
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+
+	/**
+	 * Returns an exception for malformed input.
+	 *
+	 * @param message A description of the problem.
+	 * @return The exception.
+	 */
+	private IOException error(String message) {
+		return new IOException("Invalid JSON on line " + lineNumber + ": " +
+							message);
+	}
+
+
+	/**
+	 * Ensures there is at least one unread character in the buffer.
+	 *
+	 * @return Whether there is, i.e. <code>false</code> at end of stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private boolean fill() throws IOException {
+		if (pos<end) {
+			return true;
+		}
+		int count;
+		do {
+			count = in.read(buf, 0, buf.length);
+		} while (count==0);
+		pos = 0;
+		end = Math.max(count, 0);
+		return count>0;
+	}
+
+
+	/**
+	 * Returns the information from the pseudo-tags read so far.  Universal
+	 * Ctags writes its pseudo-tags first, so this is complete once the
+	 * first tag has been read.
+	 *
+	 * @return The information.
+	 */
+	public TagFileInfo getInfo() {
+		return info;
+	}
+
+
+	/**
+	 * Returns the contents of {@link #sb} as a string, reusing an earlier
+	 * string with the same contents if possible.
+	 *
+	 * @return The string.
+	 */
+	private String intern() {
+		int len = sb.length();
+		if (len>MAX_CACHED_LENGTH) {
+			return sb.toString();
+		}
+		int hash = 0;
+		for (int i=0; i<len; i++) {
+			hash = 31*hash + sb.charAt(i);
+		}
+		int slot = (hash ^ (hash>>>16)) & (strings.length-1);
+		String s = strings[slot];
+		if (s==null || !s.contentEquals(sb)) {
+			s = sb.toString();
+			strings[slot] = s;
+		}
+		return s;
+	}
+
+
+	/**
+	 * Reads the next tag.  Pseudo-tags encountered along the way update
+	 * {@link #getInfo()}; other kinds of objects are skipped.
+	 *
+	 * @param entry The entry to fill in.  Its contents are undefined if
+	 *        this method returns <code>false</code>.
+	 * @return Whether a tag was read, i.e. <code>false</code> at the end of
+	 *         the input.
+	 * @throws IOException If an I/O error occurs, or the input is not valid
+	 *         JSON.
+	 */
+	public boolean next(TagEntry entry) throws IOException {
+		while (true) {
+			int c = skipWhitespace();
+			if (c==-1) {
+				return false;
+			}
+			if (c!='{') {
+				throw error("expected '{' but found '" + (char)c + "'");
+			}
+			pos++;
+			if (readObject(entry)) {
+				return true;
+			}
+		}
+	}
+
+
+	/**
+	 * Reads a literal (<code>true</code>, <code>false</code> or
+	 * <code>null</code>).
+	 *
+	 * @param literal The expected literal.
+	 * @throws IOException If an I/O error occurs, or the literal is not
+	 *         found.
+	 */
+	private void readLiteral(String literal) throws IOException {
+		for (int i=0; i<literal.length(); i++) {
+			if (!fill() || buf[pos]!=literal.charAt(i)) {
+				throw error("expected " + literal);
+			}
+			pos++;
+		}
+	}
+
+
+	/**
+	 * Reads a number into {@link #sb}, as it appears in the input.
+	 *
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void readNumber() throws IOException {
+		sb.setLength(0);
+		while (fill()) {
+			char ch = buf[pos];
+			if ((ch<'0' || ch>'9') && ch!='-' && ch!='+' && ch!='.' &&
+					ch!='e' && ch!='E') {
+				break;
+			}
+			sb.append(ch);
+			pos++;
+		}
+	}
+
+
+	/**
+	 * Reads the members of an object, whose opening brace has been read.
+	 *
+	 * @param entry The entry to fill in.
+	 * @return Whether the object was a tag.
+	 * @throws IOException If an I/O error occurs, or the input is not valid
+	 *         JSON.
+	 */
+	private boolean readObject(TagEntry entry) throws IOException {
+
+		entry.name = null;
+		entry.file = null;
+		entry.pattern = null;
+		entry.lineNumber = 0;
+		entry.kind = null;
+		entry.fileScope = false;
+		entry.fieldList.clear();
+		int type = TYPE_UNKNOWN;
+		boolean parserSpecific = false;
+
+		int c = skipWhitespace();
+		if (c=='}') {
+			pos++;
+			return false;
+		}
+
+		while (true) {
+
+			if (c!='"') {
+				throw error("expected a member name");
+			}
+			pos++;
+			readString();
+			String key = intern();
+			if (skipWhitespace()!=':') {
+				throw error("expected ':' after \"" + key + "\"");
+			}
+			pos++;
+
+			c = skipWhitespace();
+			if (c=='"') {
+				pos++;
+				readString();
+				if ("_type".equals(key)) {
+					type = equals(sb, "tag") ? TYPE_TAG :
+							(equals(sb, "ptag") ? TYPE_PTAG : TYPE_OTHER);
+				}
+				else if ("name".equals(key)) {
+					entry.name = sb.toString();
+				}
+				else if ("path".equals(key)) {
+					entry.file = intern();
+				}
+				else if ("pattern".equals(key)) {
+					entry.pattern = sb.toString();
+				}
+				else if ("kind".equals(key)) {
+					entry.kind = intern();
+				}
+				else {
+					parserSpecific |= "parserName".equals(key);
+					entry.fieldList.add(new TagExtensionField(key, intern()));
+				}
+			}
+			else if ((c>='0' && c<='9') || c=='-') {
+				readNumber();
+				if ("line".equals(key)) {
+					entry.lineNumber = toLong(sb);
+				}
+				else {
+					entry.fieldList.add(new TagExtensionField(key, intern()));
+				}
+			}
+			else if (c=='t' || c=='f') {
+				boolean value = c=='t';
+				readLiteral(value ? "true" : "false");
+				if ("file".equals(key)) {
+					entry.fileScope = value;
+				}
+				else {
+					entry.fieldList.add(new TagExtensionField(key,
+											String.valueOf(value)));
+				}
+			}
+			else if (c=='n') {
+				readLiteral("null");
+			}
+			else if (c=='{' || c=='[') {
+				skipNested();
+			}
+			else {
+				throw error(c==-1 ? "unexpected end of input" :
+									"unexpected '" + (char)c + "'");
+			}
+
+			c = skipWhitespace();
+			if (c=='}') {
+				pos++;
+				break;
+			}
+			if (c!=',') {
+				throw error("expected ',' or '}'");
+			}
+			pos++;
+			c = skipWhitespace();
+
+		}
+
+		if (type==TYPE_PTAG) {
+			if (!parserSpecific) {
+				readPseudoTag(info, entry.name, entry.file);
+			}
+			return false;
+		}
+		return (type==TYPE_TAG || type==TYPE_UNKNOWN) && entry.name!=null;
+
+	}
+
+
+	/**
+	 * Records the value of a pseudo-tag.
+	 *
+	 * @param info The information to update.
+	 * @param name The name of the pseudo-tag, without the leading
+	 *        <code>"!_"</code>.
+	 * @param value Its value.
+	 */
+	static void readPseudoTag(TagFileInfo info, String name,
+								String value) {
+		if ("TAG_FILE_SORTED".equals(name))
+			info.sort = CTagReader.toSortMethod(value);
+		else if ("TAG_FILE_FORMAT".equals(name)) {
+			try {
+				info.format = Integer.parseInt(value);
+			} catch (NumberFormatException nfe) {
+				// Keep the default
+			}
+		}
+		else if ("TAG_PROGRAM_AUTHOR".equals(name))
+			info.author = value;
+		else if ("TAG_PROGRAM_NAME".equals(name))
+			info.name = value;
+		else if ("TAG_PROGRAM_URL".equals(name))
+			info.url = value;
+		else if ("TAG_PROGRAM_VERSION".equals(name))
+			info.version = value;
+	}
+
+
+	/**
+	 * Reads a string, whose opening quote has been read, into
+	 * {@link #sb}, undoing escapes.
+	 *
+	 * @throws IOException If an I/O error occurs, or the string is not
+	 *         terminated.
+	 */
+	private void readString() throws IOException {
+
+		sb.setLength(0);
+
+		while (true) {
+
+			// Copy runs of plain characters in bulk.
+			if (!fill()) {
+				throw error("unterminated string");
+			}
+			int start = pos;
+			while (pos<end && buf[pos]!='"' && buf[pos]!='\\') {
+				pos++;
+			}
+			sb.append(buf, start, pos-start);
+			if (pos==end) {
+				continue;
+			}
+
+			char ch = buf[pos++];
+			if (ch=='"') {
+				return;
+			}
+
+			if (!fill()) {
+				throw error("unterminated string");
+			}
+			ch = buf[pos++];
+			switch (ch) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'u':
+					int value = 0;
+					for (int i=0; i<4; i++) {
+						if (!fill()) {
+							throw error("unterminated string");
+						}
+						int digit = Character.digit(buf[pos++], 16);
+						if (digit==-1) {
+							throw error("invalid \\u escape");
+						}
+						value = (value<<4) | digit;
+					}
+					sb.append((char)value);
+					break;
+				default: // '"', '\\' and '/'
+					sb.append(ch);
+					break;
+			}
+
+		}
+
+	}
+
+
+	/**
+	 * Skips a nested object or array, whose opening bracket has not been
+	 * read.
+	 *
+	 * @throws IOException If an I/O error occurs, or the input ends first.
+	 */
+	private void skipNested() throws IOException {
+		int depth = 0;
+		do {
+			if (!fill()) {
+				throw error("unexpected end of input");
+			}
+			char ch = buf[pos++];
+			if (ch=='"') {
+				readString();
+			}
+			else if (ch=='{' || ch=='[') {
+				depth++;
+			}
+			else if (ch=='}' || ch==']') {
+				depth--;
+			}
+			else if (ch=='\n') {
+				lineNumber++;
+			}
+		} while (depth>0);
+	}
+
+
+	/**
+	 * Skips whitespace.
+	 *
+	 * @return The next character, which is not consumed, or <code>-1</code>
+	 *         at the end of the input.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private int skipWhitespace() throws IOException {
+		while (fill()) {
+			char ch = buf[pos];
+			if (ch=='\n') {
+				lineNumber++;
+			}
+			else if (ch!=' ' && ch!='\t' && ch!='\r') {
+				return ch;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+
+	private static boolean equals(StringBuilder sb, String str) {
+		int len = str.length();
+		if (sb.length()!=len) {
+			return false;
+		}
+		for (int i=0; i<len; i++) {
+			if (sb.charAt(i)!=str.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Opens a file of Universal Ctags JSON output.
+	 *
+	 * @param filePath The file to read.
+	 * @return The reader.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static JsonTagReader open(String filePath) throws IOException {
+		return new JsonTagReader(new FileInputStream(filePath));
+	}
+
+
+	/**
+	 * Parses an integer, without creating a string.  Fractions and
+	 * exponents, which line numbers do not have, yield <code>0</code>.
+	 */
+	private static long toLong(StringBuilder sb) {
+		long value = 0;
+		int len = sb.length();
+		int i = len>0 && sb.charAt(0)=='-' ? 1 : 0;
+		for (; i<len; i++) {
+			char ch = sb.charAt(i);
+			if (ch<'0' || ch>'9') {
+				return 0;
+			}
+			value = value*10 + (ch-'0');
+		}
+		return sb.length()>0 && sb.charAt(0)=='-' ? -value : value;
+	}
+
+
+}
\ No newline at end of file
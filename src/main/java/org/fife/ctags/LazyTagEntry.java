@@ -0,0 +1,564 @@
+package org.fife.ctags;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A reusable, "flyweight" alternative to {@link TagEntry}.  Rather than
+ * splitting a tag line into strings up front, parsing simply records where
+ * each field starts and ends in an internal byte buffer.  Values are only
+ * decoded into <code>String</code>s when their getters are called, and the
+ * buffer is reused for the next line parsed, so scanning many lines and
+ * discarding most of them allocates almost nothing:
+ *
+ * <pre>
+ * TagCursor cursor = tagFile.createCursor();
+ * LazyTagEntry entry = new LazyTagEntry();
+ * while (cursor.next(null)) {
+ *    cursor.getEntry(entry);
+ *    if (entry.isKind("c")) {
+ *       list.add(entry.toTagEntry());
+ *    }
+ * }
+ * </pre>
+ *
+ * Lines are decoded as UTF-8.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class LazyTagEntry {
+
+	private byte[] line;
+	private int length;
+
+	private int nameEnd;
+	private int fileStart;
+	private int fileEnd;
+	private int patternStart;		/* -1 if the address is a line number */
+	private int patternEnd;
+	private int fieldsStart;		/* just past ';"', or -1 if no fields */
+	private long addressLineNumber;
+
+	// Extension field information, gathered on first request.
+	private boolean fieldsScanned;
+	private int kindStart;
+	private int kindEnd;
+	private boolean fileScope;
+	private long fieldLineNumber;
+
+	// Decoded values, created on first request.
+	private String name;
+	private String file;
+	private String pattern;
+	private String kind;
+
+	private static final byte[] KIND = { 'k', 'i', 'n', 'd' };
+	private static final byte[] FILE = { 'f', 'i', 'l', 'e' };
+	private static final byte[] LINE = { 'l', 'i', 'n', 'e' };
+
+
+	/**
+	 * Creates a new, empty <code>LazyTagEntry</code>.
+	 */
+	public LazyTagEntry() {
+		line = new byte[256];
+	}
+
+
+	/**
+	 * Creates a new <code>LazyTagEntry</code> and parses a line into it.
+	 *
+	 * @param line A line from a ctag file.
+	 */
+	public LazyTagEntry(String line) {
+		this();
+		parseTagLine(line);
+	}
+
+
+	/**
+	 * Adds the extension fields of this tag, other than <code>kind</code>,
+	 * <code>file</code> and <code>line</code>, to a list.
+	 *
+	 * @param list The list to add to.
+	 */
+	private void addExtensionFields(List<TagExtensionField> list) {
+		int p = fieldsStart;
+		while (p!=-1 && p<length) {
+			if (line[p]=='\t') {
+				p++;
+			}
+			int end = indexOf('\t', p, length);
+			int colon = indexOf(':', p, end);
+			if (colon<end && !regionEquals(p, colon, KIND) &&
+					!regionEquals(p, colon, FILE) &&
+					!regionEquals(p, colon, LINE)) {
+				list.add(new TagExtensionField(decode(p, colon),
+												decode(colon+1, end)));
+			}
+			p = end;
+		}
+	}
+
+
+	/**
+	 * Copies this entry into a <code>TagEntry</code>.
+	 *
+	 * @param entry The entry to populate.
+	 * @see #toTagEntry()
+	 */
+	public void copyTo(TagEntry entry) {
+		scanFields();
+		entry.name = getName();
+		entry.file = getFile();
+		entry.pattern = getPattern();
+		entry.lineNumber = getLineNumber();
+		entry.kind = getKind();
+		entry.fileScope = fileScope;
+		entry.fieldList.clear();
+		addExtensionFields(entry.fieldList);
+	}
+
+
+	private String decode(int start, int end) {
+		return new String(line, start, end-start, MappedTagBuffer.UTF8);
+	}
+
+
+	/**
+	 * Ensures the internal buffer can hold a line of a given length.
+	 *
+	 * @param len The length of the line.
+	 * @return The buffer.
+	 */
+	byte[] ensureCapacity(int len) {
+		if (line.length<len) {
+			line = new byte[Math.max(len, line.length*2)];
+		}
+		return line;
+	}
+
+
+	/**
+	 * Returns the value of an extension field.  This has the same semantics
+	 * as <code>CTagReader.tagsField()</code>.
+	 *
+	 * @param key The key of the field.
+	 * @return The value of the field, or <code>null</code> if this entry
+	 *         does not have the field.
+	 */
+	public String getField(String key) {
+
+		if (key.equals("kind")) {
+			return getKind();
+		}
+		else if (key.equals("file")) {
+			return isFileScope() ? CTagReader.EmptyString : null;
+		}
+
+		byte[] bytes = key.getBytes(MappedTagBuffer.UTF8);
+		int p = fieldsStart;
+		while (p!=-1 && p<length) {
+			if (line[p]=='\t') {
+				p++;
+			}
+			int end = indexOf('\t', p, length);
+			int colon = indexOf(':', p, end);
+			if (colon<end && regionEquals(p, colon, bytes)) {
+				return decode(colon+1, end);
+			}
+			p = end;
+		}
+		return null;
+
+	}
+
+
+	/**
+	 * Returns the extension fields of this tag, other than
+	 * <code>kind</code>, <code>file</code> and <code>line</code>, as
+	 * <code>TagEntry.fieldList</code> would contain them.
+	 *
+	 * @return The extension fields.  This is a new list.
+	 */
+	public List<TagExtensionField> getFields() {
+		List<TagExtensionField> list = new ArrayList<TagExtensionField>(1);
+		addExtensionFields(list);
+		return list;
+	}
+
+
+	/**
+	 * Returns the path of the source file containing this tag.
+	 *
+	 * @return The file.
+	 */
+	public String getFile() {
+		if (file==null && fileStart<=fileEnd) {
+			file = decode(fileStart, fileEnd);
+		}
+		return file;
+	}
+
+
+	/**
+	 * Returns the kind of this tag.
+	 *
+	 * @return The kind, or <code>null</code> if it is not known.
+	 */
+	public String getKind() {
+		scanFields();
+		if (kind==null && kindStart!=-1) {
+			kind = decode(kindStart, kindEnd);
+		}
+		return kind;
+	}
+
+
+	/**
+	 * Returns the line number of this tag in its source file.
+	 *
+	 * @return The line number, or <code>0</code> if it is not known.
+	 */
+	public long getLineNumber() {
+		if (patternStart==-1) {
+			return addressLineNumber;
+		}
+		scanFields();
+		return fieldLineNumber;
+	}
+
+
+	/**
+	 * Returns the name of this tag.
+	 *
+	 * @return The name.
+	 */
+	public String getName() {
+		if (name==null) {
+			name = decode(0, nameEnd);
+		}
+		return name;
+	}
+
+
+	/**
+	 * Returns the pattern for locating this tag in its source file.
+	 *
+	 * @return The pattern, or <code>null</code> if this tag has a line
+	 *         number instead.
+	 * @see #getPlainTextPattern()
+	 */
+	public String getPattern() {
+		if (pattern==null && patternStart!=-1) {
+			pattern = decode(patternStart, patternEnd);
+		}
+		return pattern;
+	}
+
+
+	/**
+	 * Returns a "plain text" version of the pattern.
+	 *
+	 * @return The pattern, or <code>null</code> if there is none.
+	 * @see TagEntry#getPlainTextPattern()
+	 */
+	public String getPlainTextPattern() {
+		String pattern = getPattern();
+		return pattern==null ? null : TagEntry.fixEscapes(
+								pattern.substring(2, pattern.length()-2));
+	}
+
+
+	/**
+	 * Returns the internal buffer holding the current line.  Used by
+	 * {@link TagTable} to copy fields without decoding them.
+	 *
+	 * @return The buffer.
+	 */
+	byte[] getBuffer() {
+		return line;
+	}
+
+
+	/**
+	 * Returns the offset of the extension fields in the buffer.
+	 *
+	 * @return The offset just past the <code>;"</code>, or <code>-1</code>
+	 *         if there are no extension fields.
+	 */
+	int getFieldsOffset() {
+		return fieldsStart;
+	}
+
+
+	/**
+	 * Returns the length of the current line.
+	 *
+	 * @return The length of the line, in bytes.
+	 */
+	int getLength() {
+		return length;
+	}
+
+
+	/**
+	 * Returns the length of the name of the current line.
+	 *
+	 * @return The length of the name, in bytes.
+	 */
+	int getNameLength() {
+		return nameEnd;
+	}
+
+
+	/**
+	 * Returns the end offset of the pattern in the buffer.
+	 *
+	 * @return The end offset, exclusive.
+	 * @see #getPatternOffset()
+	 */
+	int getPatternEndOffset() {
+		return patternEnd;
+	}
+
+
+	/**
+	 * Returns the offset of the pattern in the buffer.
+	 *
+	 * @return The offset, or <code>-1</code> if there is no pattern.
+	 * @see #getPatternEndOffset()
+	 */
+	int getPatternOffset() {
+		return patternStart;
+	}
+
+
+	private int indexOf(int b, int start, int end) {
+		while (start<end && line[start]!=b) {
+			start++;
+		}
+		return start;
+	}
+
+
+	/**
+	 * Returns whether this tag is of file-limited scope.
+	 *
+	 * @return Whether this tag is of file-limited scope.
+	 */
+	public boolean isFileScope() {
+		scanFields();
+		return fileScope;
+	}
+
+
+	/**
+	 * Returns whether this tag is of a specific kind, without decoding the
+	 * kind.
+	 *
+	 * @param kind The kind to check for.
+	 * @return Whether this tag is of that kind.
+	 */
+	public boolean isKind(String kind) {
+		return isKind(kind.getBytes(MappedTagBuffer.UTF8));
+	}
+
+
+	/**
+	 * Returns whether this tag is of a specific kind, without decoding the
+	 * kind.
+	 *
+	 * @param kind The UTF-8 bytes of the kind to check for.
+	 * @return Whether this tag is of that kind.
+	 */
+	boolean isKind(byte[] kind) {
+		scanFields();
+		return kindStart!=-1 && regionEquals(kindStart, kindEnd, kind);
+	}
+
+
+	/**
+	 * Returns whether the name of this tag is equal to a string.
+	 *
+	 * @param name The string to compare against.
+	 * @return Whether the name is equal to <code>name</code>.
+	 */
+	public boolean nameEquals(String name) {
+		return regionEquals(0, nameEnd, name.getBytes(MappedTagBuffer.UTF8));
+	}
+
+
+	/**
+	 * Parses a line that has already been copied into the internal buffer
+	 * (see {@link #ensureCapacity(int)}).
+	 *
+	 * @param len The length of the line.
+	 */
+	void parse(int len) {
+
+		length = len;
+		name = file = pattern = kind = null;
+		fieldsScanned = false;
+		patternStart = fieldsStart = -1;
+		addressLineNumber = 0;
+
+		nameEnd = indexOf('\t', 0, len);
+		fileStart = Math.min(nameEnd + 1, len);
+		fileEnd = indexOf('\t', fileStart, len);
+		int p = fileEnd + 1;
+		if (p>=len) {
+			return;
+		}
+
+		byte b = line[p];
+		if (b=='/' || b=='?') {
+			/* parse pattern. */
+			patternStart = p;
+			for (p++; p<len; p++) {
+				if (line[p]=='\\') {
+					p++;
+				}
+				else if (line[p]==b) {
+					break;
+				}
+			}
+			if (p>=len) {
+				/* Invalid pattern. */
+				patternStart = -1;
+				return;
+			}
+			patternEnd = ++p;
+		}
+		else if (b>='0' && b<='9') {
+			/* Parse line number. */
+			while (p<len && line[p]>='0' && line[p]<='9') {
+				addressLineNumber = addressLineNumber*10 + (line[p++]-'0');
+			}
+		}
+		else {
+			/* Invalid pattern. */
+			return;
+		}
+
+		if (p+1<len && line[p]==';' && line[p+1]=='"') {
+			fieldsStart = p + 2;
+		}
+
+	}
+
+
+	/**
+	 * Parses a range of bytes from a ctag file into this entry.  The bytes
+	 * are copied, so <code>bytes</code> may be reused by the caller.
+	 *
+	 * @param bytes The bytes of the line.
+	 * @param offs The offset of the start of the line.
+	 * @param len The length of the line, not including any line
+	 *        terminator.
+	 */
+	public void parseTagLine(byte[] bytes, int offs, int len) {
+		System.arraycopy(bytes, offs, ensureCapacity(len), 0, len);
+		parse(len);
+	}
+
+
+	/**
+	 * Parses a line from a ctag file into this entry.
+	 *
+	 * @param line A line from a ctag file.
+	 */
+	public void parseTagLine(String line) {
+		byte[] bytes = line.getBytes(MappedTagBuffer.UTF8);
+		parseTagLine(bytes, 0, bytes.length);
+	}
+
+
+	private boolean regionEquals(int start, int end, byte[] bytes) {
+		if (end-start!=bytes.length) {
+			return false;
+		}
+		for (int i=0; i<bytes.length; i++) {
+			if (line[start+i]!=bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Locates the kind, file and line extension fields, if it has not
+	 * already been done for the current line.
+	 */
+	private void scanFields() {
+
+		if (fieldsScanned) {
+			return;
+		}
+		fieldsScanned = true;
+		kindStart = kindEnd = -1;
+		fileScope = false;
+		fieldLineNumber = 0;
+
+		int p = fieldsStart;
+		while (p!=-1 && p<length) {
+			if (line[p]=='\t') {
+				p++;
+			}
+			int end = indexOf('\t', p, length);
+			int colon = indexOf(':', p, end);
+			// If there was no ':', then this MUST be a 'kind' field.
+			if (colon==end) {
+				if (end>p) {
+					kindStart = p;
+					kindEnd = end;
+				}
+			}
+			else if (regionEquals(p, colon, KIND)) {
+				kindStart = colon + 1;
+				kindEnd = end;
+			}
+			else if (regionEquals(p, colon, FILE)) {
+				fileScope = true;
+			}
+			else if (regionEquals(p, colon, LINE)) {
+				long value = 0;
+				for (int i=colon+1; i<end && line[i]>='0' && line[i]<='9'; i++) {
+					value = value*10 + (line[i]-'0');
+				}
+				fieldLineNumber = value;
+			}
+			p = end;
+		}
+
+	}
+
+
+	/**
+	 * Creates a <code>TagEntry</code> from this entry.
+	 *
+	 * @return The new tag entry.
+	 * @see #copyTo(TagEntry)
+	 */
+	public TagEntry toTagEntry() {
+		TagEntry entry = new TagEntry();
+		copyTo(entry);
+		return entry;
+	}
+
+
+	/**
+	 * Returns the name of this tag.
+	 *
+	 * @return A string representation of this entry.
+	 */
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,299 @@
+package org.fife.ctags;
+
+import org.fife.io.OutputCapture;
+import org.fife.io.ProcessRunner;
+import org.fife.io.ProcessRunnerOutputListener;
+
+
+/**
+ * A {@link TagTable} built from the output of a running ctags process.
+ * Rather than having ctags write a tag file, waiting for it to finish and
+ * then loading the file, have it write to stdout (<code>-f -</code>) and
+ * use this class as the <code>ProcessRunner</code>'s output listener.  Tag
+ * lines are added to the table as they arrive, and snapshots of the table
+ * are published as it grows, so it can be searched before ctags exits:
+ *
+ * <pre>
+ * ProcessRunner runner = new ProcessRunner(new String[] {
+ *       "ctags", "-f", "-", "--sort=no", "--fields=+n", "-R", "src" });
+ * LiveTagIndex index = LiveTagIndex.start(runner);
+ * ...
+ * TagTable table = index.getTable(); // The tags found so far
+ * </pre>
+ *
+ * Pass <code>--sort=no</code>: tables are sorted as they are built, and a
+ * sorting ctags writes nothing until it has found every tag.
+ * {@link #start(ProcessRunner)} also limits the runner to keeping only the
+ * last lines of output; if you set this class as a runner's listener
+ * yourself, set a bounded {@link OutputCapture} too, or the runner keeps a
+ * second copy of all of the tags as a <code>String</code>.<p>
+ *
+ * Each snapshot is an immutable <code>TagTable</code> built from all of
+ * the lines received so far.  To keep the total cost of these rebuilds
+ * proportional to that of building the final table once, a snapshot is
+ * only published when the number of new lines is at least the size of the
+ * previous snapshot, or when the publish interval has passed and building
+ * the snapshot would take a small fraction of it.  The final table is
+ * published when the process completes, whether or not it succeeded.  This
+ * class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class LiveTagIndex implements ProcessRunnerOutputListener {
+
+	private ProcessRunnerOutputListener delegate;
+	private long publishInterval;
+	private TagTable.Builder builder;
+	private TagFileInfo info;
+	private int pending;			/* lines added since the last snapshot */
+	private long lastPublishTime;
+	private long lastBuildTime;
+	private volatile TagTable table;
+	private volatile boolean complete;
+	private int returnCode;
+	private Throwable error;
+
+	/**
+	 * The minimum number of new lines before a snapshot is published.
+	 */
+	private static final int MIN_BATCH_SIZE		= 1000;
+
+	/**
+	 * A snapshot is only published on time if building it took less than
+	 * <code>1/BUILD_TIME_FACTOR</code> of the publish interval.
+	 */
+	private static final int BUILD_TIME_FACTOR	= 10;
+
+	/**
+	 * The number of lines of output kept by runners started by this class,
+	 * e.g. for showing ctags' error messages.
+	 */
+	private static final int MAX_CAPTURED_LINES	= 100;
+
+
+	/**
+	 * Constructor.
+	 */
+	public LiveTagIndex() {
+		this(null);
+	}
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param delegate A listener to forward all output and the completion
+	 *        notification to, e.g. to display stderr.  This may be
+	 *        <code>null</code>.
+	 */
+	public LiveTagIndex(ProcessRunnerOutputListener delegate) {
+		this.delegate = delegate;
+		publishInterval = 500;
+		builder = new TagTable.Builder();
+		info = new TagFileInfo();
+		info.format = 2;
+		info.sort = CTagReader.TAG_SORTED;
+		builder.setInfo(info);
+		table = builder.build();
+		lastPublishTime = System.currentTimeMillis();
+		returnCode = Integer.MIN_VALUE;
+	}
+
+
+	/**
+	 * Returns the error the process ended with, if any.
+	 *
+	 * @return The error, or <code>null</code> if there was none or the
+	 *         process has not completed.
+	 * @see #isComplete()
+	 */
+	public synchronized Throwable getError() {
+		return error;
+	}
+
+
+	/**
+	 * Returns the minimum time between snapshots published because of
+	 * elapsed time, rather than the number of new lines.
+	 *
+	 * @return The interval, in milliseconds.
+	 * @see #setPublishInterval(long)
+	 */
+	public synchronized long getPublishInterval() {
+		return publishInterval;
+	}
+
+
+	/**
+	 * Returns the return code of the process.
+	 *
+	 * @return The return code, or <code>Integer.MIN_VALUE</code> if the
+	 *         process has not completed or terminated abnormally.
+	 * @see #isComplete()
+	 */
+	public synchronized int getReturnCode() {
+		return returnCode;
+	}
+
+
+	/**
+	 * Returns the latest snapshot of the table.  This never blocks.
+	 *
+	 * @return The table.  This is never <code>null</code>, but is empty
+	 *         until the first snapshot is published.
+	 * @see #waitForTable()
+	 */
+	public TagTable getTable() {
+		return table;
+	}
+
+
+	/**
+	 * Returns whether the process has completed and the final table has
+	 * been published.
+	 *
+	 * @return Whether the process has completed.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+
+	/**
+	 * Called when the process writes output.  Lines written to stdout are
+	 * added to the table.
+	 *
+	 * @param p The process.
+	 * @param output The line written.
+	 * @param stdout Whether this is stdout output.
+	 */
+	@Override
+	public void outputWritten(Process p, String output, boolean stdout) {
+		if (stdout && output.length()>0) {
+			synchronized (this) {
+				if (output.startsWith(CTagReader.PseudoTagPrefix)) {
+					TagEntry entry = new TagEntry(output);
+					JsonTagReader.readPseudoTag(info, entry.name.substring(
+							CTagReader.PseudoTagPrefix.length()), entry.file);
+					info.sort = CTagReader.TAG_SORTED; // Tables always are
+				}
+				else {
+					builder.add(output);
+					pending++;
+					if (shouldPublish()) {
+						publish();
+					}
+				}
+			}
+		}
+		if (delegate!=null) {
+			delegate.outputWritten(p, output, stdout);
+		}
+	}
+
+
+	/**
+	 * Called when the process completes.  The final table is published.
+	 *
+	 * @param p The process.
+	 * @param rc The return code of the process.
+	 * @param e The error the process ended with, if any.
+	 */
+	@Override
+	public void processCompleted(Process p, int rc, Throwable e) {
+		synchronized (this) {
+			if (pending>0) {
+				publish();
+			}
+			builder = null; // No longer needed
+			returnCode = rc;
+			error = e;
+			complete = true;
+			notifyAll();
+		}
+		if (delegate!=null) {
+			delegate.processCompleted(p, rc, e);
+		}
+	}
+
+
+	/**
+	 * Builds and publishes a snapshot of the lines received so far.
+	 */
+	private void publish() {
+		long start = System.currentTimeMillis();
+		table = builder.build();
+		lastPublishTime = System.currentTimeMillis();
+		lastBuildTime = lastPublishTime - start;
+		pending = 0;
+	}
+
+
+	/**
+	 * Sets the minimum time between snapshots published because of elapsed
+	 * time, rather than the number of new lines.  Note that snapshots are
+	 * only published as output arrives.
+	 *
+	 * @param millis The interval, in milliseconds.
+	 * @see #getPublishInterval()
+	 */
+	public synchronized void setPublishInterval(long millis) {
+		this.publishInterval = millis;
+	}
+
+
+	/**
+	 * Returns whether enough lines have arrived, or enough time has passed,
+	 * to publish a new snapshot.
+	 *
+	 * @return Whether to publish a snapshot.
+	 */
+	private boolean shouldPublish() {
+		if (pending<MIN_BATCH_SIZE && table.size()>0) {
+			return false;
+		}
+		if (pending>=Math.max(MIN_BATCH_SIZE, table.size())) {
+			return true;
+		}
+		long elapsed = System.currentTimeMillis() - lastPublishTime;
+		return elapsed>=publishInterval &&
+				elapsed>=lastBuildTime*BUILD_TIME_FACTOR;
+	}
+
+
+	/**
+	 * Runs a process on a new daemon thread, indexing its output.
+	 *
+	 * @param runner The process to run.  Its output listener is replaced,
+	 *        and it is set to keep only the last few lines of output.
+	 * @return The index being built.
+	 */
+	public static LiveTagIndex start(ProcessRunner runner) {
+		LiveTagIndex index = new LiveTagIndex();
+		runner.setOutputListener(index);
+		runner.setOutputCapture(OutputCapture.lastLines(MAX_CAPTURED_LINES));
+		Thread t = new Thread(runner, "LiveTagIndex");
+		t.setDaemon(true);
+		t.start();
+		return index;
+	}
+
+
+	/**
+	 * Waits for the process to complete and returns the final table.
+	 *
+	 * @return The table.
+	 * @throws InterruptedException If this thread is interrupted while
+	 *         waiting.
+	 * @see #getTable()
+	 */
+	public synchronized TagTable waitForTable() throws InterruptedException {
+		while (!complete) {
+			wait();
+		}
+		return table;
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,280 @@
+package org.fife.ctags;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+
+/**
+ * A read-only, memory-mapped view of a ctag file.  Files larger than 2 GB
+ * are mapped as a series of 1 GB windows, so positions are always
+ * <code>long</code>s.  Only absolute reads are performed on the underlying
+ * buffers, so a single instance may be shared by many threads.<p>
+ *
+ * Tag names are compared directly against the mapped bytes, so searching
+ * does not create a <code>String</code> per line probed.  Lines are decoded
+ * as UTF-8 when they are actually needed.  Small files may instead be
+ * read into memory with {@link #read(String)}, so that they are not left
+ * mapped (and, on Windows, locked) until garbage collected.  This class is
+ * public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+final class MappedTagBuffer {
+
+	/**
+	 * Tag files are written and sorted byte-wise, so UTF-8 is the one
+	 * encoding for which byte order matches the order of the names.
+	 */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private ByteBuffer[] segments;
+	private long size;
+	private long lastModified;
+
+
+	/**
+	 * Maps a ctag file into memory.
+	 *
+	 * @param filePath The file to map.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	MappedTagBuffer(String filePath) throws IOException {
+		// Taken before mapping, so that if the file is rewritten while it
+		// is mapped, this is older than the file, not newer than the data.
+		lastModified = new File(filePath).lastModified();
+		RandomAccessFile raf = new RandomAccessFile(filePath, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			size = channel.size();
+			int count = (int)((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+			segments = new ByteBuffer[count];
+			for (int i=0; i<count; i++) {
+				long start = (long)i << SEGMENT_SHIFT;
+				long len = Math.min(SEGMENT_SIZE, size - start);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+											start, len);
+			}
+		} finally {
+			// The mappings remain valid after the channel is closed.
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param buf The file's content.
+	 * @param lastModified The modification time of the file.
+	 */
+	private MappedTagBuffer(ByteBuffer buf, long lastModified) {
+		segments = new ByteBuffer[] { buf };
+		size = buf.limit();
+		this.lastModified = lastModified;
+	}
+
+
+	/**
+	 * Compares a tag name against the name of the line starting at
+	 * <code>lineStart</code>, in the manner of <code>strcmp()</code> (or
+	 * <code>strncmp()</code> for partial matches) in readtags.c.
+	 *
+	 * @param lineStart The offset of the start of the line.
+	 * @param lineEnd The offset of the end of the line (exclusive).
+	 * @param search The UTF-8 bytes of the name being searched for.
+	 * @param partial Whether only the first <code>search.length</code>
+	 *        bytes of the line's name should be compared.
+	 * @param ignoreCase Whether to compare ASCII letters case-insensitively.
+	 * @return A value less than, equal to, or greater than zero if
+	 *         <code>search</code> is less than, equal to, or greater than
+	 *         the line's name.
+	 */
+	int compareName(long lineStart, long lineEnd, byte[] search,
+					boolean partial, boolean ignoreCase) {
+		int len = search.length;
+		long p = lineStart;
+		for (int i=0; i<len; i++, p++) {
+			int b = p<lineEnd ? (get(p) & 0xff) : '\t';
+			if (b=='\t') {
+				return 1; // The line's name is a prefix of "search"
+			}
+			int s = search[i] & 0xff;
+			if (ignoreCase) {
+				s = toUpper(s);
+				b = toUpper(b);
+			}
+			if (s!=b) {
+				return s - b;
+			}
+		}
+		if (partial || p>=lineEnd || get(p)=='\t') {
+			return 0;
+		}
+		return -1; // "search" is a prefix of the line's name
+	}
+
+
+	/**
+	 * Copies a range of bytes out of this buffer.
+	 *
+	 * @param start The offset to start copying from.
+	 * @param dest The destination array.
+	 * @param offs The offset into <code>dest</code> to copy to.
+	 * @param len The number of bytes to copy.
+	 */
+	void copy(long start, byte[] dest, int offs, int len) {
+		while (len>0) {
+			ByteBuffer segment = segments[(int)(start >>> SEGMENT_SHIFT)];
+			int segOffs = (int)(start & SEGMENT_MASK);
+			int count = Math.min(len, segment.limit() - segOffs);
+			for (int i=0; i<count; i++) {
+				dest[offs++] = segment.get(segOffs + i);
+			}
+			start += count;
+			len -= count;
+		}
+	}
+
+
+	/**
+	 * Returns the offset of the <code>'\n'</code> terminating the line that
+	 * contains the specified offset, or the size of the file if the last
+	 * line is not terminated.
+	 *
+	 * @param pos An offset into the file.
+	 * @return The offset of the end of the line.
+	 */
+	long findLineEnd(long pos) {
+		while (pos<size && get(pos)!='\n') {
+			pos++;
+		}
+		return pos;
+	}
+
+
+	/**
+	 * Returns the offset just past a line's name, i.e. the offset of the
+	 * first tab in the line, or <code>lineEnd</code> if there is none.
+	 *
+	 * @param lineStart The offset of the start of the line.
+	 * @param lineEnd The offset of the end of the line (exclusive).
+	 * @return The offset of the end of the line's name.
+	 */
+	long findNameEnd(long lineStart, long lineEnd) {
+		long p = lineStart;
+		while (p<lineEnd && get(p)!='\t') {
+			p++;
+		}
+		return p;
+	}
+
+
+	/**
+	 * Returns the byte at a specific offset.
+	 *
+	 * @param pos The offset.
+	 * @return The byte.
+	 */
+	byte get(long pos) {
+		return segments[(int)(pos >>> SEGMENT_SHIFT)].get((int)(pos & SEGMENT_MASK));
+	}
+
+
+	/**
+	 * Returns a range of this file decoded as UTF-8.
+	 *
+	 * @param start The start offset.
+	 * @param end The end offset (exclusive).
+	 * @return The decoded text.
+	 */
+	String getString(long start, long end) {
+		byte[] bytes = new byte[(int)(end - start)];
+		copy(start, bytes, 0, bytes.length);
+		return new String(bytes, UTF8);
+	}
+
+
+	/**
+	 * Returns the end of the content of a line, i.e. <code>lineEnd</code>
+	 * with any trailing <code>'\r'</code> stripped.
+	 *
+	 * @param lineStart The offset of the start of the line.
+	 * @param lineEnd The offset of the line's <code>'\n'</code>.
+	 * @return The end of the line's content (exclusive).
+	 */
+	long getContentEnd(long lineStart, long lineEnd) {
+		if (lineEnd>lineStart && get(lineEnd-1)=='\r') {
+			lineEnd--;
+		}
+		return lineEnd;
+	}
+
+
+	/**
+	 * Returns the modification time of the file when it was mapped.
+	 *
+	 * @return The modification time, as returned by
+	 *         <code>File.lastModified()</code>.
+	 */
+	long lastModified() {
+		return lastModified;
+	}
+
+
+	/**
+	 * Reads a file into memory, rather than mapping it.
+	 *
+	 * @param filePath The file to read.
+	 * @return The buffer.
+	 * @throws IOException If an I/O error occurs, or the file is 2 GB or
+	 *         larger.
+	 */
+	static MappedTagBuffer read(String filePath) throws IOException {
+		long lastModified = new File(filePath).lastModified();
+		RandomAccessFile raf = new RandomAccessFile(filePath, "r");
+		try {
+			long size = raf.length();
+			if (size>Integer.MAX_VALUE) {
+				throw new IOException("File too large: " + filePath);
+			}
+			byte[] bytes = new byte[(int)size];
+			raf.readFully(bytes);
+			return new MappedTagBuffer(ByteBuffer.wrap(bytes), lastModified);
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Returns the size of the mapped file.
+	 *
+	 * @return The size of the file, in bytes.
+	 */
+	long size() {
+		return size;
+	}
+
+
+	/**
+	 * Converts an ASCII letter to upper case, as <code>toupper()</code>
+	 * does in the C locale.
+	 *
+	 * @param b The byte, as an unsigned value.
+	 * @return The upper-case version of the byte.
+	 */
+	static int toUpper(int b) {
+		return (b>='a' && b<='z') ? (b - ('a'-'A')) : b;
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,485 @@
+package org.fife.ctags;
+
+
+/**
+ * A position in, and a search over, a {@link TagFile}.  Cursors are cheap
+ * to create and hold all of the state of a query, so many threads can
+ * search the same <code>TagFile</code> at once by each using their own
+ * cursor.  A single cursor is not thread-safe.<p>
+ *
+ * The searching algorithms are those of <code>CTagReader</code>, which in
+ * turn come from readtags.c in the Exuberant Ctags source distribution.
+ * This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ * @see TagFile#createCursor()
+ */
+public final class TagCursor {
+
+	// Other #defines found in the code.
+	private static final int JUMP_BACK			= 512;
+
+	private TagFile file;
+	private MappedTagBuffer buf;
+	private long size;
+
+	private long pos;				/* file position of first character of `line' */
+	private long lineEnd;			/* end of the content of `line' */
+	private long nextPos;			/* file position of the next line to read */
+	private String line;			/* last line read, decoded lazily */
+
+	// Was "search" struct.
+	private byte[] searchName;		/* UTF-8 form of the name last searched for */
+	private boolean searchPartial;	/* peforming partial match */
+	private boolean searchIgnoreCase;	/* ignoring case */
+	private int searchHash;			/* hash of searchName, for hashed scans */
+	private int searchLine;			/* next line to check in a hashed scan, or -1 */
+	private int foldPos;			/* next position to check in the fold index, or -1 */
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file The file to search.
+	 * @param startPos The offset of the first line to read.
+	 */
+	TagCursor(TagFile file, long startPos) {
+		this.file = file;
+		this.buf = file.getBuffer();
+		this.size = buf.size();
+		this.nextPos = startPos;
+		this.searchLine = -1;
+		this.foldPos = -1;
+	}
+
+
+	/**
+	 * Returns whether this cursor's search can be done with a binary
+	 * search, i.e. whether the file's sort order matches the case
+	 * sensitivity of the search.
+	 *
+	 * @return Whether to use a binary search.
+	 */
+	private boolean isBinarySearch() {
+		int sortMethod = file.getSortMethod();
+		return (sortMethod == CTagReader.TAG_SORTED && !searchIgnoreCase) ||
+			(sortMethod == CTagReader.TAG_FOLDSORTED && searchIgnoreCase);
+	}
+
+
+	/**
+	 * Finds the first tag matching a name.
+	 *
+	 * @param entry The entry to populate with the tag found.  This may be
+	 *        <code>null</code>.
+	 * @param name The name to search for.
+	 * @param options A bit flag; checks for
+	 *        <code>CTagReader.TAG_PARTIALMATCH</code> and
+	 *        <code>CTagReader.TAG_IGNORECASE</code>.
+	 * @return Whether a matching tag was found.
+	 * @see #findNext(TagEntry)
+	 */
+	public boolean find(TagEntry entry, String name, int options) {
+
+		boolean result = false;
+		searchName = name.getBytes(MappedTagBuffer.UTF8);
+		searchPartial = (options & CTagReader.TAG_PARTIALMATCH) != 0;
+		searchIgnoreCase = (options & CTagReader.TAG_IGNORECASE) != 0;
+
+		searchLine = -1;
+		foldPos = -1;
+		TagLineIndex index = file.getLineIndex();
+
+		if (isBinarySearch()) {
+			result = index!=null ? findBinaryIndexed(index) : findBinary();
+		}
+		else if (index!=null && !searchPartial && !searchIgnoreCase) {
+			searchHash = TagLineIndex.hashName(searchName);
+			searchLine = 0;
+			result = findHashed(index);
+		}
+		else if (index!=null) {
+			TagFoldIndex foldIndex = file.getFoldIndex();
+			foldPos = foldIndex.findStart(buf, index, searchName, searchPartial);
+			result = findFolded(foldIndex, index);
+		}
+		else {
+			nextPos = file.getFirstTagOffset();
+			result = findSequential();
+		}
+
+		if (result && entry!=null) {
+			entry.parseTagLine(getLine());
+		}
+
+		return result;
+
+	}
+
+
+	/**
+	 * Performs a binary search over the lines in a line index.  Only one
+	 * seek and line read is done per probe.
+	 *
+	 * @param index The line index.
+	 * @return Whether a match was found.
+	 */
+	private boolean findBinaryIndexed(TagLineIndex index) {
+		int low = 0;
+		int high = index.getLineCount();
+		while (low<high) {
+			int mid = (low + high) >>> 1;
+			seek(index.getLineOffset(mid));
+			readLine();
+			if (nameComparison()>0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if (low<index.getLineCount()) {
+			seek(index.getLineOffset(low));
+			return readLine() && nameComparison()==0;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Walks the fold index from <code>foldPos</code> to the next match.
+	 * All lines that match ignoring case are adjacent in the fold index, so
+	 * the walk stops at the first line that does not; for case-sensitive
+	 * searches, lines that only match ignoring case are skipped.  Matches
+	 * are returned in fold-sorted order, not file order.
+	 *
+	 * @param foldIndex The fold index.
+	 * @param index The line index.
+	 * @return Whether a match was found.
+	 */
+	private boolean findFolded(TagFoldIndex foldIndex, TagLineIndex index) {
+		int count = foldIndex.size();
+		while (foldPos<count) {
+			seek(index.getLineOffset(foldIndex.getLine(foldPos++)));
+			readLine();
+			if (buf.compareName(pos, lineEnd, searchName, searchPartial,
+								true)!=0) {
+				break;
+			}
+			if (!searchIgnoreCase && nameComparison()!=0) {
+				continue;
+			}
+			return true;
+		}
+		foldPos = count;
+		return false;
+	}
+
+
+	/**
+	 * Scans the name hashes in a line index for the next exact match,
+	 * starting at <code>searchLine</code>.  Lines are only read when their
+	 * hashes match.
+	 *
+	 * @param index The line index.
+	 * @return Whether a match was found.
+	 */
+	private boolean findHashed(TagLineIndex index) {
+		int count = index.getLineCount();
+		while (searchLine<count) {
+			int line = searchLine++;
+			if (index.getNameHash(line)==searchHash) {
+				seek(index.getLineOffset(line));
+				if (readLine() && nameComparison()==0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+
+	private boolean findBinary() {
+
+		boolean result = false;
+		long lower_limit = 0;
+		long upper_limit = size;
+		long last_pos = 0;
+		long pos = upper_limit / 2;
+
+		while (result != true) {
+
+			if (!readLineSeek(pos)) {
+				/* in case we fell off end of file */
+				result = findFirstMatchBefore();
+				break;
+			}
+			else if (pos == last_pos) {
+				/* prevent infinite loop if we backed up to beginning of file */
+				break;
+			}
+			else {
+
+				int comp = nameComparison();
+				last_pos = pos;
+				if (comp < 0) {
+					upper_limit = pos;
+					pos = lower_limit + ((upper_limit - lower_limit) / 2);
+				}
+				else if (comp > 0) {
+					lower_limit = pos;
+					pos = lower_limit + ((upper_limit - lower_limit) / 2);
+				}
+				else if (pos == 0)
+					result = true;
+				else
+					result = findFirstMatchBefore();
+			}
+
+		}
+
+		return result;
+
+	}
+
+
+	private boolean findFirstMatchBefore() {
+
+		boolean result = false;
+		boolean more_lines;
+		long start = pos;
+		findFirstNonMatchBefore();
+		do {
+			more_lines = readLine();
+			if (nameComparison() == 0)
+				result = true;
+		} while (more_lines && result!=true && pos<start);
+
+		return result;
+
+	}
+
+
+	private void findFirstNonMatchBefore() {
+
+		boolean more_lines;
+		int comp;
+		long start = pos;
+		long pos = start;
+
+		do {
+			if (pos < JUMP_BACK)
+				pos = 0;
+			else
+				pos = pos - JUMP_BACK;
+			more_lines = readLineSeek(pos);
+			comp = nameComparison();
+		} while (more_lines && comp==0 && pos>0 && pos<start);
+
+	}
+
+
+	/**
+	 * Finds the next tag matching the name and options passed to the most
+	 * recent call to {@link #find(TagEntry, String, int)}.
+	 *
+	 * @param entry The entry to populate with the tag found.  This may be
+	 *        <code>null</code>.
+	 * @return Whether another matching tag was found.
+	 */
+	public boolean findNext(TagEntry entry) {
+
+		if (searchName==null) {
+			return false;
+		}
+
+		boolean result = false;
+		if (isBinarySearch()) {
+			result = readLine() && nameComparison()==0;
+		}
+		else if (searchLine>-1) {
+			result = findHashed(file.getLineIndex());
+		}
+		else if (foldPos>-1) {
+			result = findFolded(file.getFoldIndex(), file.getLineIndex());
+		}
+		else {
+			result = findSequential();
+		}
+
+		if (result && entry!=null) {
+			entry.parseTagLine(getLine());
+		}
+		return result;
+
+	}
+
+
+	private boolean findSequential() {
+
+		boolean result = false;
+		while (result == false  &&  readLine()) {
+			if (nameComparison() == 0)
+				result = true;
+		}
+
+		return result;
+
+	}
+
+
+	/**
+	 * Moves to the first tag in the file.
+	 *
+	 * @param entry The entry to populate with the tag read.  This may be
+	 *        <code>null</code>.
+	 * @return Whether a tag was read; this is <code>false</code> if the
+	 *         file contains no tags.
+	 * @see #next(TagEntry)
+	 */
+	public boolean first(TagEntry entry) {
+		nextPos = file.getFirstTagOffset();
+		return next(entry);
+	}
+
+
+	/**
+	 * Populates a flyweight entry with the line last read by this cursor.
+	 * The line's bytes are copied into the entry's buffer, but nothing is
+	 * decoded until the entry's getters are called.
+	 *
+	 * @param entry The entry to populate.
+	 * @return Whether there was a line to populate it with.
+	 */
+	public boolean getEntry(LazyTagEntry entry) {
+		if (lineEnd<=pos) {
+			return false;
+		}
+		int len = (int)(lineEnd - pos);
+		buf.copy(pos, entry.ensureCapacity(len), 0, len);
+		entry.parse(len);
+		return true;
+	}
+
+
+	/**
+	 * Returns the line last read by this cursor.
+	 *
+	 * @return The line last read, or <code>null</code> if no line has
+	 *         been read yet, or the end of the file was reached.
+	 */
+	public String getLine() {
+		if (line==null && lineEnd>pos) {
+			line = buf.getString(pos, lineEnd);
+		}
+		return line;
+	}
+
+
+	/**
+	 * Returns the offset of the end of the content of the line last read.
+	 *
+	 * @return The offset, exclusive.
+	 * @see #getLineOffset()
+	 */
+	long getLineEndOffset() {
+		return lineEnd;
+	}
+
+
+	/**
+	 * Returns the offset of the line last read.
+	 *
+	 * @return The offset.
+	 * @see #getLineEndOffset()
+	 */
+	long getLineOffset() {
+		return pos;
+	}
+
+
+	/**
+	 * Returns the offset of the next line to be read.
+	 *
+	 * @return The offset.
+	 */
+	long getNextLineOffset() {
+		return nextPos;
+	}
+
+
+	/**
+	 * Returns the tag file this cursor is searching.
+	 *
+	 * @return The tag file.
+	 */
+	public TagFile getTagFile() {
+		return file;
+	}
+
+
+	private int nameComparison() {
+		return buf.compareName(pos, lineEnd, searchName, searchPartial,
+								searchIgnoreCase);
+	}
+
+
+	/**
+	 * Reads the next tag in the file.
+	 *
+	 * @param entry The entry to populate with the tag read.  This may be
+	 *        <code>null</code>.
+	 * @return Whether a tag was read; this is <code>false</code> at the
+	 *         end of the file.
+	 */
+	public boolean next(TagEntry entry) {
+		boolean result = readLine();
+		if (result && entry!=null) {
+			entry.parseTagLine(getLine());
+		}
+		return result;
+	}
+
+
+	/**
+	 * Reads the next line from the file.  Rather than decoding the line,
+	 * this simply notes where it starts and ends.  Empty lines are
+	 * skipped, as readtags.c does.
+	 *
+	 * @return <code>true</code> if the next line is successfully read, or
+	 *         <code>false</code> if EOF is encountered.
+	 */
+	boolean readLine() {
+		line = null;
+		while (nextPos<size) {
+			pos = nextPos;
+			long end = buf.findLineEnd(pos);
+			nextPos = end + 1;
+			lineEnd = buf.getContentEnd(pos, end);
+			if (lineEnd>pos)
+				return true;
+		}
+		pos = lineEnd = nextPos = size;
+		return false;
+	}
+
+
+	private boolean readLineSeek(long pos) {
+		nextPos = Math.min(pos, size);
+		boolean result = readLine();		/* Read probable partial line. */
+		if (pos>0 && result)
+			result = readLine();		/* Read complete line. */
+		return result;
+	}
+
+
+	/**
+	 * Moves this cursor so that the next line read is the one starting
+	 * at the specified offset.
+	 *
+	 * @param pos The offset of the start of a line.
+	 */
+	void seek(long pos) {
+		nextPos = Math.min(Math.max(pos, 0), size);
+	}
+
+
+}
\ No newline at end of file
@@ -81,7 +81,7 @@ public class TagEntry {
 	 * @param pattern The pattern read from the ctags file.
 	 * @return The pattern, with escaped characters un-escaped.
 	 */
-	private static final String fixEscapes(String pattern) {
+	static final String fixEscapes(String pattern) {
 
 		StringBuilder sb = new StringBuilder();
 
@@ -141,45 +141,56 @@ public class TagEntry {
 	/**
 	 * Parses the part of a ctag line that was added as an "extension."
 	 *
-	 * @param string The extension fields part of a ctag line (i.e.,
-	 *        everything after ';"').
+	 * @param line The ctag line.
+	 * @param start The offset of the extension fields part of the line
+	 *        (i.e., everything after ';"').
 	 */
-	private void parseExtensionFields(String string) {
-
-		if (string==null)
-			return;
-
-		string = string.trim();	// Cut off leading/trailing whitespace.
-
-		String[] keyValuePairs = string.split("\t");
-		int numKeyValuePairs = keyValuePairs.length;
-
-		for (int i=0; i<numKeyValuePairs; i++) {
-
-			int colonIndex = keyValuePairs[i].indexOf(':');
+	private void parseExtensionFields(String line, int start) {
+
+		// Cut off leading/trailing whitespace.
+		int len = line.length();
+		while (len>start && line.charAt(len-1)<=' ')
+			len--;
+		while (start<len && line.charAt(start)<=' ')
+			start++;
+
+		// Walk the tab-separated key/value pairs in place, rather than
+		// splitting into an intermediate array.
+		while (start<len) {
+
+			int end = line.indexOf('\t', start);
+			if (end==-1 || end>len) {
+				end = len;
+			}
+			int colonIndex = line.indexOf(':', start);
 
 			// If there was no ':', then this MUST be a 'kind' field (which
 			// is a single char always).
-			if (colonIndex==-1) {
-				kind = keyValuePairs[i];
+			if (colonIndex==-1 || colonIndex>end) {
+				if (end>start) {
+					kind = line.substring(start, end);
+				}
 			}
 
 			// MUST be of the form "<key>:<value>".
+			else if (line.startsWith("kind:", start)) {
+				kind = line.substring(colonIndex+1, end);
+			}
+			else if (line.startsWith("file:", start)) {
+				fileScope = true;
+			}
+			else if (line.startsWith("line:", start)) {
+				lineNumber = Long.parseLong(line.substring(colonIndex+1, end));
+			}
 			else {
-				String key = keyValuePairs[i].substring(0,colonIndex);
-				String value = keyValuePairs[i].substring(colonIndex+1);
-				if (key.equals("kind"))
-					kind = value;
-				else if (key.equals("file"))
-					fileScope = true;
-				else if (key.equals("line"))
-					lineNumber = Integer.parseInt(value);
-				else {
-					fieldList.add(new TagExtensionField(key, value));
-				}
+				String key = line.substring(start, colonIndex);
+				String value = line.substring(colonIndex+1, end);
+				fieldList.add(new TagExtensionField(key, value));
 			}
 
-		} // End of for (int i=0; i<numKeyValuePairs; i++).
+			start = end + 1;
+
+		}
 
 	}
 
@@ -194,6 +205,10 @@ public class TagEntry {
 
 		kind = null;
 		fileScope = false;
+		file = null;
+		pattern = null;
+		lineNumber = 0;
+		fieldList.clear();
 
 		// Get the index of the first tab.  Everything before it is the
 		// entry's name.
@@ -214,52 +229,46 @@ public class TagEntry {
 
 				// Next comes either the pattern or the line number
 				// (usually a pattern, but C #defines have line numbers).
-				String temp = line.substring(tabIndex2+1);
-				char tempChar = temp.charAt(0);
+				// Work with offsets into the line rather than substrings.
+				int pos = tabIndex2 + 1;
+				int len = line.length();
+				char tempChar = pos<len ? line.charAt(pos) : '\0';
 				if (tempChar=='/' || tempChar=='?') {
 					/* parse pattern. */
-					lineNumber = 0;
-					//entry.pattern = temp;
-					int curPos = 0, foo=0;
-					do {
-						foo = temp.indexOf(tempChar, curPos+1);
-						if (foo>-1)
-							curPos = foo;
-					} while (foo!=-1 && temp.charAt(foo-1)=='\\');
-					if (foo==-1) {
+					int end = pos + 1;
+					while (end<len && line.charAt(end)!=tempChar) {
+						if (line.charAt(end)=='\\')
+							end++;
+						end++;
+					}
+					if (end>=len) {
 						/* Invalid pattern. */
+						pos = len;
 					}
 					else  {
-						pattern = temp.substring(0, foo+1);
-						temp = temp.substring(foo+1);
+						pattern = line.substring(pos, end+1);
+						pos = end + 1;
 					}
 				}
 
 				else if (Character.isDigit(tempChar)) {
 					/* Parse line number. */
-					pattern = null;
-					int i = 0;
-					while (Character.isDigit(tempChar))
-						tempChar = temp.charAt(++i);
-					lineNumber = Integer.parseInt(temp.substring(0,i));
-					temp = temp.substring(i);
+					while (pos<len && Character.isDigit(line.charAt(pos)))
+						lineNumber = lineNumber*10 + (line.charAt(pos++)-'0');
 				}
 
 				else {
 					/* Invalid pattern. */
 				}
 
-				boolean fieldsPresent = temp.startsWith(";\"");
+				boolean fieldsPresent = line.startsWith(";\"", pos);
 				if (fieldsPresent)
-					parseExtensionFields(temp.substring(2));
+					parseExtensionFields(line, pos+2);
 
 			} // End of else.
 
 		} // End of else.
 
-		fieldList.clear();
-		fieldList.addAll(fieldList);
-
 	}
 
 
@@ -0,0 +1,369 @@
+package org.fife.ctags;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * An open, memory-mapped ctag file that may be shared by many threads.
+ * A <code>TagFile</code> is immutable once opened; all search state lives in
+ * the {@link TagCursor}s it hands out, so any number of threads can search
+ * the same file at once without locking, as long as each uses its own
+ * cursor:
+ *
+ * <pre>
+ * TagFile file = TagFile.open("tags");
+ * ...
+ * TagCursor cursor = file.createCursor(); // Cheap; one per query or thread
+ * TagEntry entry = new TagEntry();
+ * if (cursor.find(entry, "foo", CTagReader.TAG_FULLMATCH)) {
+ *    do {
+ *       ...
+ *    } while (cursor.findNext(entry));
+ * }
+ * </pre>
+ *
+ * There is no <code>close()</code> method; the file is unmapped when the
+ * <code>TagFile</code> and all of its cursors are garbage collected.  This
+ * class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ * @see CTagReader
+ */
+public final class TagFile {
+
+	private final String path;
+	private final MappedTagBuffer buf;
+	private final long firstTagPos;
+	private final TagLineIndex lineIndex;
+	private volatile TagFoldIndex foldIndex;	/* built on first use */
+
+	private final int format;
+	private final int sortMethod;
+	private final String programAuthor;
+	private final String programName;
+	private final String programUrl;
+	private final String programVersion;
+
+	/**
+	 * The minimum number of bytes parsed per task by bulk parses.
+	 */
+	private static final int MIN_CHUNK_SIZE	= 256 * 1024;
+
+
+	/**
+	 * Constructor.  Reads the pseudo-tags at the top of the file.
+	 *
+	 * @param path The path to the file.
+	 * @param buf The mapped file.
+	 * @param useLineIndex Whether to load (or create) a line index.
+	 */
+	private TagFile(String path, MappedTagBuffer buf, boolean useLineIndex) {
+
+		this.path = path;
+		this.buf = buf;
+
+		int format = 1;
+		int sortMethod = CTagReader.TAG_UNSORTED;
+		String author = null, name = null, url = null, version = null;
+
+		// Keep reading in lines until a non-pseudotag line is read.
+		TagCursor cursor = new TagCursor(this, 0);
+		TagEntry entry = new TagEntry();
+		long startOfLine = 0;
+		final int prefixLength = CTagReader.PseudoTagPrefix.length();
+		while (true) {
+			startOfLine = cursor.getNextLineOffset();
+			if (!cursor.readLine() ||
+					!cursor.getLine().startsWith(CTagReader.PseudoTagPrefix)) {
+				break;
+			}
+			entry.parseTagLine(cursor.getLine());
+			String key = entry.name.substring(prefixLength);
+			String value = entry.file;
+			if (key.equals("TAG_FILE_SORTED"))
+				sortMethod = CTagReader.toSortMethod(value);
+			else if (key.equals("TAG_FILE_FORMAT"))
+				format = Integer.parseInt(value);
+			else if (key.equals("TAG_PROGRAM_AUTHOR"))
+				author = value;
+			else if (key.equals("TAG_PROGRAM_NAME"))
+				name = value;
+			else if (key.equals("TAG_PROGRAM_URL"))
+				url = value;
+			else if (key.equals("TAG_PROGRAM_VERSION"))
+				version = value;
+		}
+
+		this.firstTagPos = startOfLine;
+		this.format = format;
+		this.sortMethod = sortMethod;
+		this.programAuthor = author;
+		this.programName = name;
+		this.programUrl = url;
+		this.programVersion = version;
+
+		this.lineIndex = useLineIndex ?
+				TagLineIndex.getIndex(path, buf, startOfLine, true) : null;
+
+	}
+
+
+	/**
+	 * Returns a new cursor for searching this file.  Cursors are cheap to
+	 * create, and are not thread-safe; each thread (or query) should use
+	 * its own.
+	 *
+	 * @return The cursor, positioned at the first tag in the file.
+	 */
+	public TagCursor createCursor() {
+		return new TagCursor(this, firstTagPos);
+	}
+
+
+	/**
+	 * Returns the tags whose names start with a prefix, as for code
+	 * completion.  Tags are read and parsed lazily as the returned iterator
+	 * is advanced, and reading stops as soon as <code>maxResults</code>
+	 * tags have been returned.
+	 *
+	 * @param prefix The prefix to search for.
+	 * @param options Search options; <code>TAG_PARTIALMATCH</code> is
+	 *        implied, and <code>TAG_IGNORECASE</code> may be specified.
+	 * @param maxResults The maximum number of tags to return, or a value
+	 *        <code>&lt;= 0</code> for no limit.
+	 * @param kind If non-<code>null</code>, only tags of this kind (e.g.
+	 *        <code>"m"</code> or <code>"method"</code>, depending on how the
+	 *        file was generated) are returned.
+	 * @return An iterator over the matching tags.
+	 */
+	public TagPrefixIterator findPrefix(String prefix, int options,
+									int maxResults, String kind) {
+		return new TagPrefixIterator(createCursor(), prefix, options,
+									maxResults, kind);
+	}
+
+
+	/**
+	 * Returns the mapped contents of this file.
+	 *
+	 * @return The mapped file.
+	 */
+	MappedTagBuffer getBuffer() {
+		return buf;
+	}
+
+
+	/**
+	 * Returns the offset of the first line that is not a pseudo-tag.
+	 *
+	 * @return The offset of the first tag.
+	 */
+	long getFirstTagOffset() {
+		return firstTagPos;
+	}
+
+
+	/**
+	 * Returns the fold-sorted index for this file, building it the first
+	 * time it is needed.  This is only available if the file was opened
+	 * with a line index.
+	 *
+	 * @return The fold index, or <code>null</code> if this file has no line
+	 *         index.
+	 */
+	TagFoldIndex getFoldIndex() {
+		if (lineIndex==null) {
+			return null;
+		}
+		TagFoldIndex index = foldIndex;
+		if (index==null) {
+			synchronized (this) {
+				index = foldIndex;
+				if (index==null) {
+					foldIndex = index = TagFoldIndex.create(buf, lineIndex);
+				}
+			}
+		}
+		return index;
+	}
+
+
+	/**
+	 * Returns the line index for this file.
+	 *
+	 * @return The line index, or <code>null</code> if this file was opened
+	 *         without one.
+	 * @see #open(String, boolean)
+	 */
+	public TagLineIndex getLineIndex() {
+		return lineIndex;
+	}
+
+
+	/**
+	 * Returns information about this file, taken from its pseudo-tags.
+	 *
+	 * @return The information.  This is a new object, so it may be
+	 *         modified by the caller.
+	 */
+	public TagFileInfo getInfo() {
+		TagFileInfo info = new TagFileInfo();
+		info.format = format;
+		info.sort = sortMethod;
+		info.author = programAuthor;
+		info.name = programName;
+		info.url = programUrl;
+		info.version = programVersion;
+		return info;
+	}
+
+
+	/**
+	 * Returns the path to this file.
+	 *
+	 * @return The path.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Returns the size of this file.
+	 *
+	 * @return The size of this file, in bytes.
+	 */
+	public long getSize() {
+		return buf.size();
+	}
+
+
+	/**
+	 * Returns how this file is sorted.
+	 *
+	 * @return One of <code>CTagReader.TAG_UNSORTED</code>,
+	 *         <code>CTagReader.TAG_SORTED</code> or
+	 *         <code>CTagReader.TAG_FOLDSORTED</code>.
+	 */
+	public int getSortMethod() {
+		return sortMethod;
+	}
+
+
+	/**
+	 * Opens and memory-maps a ctag file.
+	 *
+	 * @param filePath The ctag file to open.
+	 * @return The opened file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static TagFile open(String filePath) throws IOException {
+		return open(filePath, false);
+	}
+
+
+	/**
+	 * Opens and memory-maps a ctag file.
+	 *
+	 * @param filePath The ctag file to open.
+	 * @param useLineIndex Whether to use a {@link TagLineIndex}.  If this is
+	 *        <code>true</code>, the file's sidecar index is read, or
+	 *        created if it is missing or out of date.  Searches then
+	 *        binary search over lines rather than byte offsets, and
+	 *        exact-match searches that cannot use a binary search compare
+	 *        name hashes rather than reading every line.  Other searches
+	 *        that the file's sort order does not support (e.g.
+	 *        case-insensitive searches of a case-sensitively sorted file)
+	 *        binary search a fold-sorted index built on first use.
+	 * @return The opened file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static TagFile open(String filePath, boolean useLineIndex)
+								throws IOException {
+		return new TagFile(filePath, new MappedTagBuffer(filePath),
+							useLineIndex);
+	}
+
+
+	/**
+	 * Parses every tag in this file, in file order.  The file is split
+	 * into line-aligned chunks that are parsed in parallel, and the
+	 * results are concatenated, so the list is in the same order as a
+	 * <code>first()</code>/<code>next()</code> loop would return.
+	 *
+	 * @param executor The executor to parse chunks on, or
+	 *        <code>null</code> to parse the whole file on the calling thread.
+	 * @return The tags.
+	 * @see TagTable#load(TagFile, ExecutorService)
+	 */
+	public List<TagEntry> readAll(ExecutorService executor) {
+
+		final long[] bounds = split(TaskUtil.getChunkCount(executor,
+							buf.size() - firstTagPos, MIN_CHUNK_SIZE));
+		List<Callable<List<TagEntry>>> tasks =
+							new ArrayList<Callable<List<TagEntry>>>();
+		for (int i=0; i<bounds.length-1; i++) {
+			final long start = bounds[i];
+			final long end = bounds[i+1];
+			tasks.add(new Callable<List<TagEntry>>() {
+				@Override
+				public List<TagEntry> call() {
+					List<TagEntry> entries = new ArrayList<TagEntry>();
+					TagCursor cursor = createCursor();
+					cursor.seek(start);
+					while (cursor.readLine() && cursor.getLineOffset()<end) {
+						entries.add(new TagEntry(cursor.getLine()));
+					}
+					return entries;
+				}
+			});
+		}
+
+		List<List<TagEntry>> results = TaskUtil.invokeAll(executor, tasks);
+		int count = 0;
+		for (List<TagEntry> entries : results) {
+			count += entries.size();
+		}
+		List<TagEntry> all = new ArrayList<TagEntry>(count);
+		for (List<TagEntry> entries : results) {
+			all.addAll(entries);
+		}
+		return all;
+
+	}
+
+
+	/**
+	 * Splits the tags in this file into line-aligned chunks of roughly
+	 * equal size.
+	 *
+	 * @param count The desired number of chunks.
+	 * @return The offsets of the start of each chunk, followed by the size
+	 *         of the file.  Fewer chunks than requested are returned if
+	 *         lines are long enough that some would be empty.
+	 */
+	long[] split(int count) {
+		long size = buf.size();
+		long chunkSize = Math.max(1, (size - firstTagPos) / Math.max(1, count));
+		List<Long> bounds = new ArrayList<Long>();
+		long start = firstTagPos;
+		while (start<size) {
+			bounds.add(Long.valueOf(start));
+			long next = start + chunkSize;
+			start = next>=size ? size : buf.findLineEnd(next - 1) + 1;
+		}
+		bounds.add(Long.valueOf(size));
+		long[] result = new long[bounds.size()];
+		for (int i=0; i<result.length; i++) {
+			result[i] = bounds.get(i).longValue();
+		}
+		return result;
+	}
+
+
+}
\ No newline at end of file
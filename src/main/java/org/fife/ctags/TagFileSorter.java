@@ -0,0 +1,490 @@
+package org.fife.ctags;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+/**
+ * Sorts a ctag file so that it can be binary searched.  Files generated
+ * with <code>--sort=no</code> (<code>!_TAG_FILE_SORTED 0</code>) force every
+ * search to read the whole file; running them through this class produces
+ * an equivalent file that is sorted case-sensitively
+ * (<code>TAG_SORTED</code>) or case-insensitively
+ * (<code>TAG_FOLDSORTED</code>), with its <code>!_TAG_FILE_SORTED</code>
+ * pseudo-tag updated to match:
+ *
+ * <pre>
+ * TagFileSorter sorter = new TagFileSorter();
+ * sorter.setSortMethod(CTagReader.TAG_FOLDSORTED);
+ * sorter.sort("tags.unsorted", "tags");
+ * </pre>
+ *
+ * The sort is an external merge sort, so files larger than memory can be
+ * sorted: lines are read into memory until a budget is reached, each such
+ * run is sorted and written to a temporary file, and the runs are then
+ * merged.  Lines are compared as unsigned bytes, as <code>sort(1)</code>
+ * does with <code>LC_ALL=C</code>; fold-sorting compares ASCII letters as
+ * upper case, as <code>sort -f</code> (and ctags itself) does.  Other
+ * pseudo-tags are kept, at the top of the file.  Empty lines are dropped.
+ * This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class TagFileSorter {
+
+	private int sortMethod;
+	private long maxMemory;
+	private File tempDir;
+
+	/**
+	 * The maximum number of runs merged at once.  If there are more runs
+	 * than this, they are merged in several passes.
+	 */
+	private static final int MAX_MERGE_FACTOR		= 64;
+
+	/**
+	 * The approximate memory used to hold a line in addition to its bytes.
+	 */
+	private static final int LINE_OVERHEAD			= 40;
+
+	private static final String SORTED_TAG		= "!_TAG_FILE_SORTED";
+	private static final String FORMAT_TAG		= "!_TAG_FILE_FORMAT";
+
+	private static final Comparator<byte[]> SORTED_ORDER =
+											new LineComparator(false);
+	private static final Comparator<byte[]> FOLDSORTED_ORDER =
+											new LineComparator(true);
+
+
+	/**
+	 * Constructor.  By default, files are sorted case-sensitively using up
+	 * to 64 MB of memory, and temporary files are created in the output
+	 * file's directory.
+	 */
+	public TagFileSorter() {
+		sortMethod = CTagReader.TAG_SORTED;
+		maxMemory = 64 * 1024 * 1024;
+	}
+
+
+	/**
+	 * Returns the comparator for the current sort method.
+	 *
+	 * @return The comparator.
+	 */
+	private Comparator<byte[]> getComparator() {
+		return sortMethod==CTagReader.TAG_FOLDSORTED ? FOLDSORTED_ORDER :
+												SORTED_ORDER;
+	}
+
+
+	/**
+	 * Returns the approximate maximum amount of memory used to hold lines
+	 * while sorting.
+	 *
+	 * @return The maximum amount of memory, in bytes.
+	 * @see #setMaxMemory(long)
+	 */
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+
+	/**
+	 * Returns how files are sorted.
+	 *
+	 * @return Either <code>CTagReader.TAG_SORTED</code> or
+	 *         <code>CTagReader.TAG_FOLDSORTED</code>.
+	 * @see #setSortMethod(int)
+	 */
+	public int getSortMethod() {
+		return sortMethod;
+	}
+
+
+	/**
+	 * Returns the directory temporary files are created in.
+	 *
+	 * @return The directory, or <code>null</code> to use the output file's
+	 *         directory.
+	 * @see #setTempDirectory(File)
+	 */
+	public File getTempDirectory() {
+		return tempDir;
+	}
+
+
+	/**
+	 * Merges sorted runs into a single output.
+	 *
+	 * @param runs The runs to merge.
+	 * @param out The stream to write to.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void merge(List<File> runs, OutputStream out) throws IOException {
+
+		final Comparator<byte[]> comparator = getComparator();
+		PriorityQueue<ByteLineReader> queue = new PriorityQueue<ByteLineReader>(
+			runs.size(), new Comparator<ByteLineReader>() {
+				@Override
+				public int compare(ByteLineReader r1, ByteLineReader r2) {
+					return comparator.compare(r1.getLine(), r2.getLine());
+				}
+			});
+
+		try {
+			for (File run : runs) {
+				ByteLineReader reader = new ByteLineReader(
+											new FileInputStream(run));
+				if (reader.next()) {
+					queue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+			while (!queue.isEmpty()) {
+				ByteLineReader reader = queue.poll();
+				writeLine(out, reader.getLine());
+				if (reader.next()) {
+					queue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+		} finally {
+			for (ByteLineReader reader : queue) {
+				reader.close();
+			}
+		}
+
+	}
+
+
+	/**
+	 * Sets the approximate maximum amount of memory used to hold lines
+	 * while sorting.  Larger values mean fewer temporary files.
+	 *
+	 * @param maxMemory The maximum amount of memory, in bytes.
+	 * @throws IllegalArgumentException If <code>maxMemory</code> is not
+	 *         positive.
+	 * @see #getMaxMemory()
+	 */
+	public void setMaxMemory(long maxMemory) {
+		if (maxMemory<=0) {
+			throw new IllegalArgumentException("maxMemory must be > 0");
+		}
+		this.maxMemory = maxMemory;
+	}
+
+
+	/**
+	 * Sets how files are sorted.
+	 *
+	 * @param sortMethod Either <code>CTagReader.TAG_SORTED</code> or
+	 *        <code>CTagReader.TAG_FOLDSORTED</code>.
+	 * @throws IllegalArgumentException If <code>sortMethod</code> is
+	 *         invalid.
+	 * @see #getSortMethod()
+	 */
+	public void setSortMethod(int sortMethod) {
+		if (sortMethod!=CTagReader.TAG_SORTED &&
+				sortMethod!=CTagReader.TAG_FOLDSORTED) {
+			throw new IllegalArgumentException(
+							"Invalid sort method: " + sortMethod);
+		}
+		this.sortMethod = sortMethod;
+	}
+
+
+	/**
+	 * Sets the directory temporary files are created in.
+	 *
+	 * @param dir The directory, or <code>null</code> to use the output
+	 *        file's directory.
+	 * @see #getTempDirectory()
+	 */
+	public void setTempDirectory(File dir) {
+		this.tempDir = dir;
+	}
+
+
+	/**
+	 * Sorts a ctag file.  The output is written to a temporary file that
+	 * then replaces <code>outputPath</code>, so the input and output may be
+	 * the same file.
+	 *
+	 * @param inputPath The file to sort.
+	 * @param outputPath The file to write.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void sort(String inputPath, String outputPath) throws IOException {
+
+		File outputFile = new File(outputPath).getAbsoluteFile();
+		File dir = tempDir!=null ? tempDir : outputFile.getParentFile();
+		List<byte[]> pseudoTags = new ArrayList<byte[]>();
+		List<File> runs = new ArrayList<File>();
+		Comparator<byte[]> comparator = getComparator();
+
+		try {
+
+			// Split the input into sorted runs.  If it all fits in memory,
+			// there is a single run that is never written to disk.
+			List<byte[]> lines = new ArrayList<byte[]>();
+			long memory = 0;
+			ByteLineReader in = new ByteLineReader(
+										new FileInputStream(inputPath));
+			try {
+				while (in.next()) {
+					byte[] line = in.getLine();
+					if (line.length==0) {
+						continue;
+					}
+					if (line.length>=2 && line[0]=='!' && line[1]=='_') {
+						pseudoTags.add(line);
+						continue;
+					}
+					lines.add(line);
+					memory += line.length + LINE_OVERHEAD;
+					if (memory>=maxMemory) {
+						runs.add(writeRun(lines, comparator, dir));
+						lines.clear();
+						memory = 0;
+					}
+				}
+			} finally {
+				in.close();
+			}
+			byte[][] last = lines.toArray(new byte[lines.size()][]);
+			lines = null;
+			Arrays.sort(last, comparator);
+
+			// Merge runs until few enough are left to merge into the output
+			// in one pass.
+			if (!runs.isEmpty()) {
+				runs.add(writeRun(Arrays.asList(last), null, dir));
+				last = null;
+				while (runs.size()>MAX_MERGE_FACTOR) {
+					List<File> merged = new ArrayList<File>();
+					boolean pass = false;
+					try {
+						for (int i=0; i<runs.size(); i+=MAX_MERGE_FACTOR) {
+							List<File> group = runs.subList(i,
+								Math.min(i+MAX_MERGE_FACTOR, runs.size()));
+							File run = File.createTempFile("tags", ".run",
+															dir);
+							merged.add(run);
+							OutputStream out = new BufferedOutputStream(
+												new FileOutputStream(run));
+							try {
+								merge(group, out);
+							} finally {
+								out.close();
+							}
+							for (File f : group) {
+								f.delete();
+							}
+						}
+						pass = true;
+					} finally {
+						if (!pass) {
+							for (File run : merged) {
+								run.delete();
+							}
+						}
+					}
+					runs = merged;
+				}
+			}
+
+			File temp = File.createTempFile("tags", ".tmp",
+									outputFile.getParentFile());
+			boolean keepTemp = false;
+			try {
+				OutputStream out = new BufferedOutputStream(
+											new FileOutputStream(temp));
+				try {
+					writePseudoTags(out, pseudoTags);
+					if (last!=null) {
+						for (byte[] line : last) {
+							writeLine(out, line);
+						}
+					}
+					else {
+						merge(runs, out);
+					}
+				} finally {
+					out.close();
+				}
+				// renameTo() does not replace an existing file on Windows.
+				// Once the original is deleted, the sorted output in temp
+				// may be the only copy of the tags, so it is kept.
+				if (!temp.renameTo(outputFile)) {
+					if (outputFile.exists() && !outputFile.delete()) {
+						throw new IOException("Cannot replace " + outputFile);
+					}
+					keepTemp = true;
+					if (!temp.renameTo(outputFile)) {
+						throw new IOException("Cannot rename " + temp +
+									" to " + outputFile + "; the sorted " +
+									"tags are in " + temp);
+					}
+				}
+			} finally {
+				if (!keepTemp) {
+					temp.delete(); // Does nothing if it was renamed
+				}
+			}
+
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+
+	}
+
+
+	/**
+	 * Writes a line.
+	 *
+	 * @param out The stream to write to.
+	 * @param line The line, without a terminator.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeLine(OutputStream out, byte[] line)
+								throws IOException {
+		out.write(line);
+		out.write('\n');
+	}
+
+
+	/**
+	 * Writes the pseudo-tags of the sorted file: the original ones, with
+	 * <code>!_TAG_FILE_SORTED</code> replaced, and
+	 * <code>!_TAG_FILE_FORMAT</code> added if it was missing.
+	 *
+	 * @param out The stream to write to.
+	 * @param pseudoTags The original pseudo-tags.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void writePseudoTags(OutputStream out, List<byte[]> pseudoTags)
+								throws IOException {
+
+		List<byte[]> lines = new ArrayList<byte[]>();
+		boolean hasFormat = false;
+		for (byte[] line : pseudoTags) {
+			if (startsWith(line, SORTED_TAG)) {
+				continue;
+			}
+			hasFormat |= startsWith(line, FORMAT_TAG);
+			lines.add(line);
+		}
+		if (!hasFormat) {
+			lines.add((FORMAT_TAG + "\t2\t/extended format; --format=1 " +
+				"will not append ;\" to lines/").getBytes(MappedTagBuffer.UTF8));
+		}
+		String value = sortMethod==CTagReader.TAG_FOLDSORTED ? "2" : "1";
+		lines.add((SORTED_TAG + "\t" + value +
+				"\t/0=unsorted, 1=sorted, 2=foldcase/").getBytes(
+											MappedTagBuffer.UTF8));
+
+		// Pseudo-tags are always sorted case-sensitively, as ctags does.
+		byte[][] sorted = lines.toArray(new byte[lines.size()][]);
+		Arrays.sort(sorted, SORTED_ORDER);
+		for (byte[] line : sorted) {
+			writeLine(out, line);
+		}
+
+	}
+
+
+	/**
+	 * Sorts lines and writes them to a temporary file.
+	 *
+	 * @param lines The lines.
+	 * @param comparator The comparator to sort with, or <code>null</code>
+	 *        if the lines are already sorted.
+	 * @param dir The directory to create the file in.
+	 * @return The file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static File writeRun(List<byte[]> lines,
+			Comparator<byte[]> comparator, File dir) throws IOException {
+		byte[][] array = lines.toArray(new byte[lines.size()][]);
+		if (comparator!=null) {
+			Arrays.sort(array, comparator);
+		}
+		File run = File.createTempFile("tags", ".run", dir);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(run));
+		try {
+			for (byte[] line : array) {
+				writeLine(out, line);
+			}
+		} finally {
+			out.close();
+		}
+		return run;
+	}
+
+
+	private static boolean startsWith(byte[] line, String prefix) {
+		if (line.length<prefix.length()) {
+			return false;
+		}
+		for (int i=0; i<prefix.length(); i++) {
+			if (line[i]!=prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Compares lines as unsigned bytes, optionally folding ASCII letters to
+	 * upper case first.  Lines that are equal when folded are ordered by
+	 * their exact bytes, so the output is deterministic.
+	 */
+	private static final class LineComparator implements Comparator<byte[]> {
+
+		private boolean foldCase;
+
+		LineComparator(boolean foldCase) {
+			this.foldCase = foldCase;
+		}
+
+		@Override
+		public int compare(byte[] line1, byte[] line2) {
+			if (foldCase) {
+				int len = Math.min(line1.length, line2.length);
+				for (int i=0; i<len; i++) {
+					int diff = MappedTagBuffer.toUpper(line1[i] & 0xff) -
+							MappedTagBuffer.toUpper(line2[i] & 0xff);
+					if (diff!=0) {
+						return diff;
+					}
+				}
+				if (line1.length!=line2.length) {
+					return line1.length - line2.length;
+				}
+			}
+			return TagTable.compare(line1, 0, line1.length,
+									line2, 0, line2.length);
+		}
+
+	}
+
+
+}
\ No newline at end of file
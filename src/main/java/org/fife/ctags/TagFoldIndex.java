@@ -0,0 +1,183 @@
+package org.fife.ctags;
+
+import java.io.IOException;
+
+
+/**
+ * A permutation of the lines of a ctag file, sorted by case-folded name
+ * (as <code>TAG_FOLDSORTED</code> files are), then by exact name, then by
+ * position in the file.  This lets case-insensitive searches, and searches
+ * of unsorted files, use a binary search no matter how the file itself is
+ * sorted.  The permutation refers to lines by their number in a
+ * {@link TagLineIndex}.<p>
+ *
+ * Names are folded with ASCII <code>toupper()</code>, as Exuberant Ctags
+ * does when it writes fold-sorted files.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+final class TagFoldIndex {
+
+	private int[] lines;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lines The sorted line numbers.
+	 */
+	private TagFoldIndex(int[] lines) {
+		this.lines = lines;
+	}
+
+
+	/**
+	 * Compares the names of two lines.
+	 *
+	 * @return The comparison result.
+	 */
+	private static int compareLines(MappedTagBuffer buf, TagLineIndex index,
+									int line1, int line2) {
+
+		long p1 = index.getLineOffset(line1);
+		long p2 = index.getLineOffset(line2);
+		int exact = 0;
+
+		while (true) {
+			int b1 = p1<buf.size() ? buf.get(p1) & 0xff : '\n';
+			int b2 = p2<buf.size() ? buf.get(p2) & 0xff : '\n';
+			boolean end1 = b1=='\t' || b1=='\n' || b1=='\r';
+			boolean end2 = b2=='\t' || b2=='\n' || b2=='\r';
+			if (end1 || end2) {
+				if (end1 && end2) {
+					break;
+				}
+				return end1 ? -1 : 1;
+			}
+			int diff = MappedTagBuffer.toUpper(b1) - MappedTagBuffer.toUpper(b2);
+			if (diff!=0) {
+				return diff;
+			}
+			if (exact==0) {
+				exact = b1 - b2;
+			}
+			p1++;
+			p2++;
+		}
+
+		return exact!=0 ? exact : line1 - line2;
+
+	}
+
+
+	/**
+	 * Builds the index for a mapped tag file.
+	 *
+	 * @param buf The mapped tag file.
+	 * @param index The line index of the tag file.
+	 * @return The fold index.
+	 */
+	static TagFoldIndex create(MappedTagBuffer buf, TagLineIndex index) {
+		int count = index.getLineCount();
+		int[] lines = new int[count];
+		for (int i=0; i<count; i++) {
+			lines[i] = i;
+		}
+		mergeSort(buf, index, lines, new int[count], 0, count);
+		return new TagFoldIndex(lines);
+	}
+
+
+	/**
+	 * Builds the index for a tag file.
+	 *
+	 * @param filePath The tag file.
+	 * @param index The line index of the tag file.
+	 * @return The fold index.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static TagFoldIndex create(String filePath, TagLineIndex index)
+							throws IOException {
+		return create(new MappedTagBuffer(filePath), index);
+	}
+
+
+	/**
+	 * Returns the position of the first line whose folded name is not less
+	 * than a name, i.e. the first line that may match a search for it.
+	 *
+	 * @param buf The mapped tag file.
+	 * @param index The line index of the tag file.
+	 * @param search The UTF-8 bytes of the name to search for.
+	 * @param partial Whether this is a prefix search.
+	 * @return The position in this index.
+	 */
+	int findStart(MappedTagBuffer buf, TagLineIndex index, byte[] search,
+				boolean partial) {
+		int low = 0;
+		int high = lines.length;
+		while (low<high) {
+			int mid = (low + high) >>> 1;
+			long start = index.getLineOffset(lines[mid]);
+			long end = buf.getContentEnd(start, buf.findLineEnd(start));
+			if (buf.compareName(start, end, search, partial, true)>0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+
+	/**
+	 * Returns the line at a position in this index.
+	 *
+	 * @param pos The position.
+	 * @return The line number, as used by the {@link TagLineIndex}.
+	 */
+	int getLine(int pos) {
+		return lines[pos];
+	}
+
+
+	/**
+	 * A stable merge sort of line numbers by name.
+	 */
+	private static void mergeSort(MappedTagBuffer buf, TagLineIndex index,
+							int[] lines, int[] temp, int from, int to) {
+		if (to-from<2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(buf, index, lines, temp, from, mid);
+		mergeSort(buf, index, lines, temp, mid, to);
+		if (compareLines(buf, index, lines[mid-1], lines[mid])<=0) {
+			return; // Already in order
+		}
+		System.arraycopy(lines, from, temp, from, to-from);
+		int i = from, j = mid, k = from;
+		while (i<mid && j<to) {
+			lines[k++] = compareLines(buf, index, temp[j], temp[i])<0 ?
+								temp[j++] : temp[i++];
+		}
+		while (i<mid) {
+			lines[k++] = temp[i++];
+		}
+		while (j<to) {
+			lines[k++] = temp[j++];
+		}
+	}
+
+
+	/**
+	 * Returns the number of lines in this index.
+	 *
+	 * @return The number of lines.
+	 */
+	int size() {
+		return lines.length;
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,430 @@
+package org.fife.ctags;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+/**
+ * The offsets of the start of every tag line in a ctag file, and optionally
+ * a hash of each tag's name.  With this index a sorted file can be binary
+ * searched by line, with exactly one seek per probe, rather than bisecting
+ * on byte offsets and backing up in 512-byte steps to find line starts.  The
+ * name hashes let exact-match searches of files that cannot be binary
+ * searched skip lines without reading them.<p>
+ *
+ * An index is usually persisted next to its tag file as a "sidecar" file
+ * named <code><em>tagfile</em>.idx</code>.  The sidecar records the size and
+ * modification time of the tag file it was built from, and is ignored
+ * (and rebuilt) if either changes.  Pseudo-tags and empty lines are not
+ * indexed.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ * @see #getIndex(String, boolean)
+ */
+public final class TagLineIndex {
+
+	private int count;
+	private long fileSize;			/* the tag file's, when it was mapped */
+	private long fileModified;
+	private int[] intOffsets;		/* used if the file is < 2 GB */
+	private long[] longOffsets;	/* used otherwise */
+	private int[] nameHashes;		/* may be null */
+
+	private static final int MAGIC			= 0x43544958; // "CTIX"
+	private static final int VERSION			= 1;
+	private static final int FLAG_LONG_OFFSETS	= 0x01;
+	private static final int FLAG_NAME_HASHES	= 0x02;
+
+	private static final String EXTENSION		= ".idx";
+	private static final int HEADER_SIZE		= 32;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param count The number of lines.
+	 * @param longOffsets Whether offsets need to be <code>long</code>s.
+	 * @param nameHashes Whether to store name hashes.
+	 */
+	private TagLineIndex(int count, boolean longOffsets, boolean nameHashes) {
+		this.count = count;
+		if (longOffsets) {
+			this.longOffsets = new long[count];
+		}
+		else {
+			this.intOffsets = new int[count];
+		}
+		if (nameHashes) {
+			this.nameHashes = new int[count];
+		}
+	}
+
+
+	/**
+	 * Builds the index for a memory-mapped tag file.
+	 *
+	 * @param buf The mapped file.
+	 * @param firstTagPos The offset of the first line that is not a
+	 *        pseudo-tag.
+	 * @param nameHashes Whether to also compute name hashes.
+	 * @return The index.
+	 */
+	static TagLineIndex create(MappedTagBuffer buf, long firstTagPos,
+							boolean nameHashes) {
+
+		long size = buf.size();
+
+		// First pass: count the lines.
+		int count = 0;
+		long pos = firstTagPos;
+		while (pos<size) {
+			long end = buf.findLineEnd(pos);
+			if (buf.getContentEnd(pos, end)>pos) {
+				count++;
+			}
+			pos = end + 1;
+		}
+
+		// Second pass: record their offsets and, optionally, name hashes.
+		TagLineIndex index = new TagLineIndex(count,
+							size>Integer.MAX_VALUE, nameHashes);
+		index.fileSize = size;
+		index.fileModified = buf.lastModified();
+		int line = 0;
+		pos = firstTagPos;
+		while (pos<size) {
+			long end = buf.findLineEnd(pos);
+			long contentEnd = buf.getContentEnd(pos, end);
+			if (contentEnd>pos) {
+				if (index.intOffsets!=null) {
+					index.intOffsets[line] = (int)pos;
+				}
+				else {
+					index.longOffsets[line] = pos;
+				}
+				if (nameHashes) {
+					index.nameHashes[line] = hashName(buf, pos,
+									buf.findNameEnd(pos, contentEnd));
+				}
+				line++;
+			}
+			pos = end + 1;
+		}
+
+		return index;
+
+	}
+
+
+	/**
+	 * Returns the sidecar index file for a tag file.
+	 *
+	 * @param tagFilePath The path to the tag file.
+	 * @return The index file.  This may not exist.
+	 */
+	public static File getIndexFile(String tagFilePath) {
+		return new File(tagFilePath + EXTENSION);
+	}
+
+
+	/**
+	 * Returns the index for a tag file.  If a valid sidecar index exists it
+	 * is read; otherwise the index is built and the sidecar is written.
+	 * Failure to write the sidecar (e.g. the directory is read-only) is
+	 * not an error.
+	 *
+	 * @param tagFilePath The path to the tag file.
+	 * @param nameHashes Whether the index should include name hashes.
+	 * @return The index.
+	 * @throws IOException If an I/O error occurs reading the tag file.
+	 */
+	public static TagLineIndex getIndex(String tagFilePath,
+							boolean nameHashes) throws IOException {
+		TagLineIndex index = readQuietly(tagFilePath, nameHashes);
+		if (index==null) {
+			TagFile file = TagFile.open(tagFilePath);
+			index = create(file.getBuffer(), file.getFirstTagOffset(),
+							nameHashes);
+			index.writeQuietly(tagFilePath);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Returns the index for a tag file that is already mapped, reading it
+	 * from its sidecar if possible, or building (and persisting) it if not.
+	 *
+	 * @param tagFilePath The path to the tag file.
+	 * @param buf The mapped tag file.
+	 * @param firstTagPos The offset of the first line that is not a
+	 *        pseudo-tag.
+	 * @param nameHashes Whether the index should include name hashes.
+	 * @return The index.
+	 */
+	static TagLineIndex getIndex(String tagFilePath, MappedTagBuffer buf,
+							long firstTagPos, boolean nameHashes) {
+		TagLineIndex index = readQuietly(tagFilePath, nameHashes);
+		if (index==null) {
+			index = create(buf, firstTagPos, nameHashes);
+			index.writeQuietly(tagFilePath);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Returns the number of tag lines in the file.
+	 *
+	 * @return The number of lines.
+	 */
+	public int getLineCount() {
+		return count;
+	}
+
+
+	/**
+	 * Returns the offset of a tag line.
+	 *
+	 * @param line The index of the line.
+	 * @return The offset of the start of the line.
+	 */
+	public long getLineOffset(int line) {
+		return intOffsets!=null ? intOffsets[line] : longOffsets[line];
+	}
+
+
+	/**
+	 * Returns the hash of the name of a tag line.
+	 *
+	 * @param line The index of the line.
+	 * @return The hash.
+	 * @see #hasNameHashes()
+	 * @see #hashName(byte[])
+	 */
+	int getNameHash(int line) {
+		return nameHashes[line];
+	}
+
+
+	/**
+	 * Returns whether this index contains name hashes.
+	 *
+	 * @return Whether this index contains name hashes.
+	 */
+	public boolean hasNameHashes() {
+		return nameHashes!=null;
+	}
+
+
+	/**
+	 * Returns the hash of a tag name (32-bit FNV-1a of its UTF-8 bytes).
+	 *
+	 * @param name The UTF-8 bytes of the name.
+	 * @return The hash.
+	 */
+	static int hashName(byte[] name) {
+		int hash = 0x811c9dc5;
+		for (int i=0; i<name.length; i++) {
+			hash = (hash ^ (name[i] & 0xff)) * 0x01000193;
+		}
+		return hash;
+	}
+
+
+	private static int hashName(MappedTagBuffer buf, long start, long end) {
+		int hash = 0x811c9dc5;
+		for (long p=start; p<end; p++) {
+			hash = (hash ^ (buf.get(p) & 0xff)) * 0x01000193;
+		}
+		return hash;
+	}
+
+
+	/**
+	 * Reads the sidecar index for a tag file.
+	 *
+	 * @param tagFilePath The path to the tag file.
+	 * @param nameHashes Whether the index must include name hashes.
+	 * @return The index, or <code>null</code> if there is no sidecar, or
+	 *         it is out of date, lacks requested name hashes, or is not
+	 *         the size its header says it should be.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static TagLineIndex read(String tagFilePath, boolean nameHashes)
+								throws IOException {
+
+		File tagFile = new File(tagFilePath);
+		File indexFile = getIndexFile(tagFilePath);
+		if (!indexFile.isFile()) {
+			return null;
+		}
+
+		long indexSize = indexFile.length();
+		long fileSize = tagFile.length();
+		long fileModified = tagFile.lastModified();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+										new FileInputStream(indexFile)));
+		try {
+			if (indexSize<HEADER_SIZE ||
+					in.readInt()!=MAGIC || in.readInt()!=VERSION ||
+					in.readLong()!=fileSize ||
+					in.readLong()!=fileModified) {
+				return null;
+			}
+			int flags = in.readInt();
+			boolean hashes = (flags & FLAG_NAME_HASHES)!=0;
+			if (nameHashes && !hashes) {
+				return null;
+			}
+			// Every tag line is at least one byte, so a larger count is
+			// corrupt; check it before allocating arrays for it.
+			int count = in.readInt();
+			boolean longOffsets = (flags & FLAG_LONG_OFFSETS)!=0;
+			long entrySize = (longOffsets ? 8 : 4) + (hashes ? 4 : 0);
+			if (count<0 || count>fileSize ||
+					indexSize!=HEADER_SIZE + count*entrySize) {
+				return null;
+			}
+			TagLineIndex index = new TagLineIndex(count, longOffsets, hashes);
+			index.fileSize = fileSize;
+			index.fileModified = fileModified;
+			for (int i=0; i<count; i++) {
+				if (longOffsets) {
+					index.longOffsets[i] = in.readLong();
+				}
+				else {
+					index.intOffsets[i] = in.readInt();
+				}
+			}
+			if (hashes) {
+				for (int i=0; i<count; i++) {
+					index.nameHashes[i] = in.readInt();
+				}
+			}
+			return index;
+		} finally {
+			in.close();
+		}
+
+	}
+
+
+	/**
+	 * Reads the sidecar index for a tag file, treating a sidecar that
+	 * cannot be read (e.g. one truncated by a crash, or being written by
+	 * another process) as missing.
+	 *
+	 * @param tagFilePath The path to the tag file.
+	 * @param nameHashes Whether the index must include name hashes.
+	 * @return The index, or <code>null</code> if there is no usable
+	 *         sidecar.
+	 */
+	private static TagLineIndex readQuietly(String tagFilePath,
+							boolean nameHashes) {
+		try {
+			return read(tagFilePath, nameHashes);
+		} catch (IOException ioe) {
+			// Corrupt sidecar; just rebuild it
+			return null;
+		}
+	}
+
+
+	/**
+	 * Writes this index as the sidecar of a tag file.  The sidecar is
+	 * stamped with the size and modification time of the tag file when
+	 * this index was built, so if the file has changed since, the sidecar
+	 * is ignored when next read.  It is written to a temporary file that
+	 * is then renamed, so readers never see a partially written sidecar.
+	 *
+	 * @param tagFilePath The path to the tag file this index was built
+	 *        from.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void write(String tagFilePath) throws IOException {
+
+		File indexFile = getIndexFile(tagFilePath);
+		File temp = File.createTempFile(indexFile.getName(), ".tmp",
+								indexFile.getAbsoluteFile().getParentFile());
+		boolean renamed = false;
+		try {
+			writeTo(temp);
+			// renameTo() does not replace an existing file on Windows.
+			renamed = temp.renameTo(indexFile) ||
+						(indexFile.delete() && temp.renameTo(indexFile));
+			if (!renamed) {
+				throw new IOException("Cannot rename " + temp + " to " +
+										indexFile);
+			}
+		} finally {
+			if (!renamed) {
+				temp.delete();
+			}
+		}
+
+	}
+
+
+	/**
+	 * Writes this index to a file.
+	 *
+	 * @param file The file to write to.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void writeTo(File file) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(fileModified);
+			int flags = 0;
+			if (longOffsets!=null) {
+				flags |= FLAG_LONG_OFFSETS;
+			}
+			if (nameHashes!=null) {
+				flags |= FLAG_NAME_HASHES;
+			}
+			out.writeInt(flags);
+			out.writeInt(count);
+			for (int i=0; i<count; i++) {
+				if (longOffsets!=null) {
+					out.writeLong(longOffsets[i]);
+				}
+				else {
+					out.writeInt(intOffsets[i]);
+				}
+			}
+			if (nameHashes!=null) {
+				for (int i=0; i<count; i++) {
+					out.writeInt(nameHashes[i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+	}
+
+
+	private void writeQuietly(String tagFilePath) {
+		try {
+			write(tagFilePath);
+		} catch (IOException ioe) {
+			// Not fatal; the index just won't be reused next time
+			getIndexFile(tagFilePath).delete();
+		}
+	}
+
+
+}
\ No newline at end of file
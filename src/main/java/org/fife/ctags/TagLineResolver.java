@@ -0,0 +1,419 @@
+package org.fife.ctags;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Finds the line numbers of many tags at once, e.g. to show a list of
+ * references.  Most tags locate their definition with a search pattern
+ * rather than a line number, and resolving each one separately means
+ * reading the same source files over and over.  Instead, this class groups
+ * tags by source file, reads each file once, and resolves all of that
+ * file's patterns in a single pass over its lines:
+ *
+ * <pre>
+ * TagLineResolver resolver = new TagLineResolver(new File("/project"));
+ * long[] lines = resolver.resolve(entries);
+ * </pre>
+ *
+ * Results are cached per source file, and reused until the file's size or
+ * modification time changes.  Patterns are matched as ctags writes them:
+ * anchored at the start of the line (<code>^</code>) and, unless the line
+ * was too long to be copied whole, its end (<code>$</code>).  If a pattern
+ * matches several lines, the one closest to the tag's line number (if
+ * known) is used, otherwise the first.  Source files are assumed to be
+ * UTF-8.<p>
+ *
+ * Source files are read into memory, except for very large ones, which
+ * are memory-mapped.  A mapping is only released when it is garbage
+ * collected, and until then Windows does not allow the file to be
+ * truncated or overwritten, so saving it in an editor may fail.  This
+ * class is thread-safe.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class TagLineResolver {
+
+	private File baseDir;
+	private Map<String, SourceLines> cache;
+
+	/**
+	 * The maximum number of source files whose results are cached.
+	 */
+	private static final int MAX_CACHED_FILES	= 256;
+
+	/**
+	 * Source files larger than this are memory-mapped rather than read.
+	 */
+	private static final long MAX_READ_SIZE		= 16 * 1024 * 1024;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param baseDir The directory relative source file names are
+	 *        resolved against, usually the directory containing the tag
+	 *        file.  If this is <code>null</code>, the current directory is
+	 *        used.
+	 */
+	public TagLineResolver(File baseDir) {
+		this.baseDir = baseDir;
+		cache = new LinkedHashMap<String, SourceLines>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+									Map.Entry<String, SourceLines> eldest) {
+				return size()>MAX_CACHED_FILES;
+			}
+		};
+	}
+
+
+	/**
+	 * Discards all cached results.
+	 */
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+
+	/**
+	 * Returns the directory relative source file names are resolved
+	 * against.
+	 *
+	 * @return The directory, or <code>null</code> for the current
+	 *         directory.
+	 */
+	public File getBaseDir() {
+		return baseDir;
+	}
+
+
+	/**
+	 * Returns the source file a tag is defined in.
+	 *
+	 * @param entry The tag.
+	 * @return The file.
+	 */
+	private File getSourceFile(TagEntry entry) {
+		File file = new File(entry.file);
+		if (!file.isAbsolute() && baseDir!=null) {
+			file = new File(baseDir, entry.file);
+		}
+		return file.getAbsoluteFile();
+	}
+
+
+	/**
+	 * Returns the line number of a tag.
+	 *
+	 * @param entry The tag.
+	 * @return The line number, or <code>0</code> if it cannot be found.
+	 * @see #resolve(List)
+	 */
+	public long resolve(TagEntry entry) {
+		List<TagEntry> entries = new ArrayList<TagEntry>(1);
+		entries.add(entry);
+		return resolve(entries)[0];
+	}
+
+
+	/**
+	 * Returns the line numbers of many tags.  The tags are not modified.
+	 *
+	 * @param entries The tags.
+	 * @return The line number of each tag, or <code>0</code> for those that
+	 *         cannot be found.  Tags whose pattern cannot be found in their
+	 *         source file (e.g. because it has changed since the tag file
+	 *         was generated) get their <code>lineNumber</code>, if any.
+	 */
+	public long[] resolve(List<TagEntry> entries) {
+
+		long[] result = new long[entries.size()];
+
+		// Group the tags with patterns by source file.
+		Map<String, IntList> byFile = new LinkedHashMap<String, IntList>();
+		for (int i=0; i<result.length; i++) {
+			TagEntry entry = entries.get(i);
+			result[i] = entry.lineNumber;
+			if (entry.pattern!=null && entry.file!=null &&
+					Pattern.isValid(entry.pattern)) {
+				String path = getSourceFile(entry).getPath();
+				IntList rows = byFile.get(path);
+				if (rows==null) {
+					rows = new IntList();
+					byFile.put(path, rows);
+				}
+				rows.add(i);
+			}
+		}
+
+		for (Map.Entry<String, IntList> group : byFile.entrySet()) {
+			resolveFile(new File(group.getKey()), entries, group.getValue(),
+						result);
+		}
+
+		return result;
+
+	}
+
+
+	/**
+	 * Resolves the tags defined in one source file.
+	 *
+	 * @param file The source file.
+	 * @param entries All tags being resolved.
+	 * @param rows The indices of the tags in this file.
+	 * @param result The line numbers to fill in.
+	 */
+	private void resolveFile(File file, List<TagEntry> entries, IntList rows,
+							long[] result) {
+
+		String path = file.getPath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		if (lastModified==0) {
+			return; // File does not exist; keep line numbers from the tags
+		}
+
+		SourceLines lines;
+		synchronized (cache) {
+			lines = cache.get(path);
+		}
+		if (lines==null || lines.lastModified!=lastModified ||
+				lines.length!=length) {
+			lines = new SourceLines(lastModified, length,
+									new HashMap<String, int[]>());
+		}
+
+		// Scan the file for any patterns not already resolved.
+		Map<String, Pattern> unresolved = new HashMap<String, Pattern>();
+		for (int i=0; i<rows.size(); i++) {
+			String pattern = entries.get(rows.get(i)).pattern;
+			if (!lines.matches.containsKey(pattern) &&
+					!unresolved.containsKey(pattern)) {
+				unresolved.put(pattern, Pattern.parse(pattern));
+			}
+		}
+		if (!unresolved.isEmpty()) {
+			try {
+				scan(length>MAX_READ_SIZE ? new MappedTagBuffer(path) :
+							MappedTagBuffer.read(path), unresolved.values());
+			} catch (IOException ioe) {
+				return; // Keep line numbers from the tags
+			}
+			Map<String, int[]> matches =
+								new HashMap<String, int[]>(lines.matches);
+			for (Map.Entry<String, Pattern> entry : unresolved.entrySet()) {
+				matches.put(entry.getKey(), entry.getValue().lines.toArray());
+			}
+			lines = new SourceLines(lastModified, length, matches);
+			synchronized (cache) {
+				cache.put(path, lines);
+			}
+		}
+
+		for (int i=0; i<rows.size(); i++) {
+			int row = rows.get(i);
+			TagEntry entry = entries.get(row);
+			int[] found = lines.matches.get(entry.pattern);
+			if (found.length>0) {
+				result[row] = closest(found, entry.lineNumber);
+			}
+		}
+
+	}
+
+
+	/**
+	 * Returns the line closest to a hint.
+	 *
+	 * @param lines The candidate lines, in ascending order.
+	 * @param hint The expected line, or <code>0</code> if unknown.
+	 * @return The closest line, or the first line if there is no hint.
+	 */
+	private static long closest(int[] lines, long hint) {
+		int best = lines[0];
+		if (hint>0) {
+			for (int i=1; i<lines.length; i++) {
+				if (Math.abs(lines[i]-hint)<Math.abs(best-hint)) {
+					best = lines[i];
+				}
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * Finds every line of a source file matching any of a set of patterns.
+	 * Each line is hashed once, incrementally, and the hash is looked up
+	 * in a table of the patterns at each length a pattern could end at.
+	 *
+	 * @param buf The source file.
+	 * @param patterns The patterns.  The lines each matches are added to
+	 *        it.
+	 */
+	private static void scan(MappedTagBuffer buf,
+							Collection<Pattern> patterns) {
+
+		int tableSize = Integer.highestOneBit(patterns.size()*2 + 1) * 2;
+		Pattern[] table = new Pattern[tableSize];
+		int maxPrefixLen = -1;
+		for (Pattern pattern : patterns) {
+			if (!pattern.anchoredEnd) {
+				maxPrefixLen = Math.max(maxPrefixLen, pattern.bytes.length);
+			}
+		}
+		boolean[] prefixLens = new boolean[maxPrefixLen + 1];
+		for (Pattern pattern : patterns) {
+			int slot = pattern.hash & (tableSize-1);
+			pattern.next = table[slot];
+			table[slot] = pattern;
+			if (!pattern.anchoredEnd) {
+				prefixLens[pattern.bytes.length] = true;
+			}
+		}
+
+		long size = buf.size();
+		long pos = 0;
+		int line = 1;
+		while (pos<size) {
+			long end = buf.findLineEnd(pos);
+			long contentEnd = end;
+			if (contentEnd>pos && buf.get(contentEnd-1)=='\r') {
+				contentEnd--;
+			}
+			long len = contentEnd - pos;
+			int hash = 0x811c9dc5;
+			for (long p=pos; ; p++) {
+				long prefixLen = p - pos;
+				if (prefixLen<prefixLens.length && prefixLens[(int)prefixLen]) {
+					match(table, hash, buf, pos, (int)prefixLen, false, line);
+				}
+				if (p==contentEnd) {
+					break;
+				}
+				hash = (hash ^ (buf.get(p) & 0xff)) * 0x01000193;
+			}
+			if (len<=Integer.MAX_VALUE) {
+				match(table, hash, buf, pos, (int)len, true, line);
+			}
+			pos = end + 1;
+			line++;
+		}
+
+		for (Pattern pattern : patterns) {
+			pattern.next = null;
+		}
+
+	}
+
+
+	/**
+	 * Records a line as matching any pattern with the given hash, length
+	 * and anchoring that is really equal to it.
+	 */
+	private static void match(Pattern[] table, int hash, MappedTagBuffer buf,
+				long start, int len, boolean anchoredEnd, int line) {
+		for (Pattern p=table[hash & (table.length-1)]; p!=null; p=p.next) {
+			if (p.hash==hash && p.anchoredEnd==anchoredEnd &&
+					p.bytes.length==len && p.regionEquals(buf, start)) {
+				p.lines.add(line);
+			}
+		}
+	}
+
+
+	/**
+	 * A search pattern being resolved.
+	 */
+	private static final class Pattern {
+
+		private byte[] bytes;
+		private boolean anchoredEnd;
+		private int hash;
+		private IntList lines;
+		private Pattern next;		/* in a hash table bucket */
+
+		private Pattern(byte[] bytes, boolean anchoredEnd) {
+			this.bytes = bytes;
+			this.anchoredEnd = anchoredEnd;
+			hash = TagLineIndex.hashName(bytes);
+			lines = new IntList();
+		}
+
+		/**
+		 * Returns whether a search pattern can be resolved, i.e. is
+		 * delimited and anchored at the start of a line.
+		 *
+		 * @param pattern The pattern.
+		 * @return Whether the pattern can be resolved.
+		 */
+		static boolean isValid(String pattern) {
+			int len = pattern.length();
+			return len>=3 && pattern.charAt(1)=='^' &&
+					pattern.charAt(len-1)==pattern.charAt(0);
+		}
+
+		/**
+		 * Parses a ctags search pattern, e.g.
+		 * <code>"/^int foo(char *s)$/"</code>.
+		 *
+		 * @param pattern The pattern, which must be valid.
+		 * @return The parsed pattern.
+		 * @see #isValid(String)
+		 */
+		static Pattern parse(String pattern) {
+			int end = pattern.length() - 1;
+			boolean anchoredEnd = pattern.charAt(end-1)=='$' &&
+									pattern.charAt(end-2)!='\\';
+			if (anchoredEnd) {
+				end--;
+			}
+			String text = TagEntry.fixEscapes(pattern.substring(2, end));
+			return new Pattern(text.getBytes(MappedTagBuffer.UTF8),
+								anchoredEnd);
+		}
+
+		boolean regionEquals(MappedTagBuffer buf, long start) {
+			for (int i=0; i<bytes.length; i++) {
+				if (buf.get(start+i)!=bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+
+	/**
+	 * The cached results for a source file.
+	 */
+	private static final class SourceLines {
+
+		private long lastModified;
+		private long length;
+		private Map<String, int[]> matches;	/* pattern to lines; never modified */
+
+		SourceLines(long lastModified, long length,
+					Map<String, int[]> matches) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.matches = matches;
+		}
+
+	}
+
+
+}
\ No newline at end of file
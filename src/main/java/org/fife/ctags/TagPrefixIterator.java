@@ -0,0 +1,134 @@
+package org.fife.ctags;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Iterates over the tags in a {@link TagFile} whose names start with a
+ * prefix, as for code completion.  Lines are only read as the iteration
+ * advances, and only lines that match are parsed into
+ * <code>TagEntry</code>s, so stopping early (or hitting the result limit)
+ * means the rest of the file is never touched.  An optional "kind" filter
+ * is checked with a {@link LazyTagEntry}, so lines of other kinds are never
+ * decoded.<p>
+ *
+ * Instances are created via
+ * {@link TagFile#findPrefix(String, int, int, String)}.  Like
+ * {@link TagCursor}, an iterator is not thread-safe, but any number of
+ * them may be used over the same <code>TagFile</code> at once.  This class
+ * is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class TagPrefixIterator implements Iterator<TagEntry> {
+
+	private TagCursor cursor;
+	private String prefix;
+	private int options;
+	private byte[] kind;
+	private LazyTagEntry lazyEntry;
+	private int remaining;
+	private boolean started;
+	private TagEntry next;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cursor The cursor to search with.
+	 * @param prefix The prefix to search for.
+	 * @param options Search options; <code>TAG_PARTIALMATCH</code> is
+	 *        implied, and <code>TAG_IGNORECASE</code> may be specified.
+	 * @param maxResults The maximum number of tags to return, or a value
+	 *        <code>&lt;= 0</code> for no limit.
+	 * @param kind If non-<code>null</code>, only tags of this kind are
+	 *        returned.
+	 */
+	TagPrefixIterator(TagCursor cursor, String prefix, int options,
+						int maxResults, String kind) {
+		this.cursor = cursor;
+		this.prefix = prefix;
+		this.options = options | CTagReader.TAG_PARTIALMATCH;
+		this.remaining = maxResults>0 ? maxResults : Integer.MAX_VALUE;
+		if (kind!=null) {
+			this.kind = kind.getBytes(MappedTagBuffer.UTF8);
+			lazyEntry = new LazyTagEntry();
+		}
+	}
+
+
+	/**
+	 * Moves to the next matching line, if the limit has not yet been
+	 * reached.
+	 *
+	 * @return Whether a matching line was found.
+	 */
+	private boolean advance() {
+		if (remaining==0) {
+			return false;
+		}
+		boolean found;
+		if (!started) {
+			started = true;
+			found = cursor.find(null, prefix, options);
+		}
+		else {
+			found = cursor.findNext(null);
+		}
+		while (found && kind!=null && !isKind()) {
+			found = cursor.findNext(null);
+		}
+		if (!found) {
+			remaining = 0;
+		}
+		return found;
+	}
+
+
+	@Override
+	public boolean hasNext() {
+		if (next==null && advance()) {
+			next = new TagEntry(cursor.getLine());
+			remaining--;
+		}
+		return next!=null;
+	}
+
+
+	/**
+	 * Returns whether the line the cursor is on is of the kind being
+	 * filtered for.
+	 *
+	 * @return Whether the line is of the desired kind.
+	 */
+	private boolean isKind() {
+		cursor.getEntry(lazyEntry);
+		return lazyEntry.isKind(kind);
+	}
+
+
+	@Override
+	public TagEntry next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		TagEntry entry = next;
+		next = null;
+		return entry;
+	}
+
+
+	/**
+	 * Always throws an exception; tag files are read-only.
+	 *
+	 * @throws UnsupportedOperationException Always.
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Tag files are read-only");
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,303 @@
+package org.fife.ctags;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Caches the results of {@link CTagReader#tagsFind(TagEntry, String, int)}
+ * calls.  Editors tend to repeat the same lookups (hover, go to
+ * definition, hover again), and each is a search of the tag file.  With a
+ * cache installed via {@link CTagReader#setQueryCache(TagQueryCache)}, the
+ * matching lines of each search are kept, keyed by the name searched for
+ * and its <code>TAG_PARTIALMATCH</code> and <code>TAG_IGNORECASE</code>
+ * options, and repeated searches are answered from memory:
+ *
+ * <pre>
+ * CTagReader reader = new CTagReader();
+ * reader.setQueryCache(new TagQueryCache(1000, 4*1024*1024));
+ * reader.tagsOpen("tags", null);
+ * ...
+ * System.out.println(reader.getQueryCache()); // Hit/miss statistics
+ * </pre>
+ *
+ * When full, the least recently used results are evicted; the cache is
+ * bounded both by number of searches and by the approximate memory used by
+ * their results.  Results are discarded when the tag file's size or
+ * modification time changes, and when a different file is opened.
+ * Searches with very many matches (e.g. partial matches of one letter) are
+ * not cached.  Statistics are kept across invalidations until
+ * {@link #resetStatistics()} is called.  This class is thread-safe.  This
+ * class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class TagQueryCache {
+
+	private int maxEntries;
+	private long maxBytes;
+	private LinkedHashMap<String, List<String>> results;
+	private long bytes;
+	private long fileSize;
+	private long fileModified;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long invalidationCount;
+
+	/**
+	 * The maximum number of matches a search can have and still be cached.
+	 */
+	static final int MAX_RESULTS		= 1000;
+
+	/**
+	 * The approximate memory used by a cache entry, besides its strings.
+	 */
+	private static final int ENTRY_OVERHEAD	= 96;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxEntries The maximum number of searches to cache results
+	 *        for.
+	 * @param maxBytes The approximate maximum memory used by cached results,
+	 *        in bytes.
+	 * @throws IllegalArgumentException If either limit is not positive.
+	 */
+	public TagQueryCache(int maxEntries, long maxBytes) {
+		if (maxEntries<=0 || maxBytes<=0) {
+			throw new IllegalArgumentException("Limits must be > 0");
+		}
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		results = new LinkedHashMap<String, List<String>>(16, 0.75f, true);
+		fileModified = -1;
+	}
+
+
+	/**
+	 * Discards all cached results.  Statistics are not reset.
+	 *
+	 * @see #resetStatistics()
+	 */
+	public synchronized void clear() {
+		results.clear();
+		bytes = 0;
+	}
+
+
+	private static long estimateSize(String key, List<String> lines) {
+		long size = ENTRY_OVERHEAD + 2L*key.length();
+		for (String line : lines) {
+			size += 40 + 2L*line.length();
+		}
+		return size;
+	}
+
+
+	/**
+	 * Returns the cached results of a search, counting a hit or miss.
+	 *
+	 * @param name The name searched for.
+	 * @param options The search options.
+	 * @return The matching lines, or <code>null</code> if they are not
+	 *         cached.  This list is unmodifiable.
+	 */
+	synchronized List<String> get(String name, int options) {
+		List<String> lines = results.get(getKey(name, options));
+		if (lines!=null) {
+			hitCount++;
+		}
+		else {
+			missCount++;
+		}
+		return lines;
+	}
+
+
+	/**
+	 * Returns the approximate memory used by cached results.
+	 *
+	 * @return The memory used, in bytes.
+	 */
+	public synchronized long getByteSize() {
+		return bytes;
+	}
+
+
+	/**
+	 * Returns the number of results evicted to make room for others.
+	 *
+	 * @return The number of evictions.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+
+	/**
+	 * Returns the number of searches answered from this cache.
+	 *
+	 * @return The number of hits.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+
+	/**
+	 * Returns the fraction of searches answered from this cache.
+	 *
+	 * @return The hit rate, from <code>0</code> to <code>1</code>.
+	 */
+	public synchronized double getHitRate() {
+		long total = hitCount + missCount;
+		return total==0 ? 0 : (double)hitCount/total;
+	}
+
+
+	/**
+	 * Returns the number of times all results were discarded because the
+	 * tag file changed.
+	 *
+	 * @return The number of invalidations.
+	 */
+	public synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+
+	private static String getKey(String name, int options) {
+		int flags = options &
+				(CTagReader.TAG_PARTIALMATCH | CTagReader.TAG_IGNORECASE);
+		return (char)('0' + flags) + name;
+	}
+
+
+	/**
+	 * Returns the approximate maximum memory used by cached results.
+	 *
+	 * @return The maximum memory, in bytes.
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+
+	/**
+	 * Returns the maximum number of searches whose results are cached.
+	 *
+	 * @return The maximum number of searches.
+	 */
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+
+	/**
+	 * Returns the number of searches not answered from this cache.
+	 *
+	 * @return The number of misses.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+
+	/**
+	 * Caches the results of a search.
+	 *
+	 * @param name The name searched for.
+	 * @param options The search options.
+	 * @param lines All of the matching lines.
+	 */
+	synchronized void put(String name, int options, List<String> lines) {
+
+		String key = getKey(name, options);
+		long size = estimateSize(key, lines);
+		if (size>maxBytes) {
+			return;
+		}
+		List<String> old = results.put(key,
+							Collections.unmodifiableList(lines));
+		if (old!=null) {
+			bytes -= estimateSize(key, old);
+		}
+		bytes += size;
+
+		// Evict the least recently used results until within both limits.
+		Iterator<Map.Entry<String, List<String>>> i =
+								results.entrySet().iterator();
+		while ((results.size()>maxEntries || bytes>maxBytes) && i.hasNext()) {
+			Map.Entry<String, List<String>> eldest = i.next();
+			bytes -= estimateSize(eldest.getKey(), eldest.getValue());
+			i.remove();
+			evictionCount++;
+		}
+
+	}
+
+
+	/**
+	 * Resets the hit, miss, eviction and invalidation counts.
+	 */
+	public synchronized void resetStatistics() {
+		hitCount = missCount = evictionCount = invalidationCount = 0;
+	}
+
+
+	/**
+	 * Returns the number of searches whose results are cached.
+	 *
+	 * @return The number of searches.
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+
+	/**
+	 * Returns a summary of this cache's statistics.
+	 *
+	 * @return A summary of this cache's statistics.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "[TagQueryCache: " +
+			"entries=" + results.size() + "/" + maxEntries +
+			", bytes=" + bytes + "/" + maxBytes +
+			", hits=" + hitCount +
+			", misses=" + missCount +
+			", hitRate=" + Math.round(getHitRate()*1000)/10.0 + "%" +
+			", evictions=" + evictionCount +
+			", invalidations=" + invalidationCount +
+			"]";
+	}
+
+
+	/**
+	 * Discards all results if the tag file has changed since they were
+	 * cached.
+	 *
+	 * @param size The current size of the tag file.
+	 * @param lastModified The current modification time of the tag file.
+	 */
+	synchronized void validate(long size, long lastModified) {
+		if (size!=fileSize || lastModified!=fileModified) {
+			if (!results.isEmpty()) {
+				clear();
+				invalidationCount++;
+			}
+			fileSize = size;
+			fileModified = lastModified;
+		}
+	}
+
+
+}
\ No newline at end of file
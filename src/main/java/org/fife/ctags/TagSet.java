@@ -0,0 +1,488 @@
+package org.fife.ctags;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Several {@link TagFile}s searched as one, e.g. the tags for a project's
+ * sources, the JDK and third-party libraries.  Each query searches all of
+ * the files in parallel, one task per file, then returns a k-way merge of
+ * their results ordered by name.  Files sorted in the order searched are
+ * read lazily as the merge advances, so only as many lines are read as are
+ * returned; other files are searched in full.  Tag lines that appear in
+ * more than one file are only returned once:
+ *
+ * <pre>
+ * TagSet tags = TagSet.open(Arrays.asList("tags", "jdk.tags"), true);
+ * Iterator&lt;TagEntry&gt; i = tags.findPrefix("get", 0, 50, null);
+ * while (i.hasNext()) {
+ *    TagEntry entry = i.next();
+ *    ...
+ * }
+ * </pre>
+ *
+ * Like <code>TagFile</code>, a <code>TagSet</code> is immutable, so it may
+ * be searched by many threads at once.  The iterators it returns are not
+ * thread-safe.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class TagSet {
+
+	private final List<TagFile> files;
+	private final ExecutorService executor;
+
+	private static ExecutorService defaultExecutor;
+
+
+	/**
+	 * Constructor.  Queries are run on a shared pool of daemon threads, one
+	 * per processor.
+	 *
+	 * @param files The tag files to search.
+	 */
+	public TagSet(List<TagFile> files) {
+		this(files, getDefaultExecutor());
+	}
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param files The tag files to search.
+	 * @param executor The executor to search the files with.  If this is
+	 *        <code>null</code>, files are searched one after another on the
+	 *        calling thread.
+	 */
+	public TagSet(List<TagFile> files, ExecutorService executor) {
+		this.files = Collections.unmodifiableList(
+								new ArrayList<TagFile>(files));
+		this.executor = executor;
+	}
+
+
+	/**
+	 * Starts searching a single file.  If the file is sorted in the order
+	 * searched, its matches are returned lazily, in that order; otherwise
+	 * they are all collected and sorted.
+	 *
+	 * @param file The file to search.
+	 * @param name The name to search for.
+	 * @param options The search options.
+	 * @param kind The kind of tag to return, or <code>null</code> for all.
+	 * @param comparator The merge order.
+	 * @return The lines found, or <code>null</code> if there are none.
+	 */
+	private static Source search(TagFile file, String name, int options,
+			byte[] kind, Comparator<String> comparator) {
+
+		boolean ignoreCase = (options & CTagReader.TAG_IGNORECASE)!=0;
+		int sortMethod = file.getSortMethod();
+		boolean nameOrder = (sortMethod==CTagReader.TAG_SORTED && !ignoreCase) ||
+				(sortMethod==CTagReader.TAG_FOLDSORTED && ignoreCase);
+
+		TagCursor cursor = file.createCursor();
+		LazyTagEntry entry = kind!=null ? new LazyTagEntry() : null;
+		boolean found = cursor.find(null, name, options);
+
+		Source source;
+		if (nameOrder) {
+			source = new CursorSource(cursor, found, entry, kind, comparator,
+									ignoreCase);
+		}
+		else {
+			List<String> lines = new ArrayList<String>();
+			while (found) {
+				if (entry==null || (cursor.getEntry(entry) &&
+						entry.isKind(kind))) {
+					lines.add(cursor.getLine());
+				}
+				found = cursor.findNext(null);
+			}
+			Collections.sort(lines, comparator);
+			source = new ListSource(lines);
+		}
+		return source.isEmpty() ? null : source;
+
+	}
+
+
+	/**
+	 * Returns all tags with a given name.
+	 *
+	 * @param name The name to search for.
+	 * @param options Search options; <code>TAG_IGNORECASE</code> may be
+	 *        specified.
+	 * @return An iterator over the matching tags, ordered by name.
+	 * @see #findPrefix(String, int, int, String)
+	 */
+	public Iterator<TagEntry> find(String name, int options) {
+		return query(name, options & ~CTagReader.TAG_PARTIALMATCH, 0, null);
+	}
+
+
+	/**
+	 * Returns the tags whose names start with a prefix, as for code
+	 * completion.
+	 *
+	 * @param prefix The prefix to search for.
+	 * @param options Search options; <code>TAG_PARTIALMATCH</code> is
+	 *        implied, and <code>TAG_IGNORECASE</code> may be specified.
+	 * @param maxResults The maximum number of tags to return, or a value
+	 *        <code>&lt;= 0</code> for no limit.
+	 * @param kind If non-<code>null</code>, only tags of this kind are
+	 *        returned.
+	 * @return An iterator over the matching tags, ordered by name.
+	 * @see TagFile#findPrefix(String, int, int, String)
+	 */
+	public Iterator<TagEntry> findPrefix(String prefix, int options,
+									int maxResults, String kind) {
+		return query(prefix, options | CTagReader.TAG_PARTIALMATCH,
+						maxResults, kind);
+	}
+
+
+	/**
+	 * Returns the shared executor used by default.
+	 *
+	 * @return The executor.
+	 */
+	private static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor==null) {
+			int count = Runtime.getRuntime().availableProcessors();
+			defaultExecutor = Executors.newFixedThreadPool(count,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "TagSet");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return defaultExecutor;
+	}
+
+
+	/**
+	 * Returns the tag files in this set.
+	 *
+	 * @return The tag files.  This list is unmodifiable.
+	 */
+	public List<TagFile> getFiles() {
+		return files;
+	}
+
+
+	/**
+	 * Opens several ctag files as a set.
+	 *
+	 * @param filePaths The files to open.
+	 * @param useLineIndex Whether to use line indexes.
+	 * @return The set.
+	 * @throws IOException If an I/O error occurs opening any of the files.
+	 * @see TagFile#open(String, boolean)
+	 */
+	public static TagSet open(List<String> filePaths, boolean useLineIndex)
+								throws IOException {
+		List<TagFile> files = new ArrayList<TagFile>(filePaths.size());
+		for (String path : filePaths) {
+			files.add(TagFile.open(path, useLineIndex));
+		}
+		return new TagSet(files);
+	}
+
+
+	/**
+	 * Searches all files, in parallel if possible.
+	 */
+	private Iterator<TagEntry> query(final String name, final int options,
+							int maxResults, String kind) {
+
+		int limit = maxResults>0 ? maxResults : Integer.MAX_VALUE;
+		final byte[] kindBytes = kind!=null ?
+							kind.getBytes(MappedTagBuffer.UTF8) : null;
+		final Comparator<String> comparator = new LineComparator(
+							(options & CTagReader.TAG_IGNORECASE)!=0);
+
+		// Only the first probe of each file is done in parallel; sorted
+		// files are then read on the calling thread as results are needed.
+		List<Callable<Source>> tasks =
+						new ArrayList<Callable<Source>>(files.size());
+		for (final TagFile file : files) {
+			tasks.add(new Callable<Source>() {
+				@Override
+				public Source call() {
+					return search(file, name, options, kindBytes, comparator);
+				}
+			});
+		}
+		List<Source> sources = TaskUtil.invokeAll(executor, tasks);
+
+		return new MergeIterator(sources, comparator, limit);
+
+	}
+
+
+	/**
+	 * Orders tag lines by name, then by the entire line.  When ignoring
+	 * case, names are first compared with ASCII letters folded to upper
+	 * case, as in a <code>TAG_FOLDSORTED</code> file.
+	 */
+	private static final class LineComparator implements Comparator<String> {
+
+		private boolean ignoreCase;
+
+		LineComparator(boolean ignoreCase) {
+			this.ignoreCase = ignoreCase;
+		}
+
+		@Override
+		public int compare(String line1, String line2) {
+			int end1 = nameEnd(line1);
+			int end2 = nameEnd(line2);
+			int result = 0;
+			if (ignoreCase) {
+				result = compareNames(line1, end1, line2, end2, true);
+			}
+			if (result==0) {
+				result = compareNames(line1, end1, line2, end2, false);
+			}
+			return result!=0 ? result : line1.compareTo(line2);
+		}
+
+		private static int compareNames(String line1, int end1, String line2,
+									int end2, boolean ignoreCase) {
+			int len = Math.min(end1, end2);
+			for (int i=0; i<len; i++) {
+				int c1 = line1.charAt(i);
+				int c2 = line2.charAt(i);
+				if (ignoreCase) {
+					c1 = MappedTagBuffer.toUpper(c1);
+					c2 = MappedTagBuffer.toUpper(c2);
+				}
+				if (c1!=c2) {
+					return c1 - c2;
+				}
+			}
+			return end1 - end2;
+		}
+
+		static boolean sameName(String line1, String line2,
+								boolean ignoreCase) {
+			return compareNames(line1, nameEnd(line1), line2, nameEnd(line2),
+								ignoreCase)==0;
+		}
+
+		private static int nameEnd(String line) {
+			int tab = line.indexOf('\t');
+			return tab>-1 ? tab : line.length();
+		}
+
+	}
+
+
+	/**
+	 * Lazily merges the results of each file, skipping duplicates.
+	 */
+	private static final class MergeIterator implements Iterator<TagEntry> {
+
+		private PriorityQueue<Source> queue;
+		private String lastLine;
+		private int remaining;
+		private TagEntry next;
+
+		MergeIterator(List<Source> sources,
+					final Comparator<String> comparator, int limit) {
+			queue = new PriorityQueue<Source>(Math.max(1, sources.size()),
+				new Comparator<Source>() {
+					@Override
+					public int compare(Source s1, Source s2) {
+						return comparator.compare(s1.head(), s2.head());
+					}
+				});
+			for (Source source : sources) {
+				if (source!=null) {
+					queue.add(source);
+				}
+			}
+			remaining = limit;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next==null && remaining>0 && !queue.isEmpty()) {
+				Source source = queue.poll();
+				String line = source.head();
+				if (source.advance()) {
+					queue.add(source);
+				}
+				if (!line.equals(lastLine)) {
+					lastLine = line;
+					next = new TagEntry(line);
+					remaining--;
+				}
+			}
+			return next!=null;
+		}
+
+		@Override
+		public TagEntry next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TagEntry entry = next;
+			next = null;
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Tag files are read-only");
+		}
+
+	}
+
+
+	/**
+	 * The remaining results from one file, in merge order.
+	 */
+	private abstract static class Source {
+
+		/**
+		 * Moves to the next line.
+		 *
+		 * @return Whether there is another line.
+		 */
+		abstract boolean advance();
+
+		/**
+		 * Returns the current line.
+		 *
+		 * @return The current line.
+		 */
+		abstract String head();
+
+		/**
+		 * Returns whether there are no lines at all.
+		 *
+		 * @return Whether this source is empty.
+		 */
+		abstract boolean isEmpty();
+
+	}
+
+
+	/**
+	 * Results read lazily from a file sorted in the order searched.  Lines
+	 * are read a name at a time, and the lines for each name sorted, since
+	 * the file need not order lines with equal names as the merge does.
+	 */
+	private static final class CursorSource extends Source {
+
+		private TagCursor cursor;
+		private boolean found;		/* whether the cursor is on a match */
+		private LazyTagEntry entry;
+		private byte[] kind;
+		private Comparator<String> comparator;
+		private boolean ignoreCase;
+		private List<String> lines;
+		private int pos;
+
+		CursorSource(TagCursor cursor, boolean found, LazyTagEntry entry,
+				byte[] kind, Comparator<String> comparator,
+				boolean ignoreCase) {
+			this.cursor = cursor;
+			this.found = found;
+			this.entry = entry;
+			this.kind = kind;
+			this.comparator = comparator;
+			this.ignoreCase = ignoreCase;
+			lines = new ArrayList<String>();
+			readName();
+		}
+
+		@Override
+		boolean advance() {
+			return ++pos<lines.size() || readName();
+		}
+
+		@Override
+		String head() {
+			return lines.get(pos);
+		}
+
+		@Override
+		boolean isEmpty() {
+			return lines.isEmpty();
+		}
+
+		/**
+		 * Reads the matching lines with the next name.
+		 *
+		 * @return Whether any lines were read.
+		 */
+		private boolean readName() {
+			lines.clear();
+			pos = 0;
+			while (lines.isEmpty() && found) {
+				String first = cursor.getLine();
+				do {
+					if (entry==null || (cursor.getEntry(entry) &&
+							entry.isKind(kind))) {
+						lines.add(cursor.getLine());
+					}
+					found = cursor.findNext(null);
+				} while (found && LineComparator.sameName(first,
+									cursor.getLine(), ignoreCase));
+			}
+			Collections.sort(lines, comparator);
+			return !lines.isEmpty();
+		}
+
+	}
+
+
+	/**
+	 * Results collected from a file in full, then sorted.
+	 */
+	private static final class ListSource extends Source {
+
+		private List<String> lines;
+		private int pos;
+
+		ListSource(List<String> lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		boolean advance() {
+			return ++pos<lines.size();
+		}
+
+		@Override
+		String head() {
+			return lines.get(pos);
+		}
+
+		@Override
+		boolean isEmpty() {
+			return lines.isEmpty();
+		}
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,1042 @@
+package org.fife.ctags;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * An entire ctag file loaded into memory in a compact, columnar form.
+ * Rather than one <code>TagEntry</code> (and its strings and field list)
+ * per tag, a table keeps:
+ *
+ * <ul>
+ *   <li>One shared byte arena holding the UTF-8 name, pattern and extension
+ *       fields of every tag, with <code>int</code> offsets into it.</li>
+ *   <li>A primitive array of line numbers.</li>
+ *   <li>Dictionary-encoded "kind" and "file" columns, since these values
+ *       repeat heavily.</li>
+ * </ul>
+ *
+ * Rows are kept sorted by name (byte-wise, as for
+ * <code>TAG_SORTED</code> files), with tags of the same name in file order,
+ * so name lookups and prefix ranges are binary searches.  Values are only
+ * decoded into <code>String</code>s when asked for.  A table is immutable,
+ * and so may be shared by many threads.<p>
+ *
+ * Rows can also be looked up by kind, source file, or enclosing scope
+ * (e.g. all tags with a <code>class:Foo</code> field), as for outline views
+ * and member completion.  The secondary index for each of these is built
+ * the first time it is used.<p>
+ *
+ * The arena is a single array, so a table can hold at most 2 GB of tag
+ * text.  This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ * @see TagTable.Builder
+ */
+public final class TagTable {
+
+	private TagFileInfo info;
+	private int size;
+	private byte[] arena;
+	private int[] offsets;			/* name, pattern, fields start of each row */
+	private int[] lineNumbers;
+	private short[] kinds;			/* index into kindNames, or -1 */
+	private String[] kindNames;
+	private int[] files;			/* index into fileNames */
+	private String[] fileNames;
+	private BitSet fileScope;
+
+	// Secondary indexes, built on first use.
+	private volatile Map<String, int[]> kindIndex;
+	private volatile Map<String, int[]> fileIndex;
+	private volatile ScopeIndex scopeIndex;
+
+	private static final byte[] KIND = { 'k', 'i', 'n', 'd' };
+	private static final byte[] FILE = { 'f', 'i', 'l', 'e' };
+	private static final byte[] LINE = { 'l', 'i', 'n', 'e' };
+
+	/**
+	 * The minimum number of bytes parsed per task by parallel loads.
+	 */
+	private static final int LOAD_CHUNK_SIZE	= 256 * 1024;
+
+	/**
+	 * Extension fields that do not name a tag's enclosing scope.  ctags
+	 * uses the kind of the enclosing tag as the key of a scope field, and
+	 * that can be any kind of any language (<code>record</code>,
+	 * <code>trait</code>, <code>section</code>, ...), so every other field
+	 * is taken to be a scope.
+	 */
+	private static final Set<String> NON_SCOPE_KEYS = new HashSet<String>(
+		Arrays.asList("access", "captures", "decorators", "end", "epoch",
+			"extras", "file", "implementation", "inherits", "input", "kind",
+			"language", "line", "name", "nameref", "nth", "pattern",
+			"properties", "roles", "scopeKind", "signature",
+			"specialization", "template", "typeref", "xpath"));
+
+	/**
+	 * The key of the field written by <code>--fields=+Z</code>, whose value
+	 * is <code><em>kind</em>:<em>scope</em></code>.
+	 */
+	private static final String SCOPE_KEY		= "scope";
+
+
+	/**
+	 * Constructor.  Tables are created via a {@link Builder}.
+	 */
+	private TagTable() {
+	}
+
+
+	/**
+	 * Compares a name against the name of a row, in the manner of
+	 * <code>strcmp()</code> (or <code>strncmp()</code> for partial
+	 * matches).
+	 *
+	 * @param search The UTF-8 bytes of the name to compare.
+	 * @param row The row.
+	 * @param partial Whether only the first <code>search.length</code>
+	 *        bytes of the row's name should be compared.
+	 * @return A value less than, equal to, or greater than zero if
+	 *         <code>search</code> is less than, equal to, or greater than
+	 *         the row's name.
+	 */
+	private int compareName(byte[] search, int row, boolean partial) {
+		int start = offsets[3*row];
+		int len = offsets[3*row + 1] - start;
+		int result = compare(search, 0, search.length, arena, start,
+						partial ? Math.min(len, search.length) : len);
+		if (result==0 && partial && len<search.length) {
+			result = 1;
+		}
+		return result;
+	}
+
+
+	/**
+	 * Compares two byte ranges as unsigned bytes, i.e. in the order used
+	 * by sorted ctag files.
+	 *
+	 * @param b1 The first array.
+	 * @param start1 The offset into the first array.
+	 * @param len1 The length of the first range.
+	 * @param b2 The second array.
+	 * @param start2 The offset into the second array.
+	 * @param len2 The length of the second range.
+	 * @return The comparison result.
+	 */
+	static int compare(byte[] b1, int start1, int len1,
+						byte[] b2, int start2, int len2) {
+		int len = Math.min(len1, len2);
+		for (int i=0; i<len; i++) {
+			int diff = (b1[start1+i] & 0xff) - (b2[start2+i] & 0xff);
+			if (diff!=0) {
+				return diff;
+			}
+		}
+		return len1 - len2;
+	}
+
+
+	/**
+	 * Returns a copy of file information.
+	 *
+	 * @param info The information to copy.  This may be <code>null</code>.
+	 * @return The copy.
+	 */
+	private static TagFileInfo copyInfo(TagFileInfo info) {
+		if (info==null) {
+			return null;
+		}
+		TagFileInfo copy = new TagFileInfo();
+		copy.format = info.format;
+		copy.sort = info.sort;
+		copy.author = info.author;
+		copy.name = info.name;
+		copy.url = info.url;
+		copy.version = info.version;
+		return copy;
+	}
+
+
+	/**
+	 * Groups rows by a dictionary-encoded column.
+	 *
+	 * @param codes The code of each row, or <code>-1</code> for none.
+	 * @param names The value of each code.
+	 * @return A map from each value to its rows.
+	 */
+	private Map<String, int[]> createCodeIndex(int[] codes, String[] names) {
+		int[] counts = new int[names.length];
+		for (int row=0; row<size; row++) {
+			if (codes[row]>-1) {
+				counts[codes[row]]++;
+			}
+		}
+		int[][] rows = new int[names.length][];
+		for (int i=0; i<names.length; i++) {
+			rows[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int row=0; row<size; row++) {
+			int code = codes[row];
+			if (code>-1) {
+				rows[code][counts[code]++] = row;
+			}
+		}
+		Map<String, int[]> index = new HashMap<String, int[]>(
+											names.length*4/3 + 1);
+		for (int i=0; i<names.length; i++) {
+			index.put(names[i], rows[i]);
+		}
+		return index;
+	}
+
+
+	private String decode(int start, int end) {
+		return new String(arena, start, end-start, MappedTagBuffer.UTF8);
+	}
+
+
+	/**
+	 * Returns the index of the first row whose name is not less than a
+	 * name, i.e. the start of the range of rows matching it.
+	 *
+	 * @param name The name to search for.
+	 * @param options <code>CTagReader.TAG_PARTIALMATCH</code> for a prefix
+	 *        search, or <code>CTagReader.TAG_FULLMATCH</code>.
+	 * @return The start of the range of matching rows.  The range is empty
+	 *         if this is equal to {@link #findRangeEnd(String, int)}.
+	 * @throws IllegalArgumentException If <code>TAG_IGNORECASE</code> is
+	 *         specified; rows are sorted case-sensitively.
+	 * @see #findRangeEnd(String, int)
+	 */
+	public int findRangeStart(String name, int options) {
+		return findBound(name, options, false);
+	}
+
+
+	/**
+	 * Returns the index just past the last row matching a name.
+	 *
+	 * @param name The name to search for.
+	 * @param options <code>CTagReader.TAG_PARTIALMATCH</code> for a prefix
+	 *        search, or <code>CTagReader.TAG_FULLMATCH</code>.
+	 * @return The end of the range of matching rows, exclusive.
+	 * @throws IllegalArgumentException If <code>TAG_IGNORECASE</code> is
+	 *         specified; rows are sorted case-sensitively.
+	 * @see #findRangeStart(String, int)
+	 */
+	public int findRangeEnd(String name, int options) {
+		return findBound(name, options, true);
+	}
+
+
+	private int findBound(String name, int options, boolean upper) {
+		if ((options & CTagReader.TAG_IGNORECASE)!=0) {
+			throw new IllegalArgumentException(
+					"Case-insensitive lookups are not supported");
+		}
+		byte[] search = name.getBytes(MappedTagBuffer.UTF8);
+		boolean partial = (options & CTagReader.TAG_PARTIALMATCH)!=0;
+		int low = 0;
+		int high = size;
+		while (low<high) {
+			int mid = (low + high) >>> 1;
+			int comp = compareName(search, mid, partial);
+			if (comp>0 || (upper && comp==0)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+	/**
+	 * Returns the index of the first row exactly matching a name.
+	 *
+	 * @param name The name to search for.
+	 * @return The row, or <code>-1</code> if no tag has that name.
+	 */
+	public int findFirst(String name) {
+		int row = findRangeStart(name, CTagReader.TAG_FULLMATCH);
+		if (row<size &&
+				compareName(name.getBytes(MappedTagBuffer.UTF8), row, false)==0) {
+			return row;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Returns a row as a <code>TagEntry</code>.
+	 *
+	 * @param row The row.
+	 * @return A new tag entry.
+	 */
+	public TagEntry getEntry(int row) {
+		TagEntry entry = new TagEntry();
+		entry.name = getName(row);
+		entry.file = getFile(row);
+		entry.pattern = getPattern(row);
+		entry.lineNumber = getLineNumber(row);
+		entry.kind = getKind(row);
+		entry.fileScope = isFileScope(row);
+		int p = offsets[3*row + 2];
+		int end = offsets[3*row + 3];
+		while (p<end) {
+			if (arena[p]=='\t') {
+				p++;
+			}
+			int fieldEnd = indexOf('\t', p, end);
+			int colon = indexOf(':', p, fieldEnd);
+			if (colon<fieldEnd && !regionEquals(p, colon, KIND) &&
+					!regionEquals(p, colon, FILE) &&
+					!regionEquals(p, colon, LINE)) {
+				entry.fieldList.add(new TagExtensionField(decode(p, colon),
+										decode(colon+1, fieldEnd)));
+			}
+			p = fieldEnd;
+		}
+		return entry;
+	}
+
+
+	/**
+	 * Returns the value of an extension field of a row.  This has the
+	 * same semantics as <code>CTagReader.tagsField()</code>.
+	 *
+	 * @param row The row.
+	 * @param key The key of the field.
+	 * @return The value, or <code>null</code> if the row does not have the
+	 *         field.
+	 */
+	public String getField(int row, String key) {
+		if (key.equals("kind")) {
+			return getKind(row);
+		}
+		else if (key.equals("file")) {
+			return isFileScope(row) ? CTagReader.EmptyString : null;
+		}
+		byte[] bytes = key.getBytes(MappedTagBuffer.UTF8);
+		int p = offsets[3*row + 2];
+		int end = offsets[3*row + 3];
+		while (p<end) {
+			if (arena[p]=='\t') {
+				p++;
+			}
+			int fieldEnd = indexOf('\t', p, end);
+			int colon = indexOf(':', p, fieldEnd);
+			if (colon<fieldEnd && regionEquals(p, colon, bytes)) {
+				return decode(colon+1, fieldEnd);
+			}
+			p = fieldEnd;
+		}
+		return null;
+	}
+
+
+	/**
+	 * Returns the source file of a row.
+	 *
+	 * @param row The row.
+	 * @return The file.  This is shared by all rows with the same file.
+	 */
+	public String getFile(int row) {
+		return fileNames[files[row]];
+	}
+
+
+	/**
+	 * Returns information about the file this table was loaded from.
+	 *
+	 * @return The information, or <code>null</code> if none was
+	 *         specified.  This is a copy, so it may be modified.
+	 */
+	public TagFileInfo getInfo() {
+		return copyInfo(info);
+	}
+
+
+	/**
+	 * Returns the kind of a row.
+	 *
+	 * @param row The row.
+	 * @return The kind, or <code>null</code> if it is not known.  This is
+	 *         shared by all rows of the same kind.
+	 */
+	public String getKind(int row) {
+		int kind = kinds[row];
+		return kind==-1 ? null : kindNames[kind];
+	}
+
+
+	/**
+	 * Returns the line number of a row.
+	 *
+	 * @param row The row.
+	 * @return The line number, or <code>0</code> if it is not known.
+	 */
+	public long getLineNumber(int row) {
+		return lineNumbers[row];
+	}
+
+
+	/**
+	 * Returns the name of a row.
+	 *
+	 * @param row The row.
+	 * @return The name.
+	 */
+	public String getName(int row) {
+		return decode(offsets[3*row], offsets[3*row + 1]);
+	}
+
+
+	/**
+	 * Returns the pattern of a row.
+	 *
+	 * @param row The row.
+	 * @return The pattern, or <code>null</code> if the row has a line
+	 *         number instead.
+	 */
+	public String getPattern(int row) {
+		int start = offsets[3*row + 1];
+		int end = offsets[3*row + 2];
+		return start==end ? null : decode(start, end);
+	}
+
+
+	/**
+	 * Returns the rows for tags defined in a source file.
+	 *
+	 * @param file The file, as it appears in the tag file.
+	 * @return The rows, in ascending order.  This is a new array.
+	 * @see #getFile(int)
+	 */
+	public int[] getRowsInFile(String file) {
+		Map<String, int[]> index = fileIndex;
+		if (index==null) {
+			synchronized (this) {
+				index = fileIndex;
+				if (index==null) {
+					fileIndex = index = createCodeIndex(files, fileNames);
+				}
+			}
+		}
+		return lookup(index, file);
+	}
+
+
+	/**
+	 * Returns the rows for tags in a scope, such as the members of a class
+	 * or the enumerators of an enum.  These are the tags with an extension
+	 * field such as <code>class:Foo</code>, for any kind of scope.  Any
+	 * field other than the standard ones (<code>kind</code>,
+	 * <code>signature</code>, <code>access</code>, etc.) is taken to name
+	 * a scope.
+	 *
+	 * @param scope The name of the scope, e.g. <code>"Foo"</code>.
+	 * @return The rows, in ascending order.  This is a new array.
+	 * @see #getRowsInScope(String, String)
+	 */
+	public int[] getRowsInScope(String scope) {
+		return lookup(getScopeIndex().byName, scope);
+	}
+
+
+	/**
+	 * Returns the rows for tags in a scope of a specific kind.
+	 *
+	 * @param scopeKind The kind of the scope, i.e. the key of the extension
+	 *        field, e.g. <code>"class"</code> or <code>"namespace"</code>.
+	 * @param scope The name of the scope, e.g. <code>"Foo"</code>.
+	 * @return The rows, in ascending order.  This is a new array.
+	 * @see #getRowsInScope(String)
+	 */
+	public int[] getRowsInScope(String scopeKind, String scope) {
+		return lookup(getScopeIndex().byField, scopeKind + ':' + scope);
+	}
+
+
+	/**
+	 * Returns the rows for tags of a kind.
+	 *
+	 * @param kind The kind, as it appears in the tag file (e.g.
+	 *        <code>"m"</code> or <code>"method"</code>, depending on how the
+	 *        file was generated).
+	 * @return The rows, in ascending order.  This is a new array.
+	 * @see #getKind(int)
+	 */
+	public int[] getRowsOfKind(String kind) {
+		Map<String, int[]> index = kindIndex;
+		if (index==null) {
+			synchronized (this) {
+				index = kindIndex;
+				if (index==null) {
+					int[] codes = new int[size];
+					for (int row=0; row<size; row++) {
+						codes[row] = kinds[row];
+					}
+					kindIndex = index = createCodeIndex(codes, kindNames);
+				}
+			}
+		}
+		return lookup(index, kind);
+	}
+
+
+	/**
+	 * Returns the scope index, building it if necessary.
+	 *
+	 * @return The scope index.
+	 */
+	private ScopeIndex getScopeIndex() {
+		ScopeIndex index = scopeIndex;
+		if (index==null) {
+			synchronized (this) {
+				index = scopeIndex;
+				if (index==null) {
+					scopeIndex = index = new ScopeIndex();
+				}
+			}
+		}
+		return index;
+	}
+
+
+	private int indexOf(int b, int start, int end) {
+		while (start<end && arena[start]!=b) {
+			start++;
+		}
+		return start;
+	}
+
+
+	/**
+	 * Returns whether a row is of file-limited scope.
+	 *
+	 * @param row The row.
+	 * @return Whether the row is of file-limited scope.
+	 */
+	public boolean isFileScope(int row) {
+		return fileScope.get(row);
+	}
+
+
+	/**
+	 * Loads an entire ctag file into a table.
+	 *
+	 * @param file The file to load.
+	 * @return The table.
+	 */
+	public static TagTable load(TagFile file) {
+		return load(file, null);
+	}
+
+
+	/**
+	 * Loads an entire ctag file into a table, parsing line-aligned chunks
+	 * of it in parallel.  The chunks' tags are appended in file order
+	 * before the table is sorted, so the result is the same as that of
+	 * {@link #load(TagFile)}.
+	 *
+	 * @param file The file to load.
+	 * @param executor The executor to parse chunks on, or
+	 *        <code>null</code> to parse the whole file on the calling thread.
+	 * @return The table.
+	 * @see TagFile#readAll(ExecutorService)
+	 */
+	public static TagTable load(final TagFile file, ExecutorService executor) {
+
+		final long[] bounds = file.split(TaskUtil.getChunkCount(executor,
+									file.getSize(), LOAD_CHUNK_SIZE));
+		List<Callable<Builder>> tasks = new ArrayList<Callable<Builder>>();
+		for (int i=0; i<bounds.length-1; i++) {
+			final long start = bounds[i];
+			final long end = bounds[i+1];
+			tasks.add(new Callable<Builder>() {
+				@Override
+				public Builder call() {
+					Builder builder = new Builder();
+					TagCursor cursor = file.createCursor();
+					LazyTagEntry entry = new LazyTagEntry();
+					cursor.seek(start);
+					while (cursor.readLine() && cursor.getLineOffset()<end) {
+						cursor.getEntry(entry);
+						builder.add(entry);
+					}
+					return builder;
+				}
+			});
+		}
+
+		List<Builder> builders = TaskUtil.invokeAll(executor, tasks);
+		Builder builder = builders.isEmpty() ? new Builder() : builders.get(0);
+		for (int i=1; i<builders.size(); i++) {
+			builder.addAll(builders.get(i));
+		}
+		builder.setInfo(file.getInfo());
+		return builder.build();
+
+	}
+
+
+	/**
+	 * Loads an entire ctag file into a table.
+	 *
+	 * @param filePath The file to load.
+	 * @return The table.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static TagTable load(String filePath) throws IOException {
+		return load(TagFile.open(filePath));
+	}
+
+
+	private static int[] lookup(Map<String, int[]> index, String key) {
+		int[] rows = index.get(key);
+		return rows!=null ? rows.clone() : new int[0];
+	}
+
+
+	private boolean regionEquals(int start, int end, byte[] bytes) {
+		if (end-start!=bytes.length) {
+			return false;
+		}
+		for (int i=0; i<bytes.length; i++) {
+			if (arena[start+i]!=bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns the number of tags in this table.
+	 *
+	 * @return The number of tags.
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * Creates a {@link TagTable}, one tag at a time.  Tags may be added in
+	 * any order; they are sorted by name when the table is built.  Pseudo
+	 * tags (lines starting with <code>"!_"</code>) are ignored.  This class
+	 * is not thread-safe.
+	 */
+	public static final class Builder {
+
+		private TagFileInfo info;
+		private int size;
+		private byte[] arena;
+		private int arenaSize;
+		private int[] offsets;
+		private int[] lineNumbers;
+		private short[] kinds;
+		private int[] files;
+		private BitSet fileScope;
+		private boolean sorted;
+		private int lastNameStart;
+
+		private Map<String, Integer> kindCodes;
+		private List<String> kindNames;
+		private Map<String, Integer> fileCodes;
+		private List<String> fileNames;
+
+		private LazyTagEntry entry;
+
+		/**
+		 * Constructor.
+		 */
+		public Builder() {
+			arena = new byte[64 * 1024];
+			offsets = new int[3*1024 + 1];
+			lineNumbers = new int[1024];
+			kinds = new short[1024];
+			files = new int[1024];
+			fileScope = new BitSet();
+			sorted = true;
+			lastNameStart = -1;
+			kindCodes = new HashMap<String, Integer>();
+			kindNames = new ArrayList<String>();
+			fileCodes = new HashMap<String, Integer>();
+			fileNames = new ArrayList<String>();
+			entry = new LazyTagEntry();
+		}
+
+		/**
+		 * Adds a tag.
+		 *
+		 * @param entry The tag to add.  Its fields are copied, so it may
+		 *        be reused by the caller.
+		 */
+		public void add(LazyTagEntry entry) {
+
+			byte[] line = entry.getBuffer();
+			int len = entry.getLength();
+			if (len>=2 && line[0]=='!' && line[1]=='_') {
+				return; // Pseudo-tag
+			}
+
+			int nameLen = entry.getNameLength();
+			int patternStart = entry.getPatternOffset();
+			int patternLen = patternStart==-1 ? 0 :
+						entry.getPatternEndOffset() - patternStart;
+			int fieldsStart = entry.getFieldsOffset();
+			int fieldsLen = fieldsStart==-1 ? 0 : len - fieldsStart;
+			ensureCapacity(nameLen + patternLen + fieldsLen, 1);
+
+			int nameStart = arenaSize;
+			if (sorted && lastNameStart>-1 &&
+					compare(arena, lastNameStart, offsets[3*size-2]-lastNameStart,
+							line, 0, nameLen)>0) {
+				sorted = false;
+			}
+			lastNameStart = nameStart;
+
+			offsets[3*size] = arenaSize;
+			System.arraycopy(line, 0, arena, arenaSize, nameLen);
+			arenaSize += nameLen;
+			offsets[3*size + 1] = arenaSize;
+			if (patternLen>0) {
+				System.arraycopy(line, patternStart, arena, arenaSize, patternLen);
+				arenaSize += patternLen;
+			}
+			offsets[3*size + 2] = arenaSize;
+			if (fieldsLen>0) {
+				System.arraycopy(line, fieldsStart, arena, arenaSize, fieldsLen);
+				arenaSize += fieldsLen;
+			}
+			offsets[3*size + 3] = arenaSize;
+
+			lineNumbers[size] = (int)entry.getLineNumber();
+			kinds[size] = (short)getCode(entry.getKind(), kindCodes, kindNames);
+			files[size] = getCode(entry.getFile(), fileCodes, fileNames);
+			if (entry.isFileScope()) {
+				fileScope.set(size);
+			}
+			size++;
+
+		}
+
+		/**
+		 * Appends all of the tags added to another builder, as if each had
+		 * been added to this one in turn.
+		 *
+		 * @param other The other builder.  It should not be used
+		 *        afterward.
+		 */
+		void addAll(Builder other) {
+
+			if (other.size==0) {
+				return;
+			}
+			ensureCapacity(other.arenaSize, other.size);
+
+			if (sorted && (!other.sorted || (lastNameStart>-1 &&
+					compare(arena, lastNameStart, offsets[3*size-2]-lastNameStart,
+							other.arena, 0, other.offsets[1])>0))) {
+				sorted = false;
+			}
+
+			int[] kindMap = new int[other.kindNames.size()];
+			for (int i=0; i<kindMap.length; i++) {
+				kindMap[i] = getCode(other.kindNames.get(i), kindCodes, kindNames);
+			}
+			int[] fileMap = new int[other.fileNames.size()];
+			for (int i=0; i<fileMap.length; i++) {
+				fileMap[i] = getCode(other.fileNames.get(i), fileCodes, fileNames);
+			}
+
+			int shift = arenaSize;
+			System.arraycopy(other.arena, 0, arena, arenaSize, other.arenaSize);
+			for (int i=0; i<other.size; i++) {
+				int row = size + i;
+				offsets[3*row] = other.offsets[3*i] + shift;
+				offsets[3*row + 1] = other.offsets[3*i + 1] + shift;
+				offsets[3*row + 2] = other.offsets[3*i + 2] + shift;
+				lineNumbers[row] = other.lineNumbers[i];
+				int kind = other.kinds[i];
+				kinds[row] = (short)(kind==-1 ? -1 : kindMap[kind]);
+				int file = other.files[i];
+				files[row] = file==-1 ? -1 : fileMap[file];
+				if (other.fileScope.get(i)) {
+					fileScope.set(row);
+				}
+			}
+			size += other.size;
+			arenaSize += other.arenaSize;
+			offsets[3*size] = arenaSize;
+			lastNameStart = other.lastNameStart + shift;
+
+		}
+
+		/**
+		 * Adds a tag.
+		 *
+		 * @param line A line from a ctag file.
+		 */
+		public void add(String line) {
+			entry.parseTagLine(line);
+			add(entry);
+		}
+
+		/**
+		 * Creates a table of the tags added so far.  The table shares no
+		 * state with this builder, so more tags may be added afterward and
+		 * another table built, e.g. to publish snapshots of a table as it
+		 * grows.
+		 *
+		 * @return The table.
+		 */
+		public TagTable build() {
+
+			TagTable table = new TagTable();
+			table.info = copyInfo(info);
+			table.size = size;
+			table.kindNames = kindNames.toArray(new String[kindNames.size()]);
+			table.fileNames = fileNames.toArray(new String[fileNames.size()]);
+
+			if (sorted) {
+				table.arena = trim(arena, arenaSize);
+				table.offsets = trim(offsets, 3*size + 1);
+				table.lineNumbers = trim(lineNumbers, size);
+				table.kinds = trim(kinds, size);
+				table.files = trim(files, size);
+				table.fileScope = (BitSet)fileScope.clone();
+				return table;
+			}
+
+			// Sort the rows by name, keeping tags of the same name in the
+			// order they were added.
+			int[] order = new int[size];
+			for (int i=0; i<size; i++) {
+				order[i] = i;
+			}
+			mergeSort(order, new int[size], 0, size);
+
+			table.arena = new byte[arenaSize];
+			table.offsets = new int[3*size + 1];
+			table.lineNumbers = new int[size];
+			table.kinds = new short[size];
+			table.files = new int[size];
+			table.fileScope = new BitSet(size);
+			int pos = 0;
+			for (int i=0; i<size; i++) {
+				int row = order[i];
+				int start = offsets[3*row];
+				int len = offsets[3*row + 3] - start;
+				System.arraycopy(arena, start, table.arena, pos, len);
+				table.offsets[3*i] = pos;
+				table.offsets[3*i + 1] = pos + offsets[3*row + 1] - start;
+				table.offsets[3*i + 2] = pos + offsets[3*row + 2] - start;
+				pos += len;
+				table.lineNumbers[i] = lineNumbers[row];
+				table.kinds[i] = kinds[row];
+				table.files[i] = files[row];
+				if (fileScope.get(row)) {
+					table.fileScope.set(i);
+				}
+			}
+			table.offsets[3*size] = pos;
+			return table;
+
+		}
+
+		private int compareRows(int row1, int row2) {
+			int start1 = offsets[3*row1];
+			int start2 = offsets[3*row2];
+			return compare(arena, start1, offsets[3*row1 + 1] - start1,
+							arena, start2, offsets[3*row2 + 1] - start2);
+		}
+
+		private void ensureCapacity(int textLen, int rows) {
+			if (arenaSize + textLen > arena.length) {
+				long newLen = Math.max(arena.length*2L, (long)arenaSize + textLen);
+				if (newLen>Integer.MAX_VALUE) {
+					throw new IllegalStateException("Too much tag data for a TagTable");
+				}
+				byte[] temp = new byte[(int)newLen];
+				System.arraycopy(arena, 0, temp, 0, arenaSize);
+				arena = temp;
+			}
+			if (size + rows > lineNumbers.length) {
+				int newSize = Math.max(size * 2, size + rows);
+				int[] temp = new int[3*newSize + 1];
+				System.arraycopy(offsets, 0, temp, 0, 3*size + 1);
+				offsets = temp;
+				lineNumbers = trim(lineNumbers, newSize);
+				kinds = trim(kinds, newSize);
+				files = trim(files, newSize);
+			}
+		}
+
+		private static int getCode(String value, Map<String, Integer> codes,
+									List<String> values) {
+			if (value==null) {
+				return -1;
+			}
+			Integer code = codes.get(value);
+			if (code==null) {
+				code = Integer.valueOf(values.size());
+				codes.put(value, code);
+				values.add(value);
+			}
+			return code.intValue();
+		}
+
+		/**
+		 * A stable merge sort of row indices by name.
+		 */
+		private void mergeSort(int[] rows, int[] temp, int from, int to) {
+			if (to-from<2) {
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			mergeSort(rows, temp, from, mid);
+			mergeSort(rows, temp, mid, to);
+			if (compareRows(rows[mid-1], rows[mid])<=0) {
+				return; // Already in order
+			}
+			System.arraycopy(rows, from, temp, from, to-from);
+			int i = from, j = mid, k = from;
+			while (i<mid && j<to) {
+				rows[k++] = compareRows(temp[j], temp[i])<0 ? temp[j++] : temp[i++];
+			}
+			while (i<mid) {
+				rows[k++] = temp[i++];
+			}
+			while (j<to) {
+				rows[k++] = temp[j++];
+			}
+		}
+
+		/**
+		 * Sets information about the file the tags come from.  Each table
+		 * built gets its own copy, so changing <code>info</code> afterward
+		 * does not affect tables already built.
+		 *
+		 * @param info The information.  This may be <code>null</code>.
+		 */
+		public void setInfo(TagFileInfo info) {
+			this.info = info;
+		}
+
+		/**
+		 * Returns the number of tags added so far.
+		 *
+		 * @return The number of tags.
+		 */
+		public int size() {
+			return size;
+		}
+
+		private static byte[] trim(byte[] array, int len) {
+			byte[] temp = new byte[len];
+			System.arraycopy(array, 0, temp, 0, Math.min(len, array.length));
+			return temp;
+		}
+
+		private static int[] trim(int[] array, int len) {
+			int[] temp = new int[len];
+			System.arraycopy(array, 0, temp, 0, Math.min(len, array.length));
+			return temp;
+		}
+
+		private static short[] trim(short[] array, int len) {
+			short[] temp = new short[len];
+			System.arraycopy(array, 0, temp, 0, Math.min(len, array.length));
+			return temp;
+		}
+
+	}
+
+
+	/**
+	 * The rows of each scope, from the scope fields of every row.
+	 */
+	private final class ScopeIndex {
+
+		private Map<String, int[]> byName;		/* "Foo" -> rows */
+		private Map<String, int[]> byField;	/* "class:Foo" -> rows */
+
+		ScopeIndex() {
+			Map<String, IntList> names = new HashMap<String, IntList>();
+			Map<String, IntList> fields = new HashMap<String, IntList>();
+			for (int row=0; row<size; row++) {
+				int p = offsets[3*row + 2];
+				int end = offsets[3*row + 3];
+				while (p<end) {
+					if (arena[p]=='\t') {
+						p++;
+					}
+					int fieldEnd = indexOf('\t', p, end);
+					int colon = indexOf(':', p, fieldEnd);
+					if (colon<fieldEnd) {
+						int valueStart = colon + 1;
+						String key = decode(p, colon);
+						if (key.equals(SCOPE_KEY)) {
+							colon = indexOf(':', valueStart, fieldEnd);
+							key = colon<fieldEnd ?
+									decode(valueStart, colon) : null;
+							valueStart = colon + 1;
+						}
+						else if (NON_SCOPE_KEYS.contains(key)) {
+							key = null;
+						}
+						if (key!=null && valueStart<fieldEnd) {
+							String value = decode(valueStart, fieldEnd);
+							add(names, value, row);
+							add(fields, key + ':' + value, row);
+						}
+					}
+					p = fieldEnd;
+				}
+			}
+			byName = toArrays(names);
+			byField = toArrays(fields);
+		}
+
+		private void add(Map<String, IntList> map, String key, int row) {
+			IntList rows = map.get(key);
+			if (rows==null) {
+				rows = new IntList();
+				map.put(key, rows);
+			}
+			if (rows.size()==0 || rows.getLast()!=row) {
+				rows.add(row);
+			}
+		}
+
+		private Map<String, int[]> toArrays(Map<String, IntList> map) {
+			Map<String, int[]> result = new HashMap<String, int[]>(
+												map.size()*4/3 + 1);
+			for (Map.Entry<String, IntList> entry : map.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().toArray());
+			}
+			return result;
+		}
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+package org.fife.ctags;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * Utility methods for running work on an <code>ExecutorService</code>.
+ * This class is public domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+final class TaskUtil {
+
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private TaskUtil() {
+	}
+
+
+	/**
+	 * Returns the number of chunks to split work over a number of bytes
+	 * into.
+	 *
+	 * @param executor The executor the chunks will run on, or
+	 *        <code>null</code> if they will run on the calling thread.
+	 * @param bytes The number of bytes of work.
+	 * @param minChunkSize The minimum number of bytes in a chunk.
+	 * @return The number of chunks.
+	 */
+	static int getChunkCount(ExecutorService executor, long bytes,
+							int minChunkSize) {
+		if (executor==null) {
+			return 1;
+		}
+		int max = Runtime.getRuntime().availableProcessors() * 4;
+		return (int)Math.max(1, Math.min(max, bytes/minChunkSize));
+	}
+
+
+	/**
+	 * Runs tasks and waits for all of them to complete.  If any task throws
+	 * an exception, it is rethrown on the calling thread.
+	 *
+	 * @param executor The executor to run the tasks on.  If this is
+	 *        <code>null</code>, or there is only one task, they are run on the
+	 *        calling thread.
+	 * @param tasks The tasks to run.
+	 * @return The results of the tasks, in the same order as the tasks.
+	 */
+	static <T> List<T> invokeAll(ExecutorService executor,
+							List<? extends Callable<T>> tasks) {
+
+		List<T> results = new ArrayList<T>(tasks.size());
+
+		if (executor==null || tasks.size()<2) {
+			for (Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (RuntimeException re) {
+					throw re;
+				} catch (Exception e) { // Never happens
+					throw new RuntimeException(e);
+				}
+			}
+			return results;
+		}
+
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Callable<T> task : tasks) {
+			futures.add(executor.submit(task));
+		}
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException ie) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ie);
+		} catch (ExecutionException ee) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		return results;
+
+	}
+
+
+}
\ No newline at end of file
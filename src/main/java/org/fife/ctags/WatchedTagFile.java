@@ -0,0 +1,369 @@
+package org.fife.ctags;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.CRC32;
+
+
+/**
+ * A ctag file loaded into a {@link TagTable} that is kept up to date as
+ * the file changes on disk, e.g. when a build regenerates it.  Callers
+ * always search an immutable snapshot, so a query that is running while
+ * the file is reloaded keeps seeing the old tags, and the next call to
+ * {@link #getTable()} returns the new ones:
+ *
+ * <pre>
+ * WatchedTagFile tags = WatchedTagFile.open("tags");
+ * tags.startWatching(2000);
+ * ...
+ * TagTable table = tags.getTable(); // Use one snapshot per query
+ * int row = table.findFirst("foo");
+ * </pre>
+ *
+ * Each {@link #refresh()} compares the file's size and modification time
+ * (and optionally a hash of its content) with those it last indexed.  If
+ * the file grew, as with <code>ctags -a</code>, and the part already
+ * indexed is unchanged (a CRC of it matches), only the new lines are
+ * parsed and added.  Otherwise the file was rewritten, and is reloaded
+ * from scratch.  Either way the new table is swapped in atomically.  A partial
+ * line at the end of the file (ctags still writing) is not indexed until
+ * it is complete.<p>
+ *
+ * To add lines without re-parsing the file, the builder of the table is
+ * kept, so the tags are held in memory twice.  This class is public
+ * domain.
+ *
+ * @author Robert Futrell
+ * @version 0.01
+ */
+public final class WatchedTagFile {
+
+	private final String path;
+	private volatile TagTable table;
+	private TagTable.Builder builder;
+	private TagFileInfo info;
+	private LazyTagEntry entry;
+	private long indexedEnd;		/* offset just past the last line indexed */
+	private long size;
+	private long lastModified;
+	private long contentHash;		/* of the part of the file indexed */
+	private boolean checkContent;
+	private Timer timer;
+
+	private static final int BUFFER_SIZE		= 64 * 1024;
+
+
+	/**
+	 * Constructor.  The file is loaded immediately.
+	 *
+	 * @param path The tag file.
+	 * @throws IOException If an I/O error occurs loading the file.
+	 */
+	public WatchedTagFile(String path) throws IOException {
+		this.path = path;
+		entry = new LazyTagEntry();
+		reload(new File(path));
+	}
+
+
+	/**
+	 * Adds a line to the builder.
+	 *
+	 * @param buf The buffer containing the line.
+	 * @param start The start of the line.
+	 * @param end The end of the line, exclusive, not including its
+	 *        terminator.
+	 * @param pseudoTags Whether pseudo-tags should be read.
+	 * @return Whether a tag was added.
+	 */
+	private boolean addLine(byte[] buf, int start, int end,
+						boolean pseudoTags) {
+		if (end>start && buf[end-1]=='\r') {
+			end--;
+		}
+		if (end==start) {
+			return false;
+		}
+		if (end-start>=2 && buf[start]=='!' && buf[start+1]=='_') {
+			if (pseudoTags) {
+				TagEntry pseudoTag = new TagEntry(new String(buf, start,
+									end-start, MappedTagBuffer.UTF8));
+				JsonTagReader.readPseudoTag(info, pseudoTag.name.substring(
+						CTagReader.PseudoTagPrefix.length()), pseudoTag.file);
+			}
+			return false;
+		}
+		entry.parseTagLine(buf, start, end-start);
+		builder.add(entry);
+		return true;
+	}
+
+
+	/**
+	 * Returns a hash of the indexed part of the file.  Hashing all of it
+	 * is cheap next to parsing it, and catches changes anywhere in it.
+	 *
+	 * @param raf The file.
+	 * @param end The end of the indexed part of the file.
+	 * @return The hash.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static long computeContentHash(RandomAccessFile raf, long end)
+								throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[BUFFER_SIZE];
+		raf.seek(0);
+		long pos = 0;
+		while (pos<end) {
+			int len = (int)Math.min(buf.length, end-pos);
+			raf.readFully(buf, 0, len);
+			crc.update(buf, 0, len);
+			pos += len;
+		}
+		return crc.getValue();
+	}
+
+
+	/**
+	 * Returns the path to the tag file.
+	 *
+	 * @return The path.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Returns the current snapshot of the tags.  Each call may return a
+	 * different table, so a query should call this once and use the result
+	 * throughout.
+	 *
+	 * @return The table.
+	 */
+	public TagTable getTable() {
+		return table;
+	}
+
+
+	/**
+	 * Returns whether the content of the file is compared, in addition to
+	 * its size and modification time, to detect changes.
+	 *
+	 * @return Whether content is checked.
+	 * @see #setCheckContent(boolean)
+	 */
+	public synchronized boolean isCheckContent() {
+		return checkContent;
+	}
+
+
+	/**
+	 * Opens and loads a tag file.
+	 *
+	 * @param path The tag file.
+	 * @return The watched file.
+	 * @throws IOException If an I/O error occurs loading the file.
+	 */
+	public static WatchedTagFile open(String path) throws IOException {
+		return new WatchedTagFile(path);
+	}
+
+
+	/**
+	 * Parses the complete lines in part of the file.
+	 *
+	 * @param raf The file.
+	 * @param start The offset to start at.  This is the start of a line.
+	 * @param end The offset to stop at.
+	 * @param pseudoTags Whether pseudo-tags should be read.
+	 * @return The number of tags added.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private int read(RandomAccessFile raf, long start, long end,
+					boolean pseudoTags) throws IOException {
+
+		byte[] buf = new byte[BUFFER_SIZE];
+		int len = 0;
+		int count = 0;
+		long pos = start;
+		indexedEnd = start;
+		raf.seek(start);
+
+		while (pos<end) {
+			int n = raf.read(buf, len, (int)Math.min(buf.length-len, end-pos));
+			if (n<0) {
+				break;
+			}
+			pos += n;
+			len += n;
+			int lineStart = 0;
+			for (int i=0; i<len; i++) {
+				if (buf[i]=='\n') {
+					if (addLine(buf, lineStart, i, pseudoTags)) {
+						count++;
+					}
+					lineStart = i + 1;
+				}
+			}
+			indexedEnd += lineStart;
+			len -= lineStart;
+			System.arraycopy(buf, lineStart, buf, 0, len);
+			if (len==buf.length) { // A very long line
+				byte[] temp = new byte[buf.length*2];
+				System.arraycopy(buf, 0, temp, 0, len);
+				buf = temp;
+			}
+		}
+
+		return count;
+
+	}
+
+
+	/**
+	 * Checks whether the file has changed and, if it has, indexes the
+	 * changes and publishes a new table.  If the file does not exist (e.g.
+	 * it is being regenerated), the current table is kept.
+	 *
+	 * @return Whether a new table was published.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public synchronized boolean refresh() throws IOException {
+
+		File file = new File(path);
+		long newSize = file.length();
+		long newModified = file.lastModified();
+		if (newModified==0) {
+			return false; // Does not exist
+		}
+		if (newSize==size && newModified==lastModified && !checkContent) {
+			return false;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+
+			newSize = Math.min(newSize, raf.length());
+			boolean unchanged = newSize==size && newModified==lastModified;
+			boolean grew = newSize>size && indexedEnd>0;
+			if (!unchanged && !grew) {
+				// Rewritten, truncated, or touched
+				reload(file);
+				return true;
+			}
+
+			boolean sameHash = indexedEnd<=newSize &&
+					computeContentHash(raf, indexedEnd)==contentHash;
+			if (!sameHash) {
+				reload(file);
+				return true;
+			}
+			if (unchanged) {
+				return false;
+			}
+
+			// Appended to
+			int count = read(raf, indexedEnd, newSize, false);
+			contentHash = computeContentHash(raf, indexedEnd);
+			size = newSize;
+			lastModified = newModified;
+			if (count==0) {
+				return false;
+			}
+			table = builder.build();
+			return true;
+
+		} finally {
+			raf.close();
+		}
+
+	}
+
+
+	/**
+	 * Loads the entire file into a new table.
+	 *
+	 * @param file The tag file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void reload(File file) throws IOException {
+
+		long newModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long newSize = raf.length();
+			builder = new TagTable.Builder();
+			info = new TagFileInfo();
+			info.format = 1;
+			info.sort = CTagReader.TAG_UNSORTED;
+			builder.setInfo(info);
+			read(raf, 0, newSize, true);
+			contentHash = computeContentHash(raf, indexedEnd);
+			size = newSize;
+			lastModified = newModified;
+		} finally {
+			raf.close();
+		}
+
+		table = builder.build();
+
+	}
+
+
+	/**
+	 * Sets whether the content of the file is compared, in addition to its
+	 * size and modification time, to detect changes.  This catches a file
+	 * rewritten with the same size within the resolution of the file
+	 * system's timestamps, at the cost of reading the file on each
+	 * refresh.
+	 *
+	 * @param check Whether to check content.
+	 * @see #isCheckContent()
+	 */
+	public synchronized void setCheckContent(boolean check) {
+		this.checkContent = check;
+	}
+
+
+	/**
+	 * Starts checking the file for changes periodically, on a daemon
+	 * thread.  Errors while checking are ignored; the file is simply
+	 * checked again next time.
+	 *
+	 * @param intervalMillis The time between checks, in milliseconds.
+	 * @see #stopWatching()
+	 */
+	public synchronized void startWatching(long intervalMillis) {
+		stopWatching();
+		timer = new Timer("WatchedTagFile", true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					refresh();
+				} catch (IOException ioe) {
+					// Try again next time
+				}
+			}
+		}, intervalMillis, intervalMillis);
+	}
+
+
+	/**
+	 * Stops checking the file for changes periodically.
+	 *
+	 * @see #startWatching(long)
+	 */
+	public synchronized void stopWatching() {
+		if (timer!=null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+
+}
\ No newline at end of file
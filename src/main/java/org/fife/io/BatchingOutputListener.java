@@ -0,0 +1,366 @@
+/*
+ * 10/17/2026
+ *
+ * BatchingOutputListener.java - Delivers the output of processes in
+ * batches.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.util.LinkedList;
+
+
+/**
+ * An output listener that gathers lines written by processes into batches,
+ * and passes them to a {@link ProcessRunnerBatchListener}.  A process
+ * writing 100,000 lines then results in a few hundred calls rather than
+ * 100,000, which keeps e.g. a console that forwards each call to the EDT
+ * responsive:
+ *
+ * <pre>
+ * runner.setOutputListener(new BatchingOutputListener(consoleListener,
+ *                                                     1000, 100, 20000));
+ * </pre>
+ *
+ * A batch is delivered once it has <code>maxBatchSize</code> lines, or
+ * once <code>maxDelayMillis</code> have passed since its first line was
+ * written, whichever comes first.  Batches hold the lines of a single
+ * process, in the order they were read from stdout and stderr.<p>
+ *
+ * Batches are delivered, in order, on a daemon thread owned by this
+ * listener, so the threads reading process output never wait for the
+ * consumer, unless it falls far behind: once <code>maxPendingLines</code>
+ * lines are waiting to be delivered, reading output blocks until the
+ * consumer catches up.  The process itself then blocks when it next writes
+ * output, rather than the backlog growing without bound.<p>
+ *
+ * {@link ProcessRunnerBatchListener#processCompleted(Process, int, Throwable)}
+ * is delivered on the same thread, after the process's last batch.  Since
+ * delivery is asynchronous, it may happen after
+ * <code>ProcessRunner.run()</code> returns; call {@link #flush()} to wait
+ * for it.  A listener may be shared by runners running concurrently.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public final class BatchingOutputListener
+		implements ProcessRunnerOutputListener {
+
+	private ProcessRunnerBatchListener listener;
+	private int maxBatchSize;
+	private long maxDelayMillis;
+	private int maxPendingLines;
+
+	/**
+	 * Batches and completions waiting to be delivered.
+	 */
+	private LinkedList<Object> queue;
+	private OutputBatch current;		/* the batch being gathered */
+	private long currentStart;
+	private int pendingLines;
+	private Thread deliveryThread;		/* null when there is nothing to do */
+
+	private long batchCount;
+	private long lineCount;
+	private long stallCount;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param listener The listener to deliver batches to.
+	 * @param maxBatchSize The maximum number of lines in a batch.
+	 * @param maxDelayMillis The maximum time to hold a line before
+	 *        delivering it, in milliseconds.
+	 * @param maxPendingLines The number of lines that can be waiting for
+	 *        delivery before reading output blocks.  This should be at least
+	 *        <code>maxBatchSize</code>.
+	 * @throws IllegalArgumentException If any limit is not positive.
+	 */
+	public BatchingOutputListener(ProcessRunnerBatchListener listener,
+			int maxBatchSize, long maxDelayMillis, int maxPendingLines) {
+		if (maxBatchSize<=0 || maxDelayMillis<=0 || maxPendingLines<=0) {
+			throw new IllegalArgumentException("Limits must be > 0");
+		}
+		this.listener = listener;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayMillis = maxDelayMillis;
+		this.maxPendingLines = maxPendingLines;
+		queue = new LinkedList<Object>();
+	}
+
+
+	/**
+	 * Delivers batches and completions until there are none left, on the
+	 * delivery thread.
+	 */
+	private void deliver() {
+
+		while (true) {
+
+			Object item;
+			synchronized (this) {
+				while (true) {
+					if (!queue.isEmpty()) {
+						item = queue.removeFirst();
+						break;
+					}
+					if (current==null) {
+						deliveryThread = null;
+						notifyAll();
+						return;
+					}
+					long delay = currentStart + maxDelayMillis -
+									System.currentTimeMillis();
+					if (delay<=0) {
+						item = current;
+						current = null;
+						break;
+					}
+					try {
+						wait(delay);
+					} catch (InterruptedException ie) {
+						// Keep delivering
+					}
+				}
+			}
+
+			try {
+				if (item instanceof OutputBatch) {
+					listener.outputWritten((OutputBatch)item);
+				}
+				else {
+					Completion c = (Completion)item;
+					listener.processCompleted(c.p, c.rc, c.e);
+				}
+			} catch (RuntimeException re) {
+				re.printStackTrace();
+			}
+
+			if (item instanceof OutputBatch) {
+				synchronized (this) {
+					pendingLines -= ((OutputBatch)item).size();
+					batchCount++;
+					notifyAll();
+				}
+			}
+
+		}
+
+	}
+
+
+	/**
+	 * Queues the batch being gathered for delivery.
+	 */
+	private void enqueueCurrent() {
+		if (current!=null) {
+			queue.add(current);
+			current = null;
+		}
+	}
+
+
+	/**
+	 * Ensures the delivery thread is running.
+	 */
+	private void ensureDeliveryThread() {
+		if (deliveryThread==null) {
+			deliveryThread = new Thread("BatchingOutputListener") {
+				@Override
+				public void run() {
+					deliver();
+				}
+			};
+			deliveryThread.setDaemon(true);
+			deliveryThread.start();
+		}
+		notifyAll();
+	}
+
+
+	/**
+	 * Delivers any output gathered so far immediately, and waits until
+	 * everything has been delivered.  This should not be called by the
+	 * batch listener itself.
+	 *
+	 * @throws InterruptedException If the calling thread is interrupted.
+	 */
+	public synchronized void flush() throws InterruptedException {
+		if (current!=null) {
+			enqueueCurrent();
+			ensureDeliveryThread();
+		}
+		while (deliveryThread!=null) {
+			wait();
+		}
+	}
+
+
+	/**
+	 * Returns the number of batches delivered.
+	 *
+	 * @return The number of batches.
+	 */
+	public synchronized long getBatchCount() {
+		return batchCount;
+	}
+
+
+	/**
+	 * Returns the listener batches are delivered to.
+	 *
+	 * @return The listener.
+	 */
+	public ProcessRunnerBatchListener getListener() {
+		return listener;
+	}
+
+
+	/**
+	 * Returns the number of lines received.
+	 *
+	 * @return The number of lines.
+	 */
+	public synchronized long getLineCount() {
+		return lineCount;
+	}
+
+
+	/**
+	 * Returns the maximum number of lines in a batch.
+	 *
+	 * @return The maximum batch size.
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+
+	/**
+	 * Returns the maximum time a line is held before it is delivered.
+	 *
+	 * @return The maximum delay, in milliseconds.
+	 */
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+
+	/**
+	 * Returns the number of lines that can be waiting for delivery before
+	 * reading output blocks.
+	 *
+	 * @return The maximum number of pending lines.
+	 */
+	public int getMaxPendingLines() {
+		return maxPendingLines;
+	}
+
+
+	/**
+	 * Returns the number of lines waiting to be delivered.
+	 *
+	 * @return The number of pending lines.
+	 */
+	public synchronized int getPendingLineCount() {
+		return pendingLines;
+	}
+
+
+	/**
+	 * Returns the number of times reading output blocked because the
+	 * consumer fell behind.
+	 *
+	 * @return The number of stalls.
+	 */
+	public synchronized long getStallCount() {
+		return stallCount;
+	}
+
+
+	@Override
+	public synchronized void outputWritten(Process p, String output,
+										boolean stdout) {
+
+		// Back-pressure: wait for the consumer to catch up.
+		if (pendingLines>=maxPendingLines) {
+			stallCount++;
+			try {
+				while (pendingLines>=maxPendingLines) {
+					wait();
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (current!=null && current.getProcess()!=p) {
+			enqueueCurrent();
+		}
+		if (current==null) {
+			current = new OutputBatch(p);
+			currentStart = System.currentTimeMillis();
+		}
+		current.add(output, stdout);
+		pendingLines++;
+		lineCount++;
+
+		if (current.size()>=maxBatchSize) {
+			enqueueCurrent();
+			ensureDeliveryThread();
+		}
+		else if (current.size()==1) {
+			ensureDeliveryThread(); // To deliver it when its time is up
+		}
+
+	}
+
+
+	@Override
+	public synchronized void processCompleted(Process p, int rc,
+											Throwable e) {
+		// The process is null if it completed normally, so deliver any
+		// batch being gathered first, whatever process it is for.
+		enqueueCurrent();
+		queue.add(new Completion(p, rc, e));
+		ensureDeliveryThread();
+	}
+
+
+	/**
+	 * Returns a summary of this listener's statistics.
+	 *
+	 * @return A summary of this listener's statistics.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "[BatchingOutputListener: " +
+			"lines=" + lineCount +
+			", batches=" + batchCount +
+			", pending=" + pendingLines + "/" + maxPendingLines +
+			", stalls=" + stallCount +
+			"]";
+	}
+
+
+	/**
+	 * The completion of a process, waiting to be delivered.
+	 */
+	private static class Completion {
+
+		private Process p;
+		private int rc;
+		private Throwable e;
+
+		Completion(Process p, int rc, Throwable e) {
+			this.p = p;
+			this.rc = rc;
+			this.e = e;
+		}
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/*
+ * 10/17/2026
+ *
+ * LineDecoder.java - Decodes bytes and splits them into lines.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * Decodes a stream of bytes, fed in chunks, and splits the result into
+ * lines as <code>BufferedReader.readLine()</code> does, i.e. on
+ * <code>"\n"</code>, <code>"\r"</code> or <code>"\r\n"</code>.  Malformed
+ * input is replaced rather than reported.  Instances are not thread-safe.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+abstract class LineDecoder {
+
+	private CharsetDecoder decoder;
+	private ByteBuffer bytes;
+	private CharBuffer chars;
+	private StringBuilder line;		/* the current, partial line */
+	private boolean skipLF;
+
+	private static final int BUFFER_SIZE	= 8192;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param charset The charset to decode with, or <code>null</code> for
+	 *        the platform default.
+	 */
+	LineDecoder(Charset charset) {
+		if (charset==null) {
+			charset = Charset.defaultCharset();
+		}
+		decoder = charset.newDecoder().
+				onMalformedInput(CodingErrorAction.REPLACE).
+				onUnmappableCharacter(CodingErrorAction.REPLACE);
+		bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		line = new StringBuilder();
+	}
+
+
+	private void decode(boolean endOfInput) {
+		bytes.flip();
+		CoderResult result;
+		do {
+			result = decoder.decode(bytes, chars, endOfInput);
+			chars.flip();
+			split();
+			chars.clear();
+		} while (result.isOverflow());
+		if (endOfInput) {
+			decoder.flush(chars);
+			chars.flip();
+			split();
+			chars.clear();
+		}
+		bytes.compact(); // Keep any partial character
+	}
+
+
+	/**
+	 * Ends the input, delivering the last line if it was not terminated.
+	 * This decoder can then be used for a new stream.
+	 */
+	void finish() {
+		decode(true);
+		if (line.length()>0) {
+			fireLine();
+		}
+		bytes.clear();
+		decoder.reset();
+		skipLF = false;
+	}
+
+
+	private void fireLine() {
+		String str = line.toString();
+		line.setLength(0);
+		lineRead(str);
+	}
+
+
+	/**
+	 * Called when a line has been decoded.
+	 *
+	 * @param line The line, without its terminator.
+	 */
+	abstract void lineRead(String line);
+
+
+	/**
+	 * Splits decoded characters into lines.
+	 */
+	private void split() {
+		while (chars.hasRemaining()) {
+			char ch = chars.get();
+			if (skipLF) {
+				skipLF = false;
+				if (ch=='\n') {
+					continue;
+				}
+			}
+			if (ch=='\n' || ch=='\r') {
+				skipLF = ch=='\r';
+				fireLine();
+			}
+			else {
+				line.append(ch);
+			}
+		}
+	}
+
+
+	/**
+	 * Decodes bytes, delivering any lines completed.
+	 *
+	 * @param buf The bytes.  This buffer's position is advanced to its
+	 *        limit.
+	 */
+	void write(ByteBuffer buf) {
+		while (buf.hasRemaining()) {
+			int count = Math.min(bytes.remaining(), buf.remaining());
+			int limit = buf.limit();
+			buf.limit(buf.position() + count);
+			bytes.put(buf);
+			buf.limit(limit);
+			decode(false);
+		}
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*
+ * 10/17/2026
+ *
+ * LineFramer.java - Splits raw process output into lines.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+
+/**
+ * Decodes the raw output of processes with a given charset and passes it,
+ * line by line, to a {@link ProcessRunnerOutputListener}.  This gives the
+ * behavior of a <code>ProcessRunner</code> without a chunk listener, but
+ * with a charset other than the platform default:
+ *
+ * <pre>
+ * runner.setChunkListener(new LineFramer(Charset.forName("UTF-8"),
+ *                                        listener));
+ * </pre>
+ *
+ * The last line of a stream is delivered when the stream ends, even if it
+ * is not terminated.  A framer may be shared by runners running
+ * concurrently.  Note that {@link ProcessRunnerOutputListener#processCompleted(
+ * Process, int, Throwable)} is not called by this class; it is called by the
+ * runner if the listener is also set as its output listener.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public final class LineFramer implements ProcessRunnerChunkListener {
+
+	private Charset charset;
+	private ProcessRunnerOutputListener listener;
+	private Map<Process, LineDecoder[]> decoders;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param charset The charset of the output, or <code>null</code> for
+	 *        the platform default.
+	 * @param listener The listener to pass lines to.
+	 */
+	public LineFramer(Charset charset, ProcessRunnerOutputListener listener) {
+		this.charset = charset==null ? Charset.defaultCharset() : charset;
+		this.listener = listener;
+		decoders = new IdentityHashMap<Process, LineDecoder[]>();
+	}
+
+
+	@Override
+	public void chunkRead(Process p, ByteBuffer chunk, boolean stdout) {
+		getDecoder(p, stdout).write(chunk);
+	}
+
+
+	/**
+	 * Returns the charset output is decoded with.
+	 *
+	 * @return The charset.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+
+	/**
+	 * Returns the decoder for one stream of a process, creating it if
+	 * necessary.  Each decoder is only used by the thread reading its
+	 * stream.
+	 */
+	private synchronized LineDecoder getDecoder(final Process p,
+										final boolean stdout) {
+		LineDecoder[] pair = decoders.get(p);
+		if (pair==null) {
+			pair = new LineDecoder[2];
+			decoders.put(p, pair);
+		}
+		int index = stdout ? 0 : 1;
+		if (pair[index]==null) {
+			pair[index] = new LineDecoder(charset) {
+				@Override
+				void lineRead(String line) {
+					listener.outputWritten(p, line, stdout);
+				}
+			};
+		}
+		return pair[index];
+	}
+
+
+	/**
+	 * Returns the listener lines are passed to.
+	 *
+	 * @return The listener.
+	 */
+	public ProcessRunnerOutputListener getListener() {
+		return listener;
+	}
+
+
+	@Override
+	public void streamClosed(Process p, boolean stdout) {
+		getDecoder(p, stdout).finish();
+		synchronized (this) {
+			LineDecoder[] pair = decoders.get(p);
+			pair[stdout ? 0 : 1] = null;
+			if (pair[0]==null && pair[1]==null) {
+				decoders.remove(p);
+			}
+		}
+	}
+
+
+}
\ No newline at end of file
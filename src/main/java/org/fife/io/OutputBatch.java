@@ -0,0 +1,112 @@
+/*
+ * 10/17/2026
+ *
+ * OutputBatch.java - Lines of output from a process, delivered together.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Consecutive lines written to stdout and stderr by a process, delivered
+ * to a {@link ProcessRunnerBatchListener} together.  Lines are in the order
+ * they were read.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ * @see BatchingOutputListener
+ */
+public final class OutputBatch {
+
+	private Process p;
+	private List<String> lines;
+	private BitSet stdout;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param p The process the output is from.
+	 */
+	OutputBatch(Process p) {
+		this.p = p;
+		lines = new ArrayList<String>();
+		stdout = new BitSet();
+	}
+
+
+	/**
+	 * Adds a line.
+	 *
+	 * @param line The line.
+	 * @param isStdout Whether it was written to stdout.
+	 */
+	void add(String line, boolean isStdout) {
+		if (isStdout) {
+			stdout.set(lines.size());
+		}
+		lines.add(line);
+	}
+
+
+	/**
+	 * Returns a line.
+	 *
+	 * @param index The index of the line.
+	 * @return The line.
+	 * @see #isStdout(int)
+	 */
+	public String getLine(int index) {
+		return lines.get(index);
+	}
+
+
+	/**
+	 * Returns all lines, from both stdout and stderr.
+	 *
+	 * @return The lines.  This list is unmodifiable.
+	 */
+	public List<String> getLines() {
+		return Collections.unmodifiableList(lines);
+	}
+
+
+	/**
+	 * Returns the process the output is from.
+	 *
+	 * @return The process.
+	 */
+	public Process getProcess() {
+		return p;
+	}
+
+
+	/**
+	 * Returns whether a line was written to stdout.
+	 *
+	 * @param index The index of the line.
+	 * @return <code>true</code> if it was written to stdout,
+	 *         <code>false</code> if it was written to stderr.
+	 */
+	public boolean isStdout(int index) {
+		return stdout.get(index);
+	}
+
+
+	/**
+	 * Returns the number of lines.
+	 *
+	 * @return The number of lines.
+	 */
+	public int size() {
+		return lines.size();
+	}
+
+
+}
\ No newline at end of file
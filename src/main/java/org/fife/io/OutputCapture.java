@@ -0,0 +1,492 @@
+/*
+ * 10/17/2026
+ *
+ * OutputCapture.java - Holds the stdout or stderr of a process.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+
+/**
+ * The stdout or stderr of a process run by a {@link ProcessRunner}.  How
+ * much output is kept is determined by the policy given to
+ * {@link ProcessRunner#setOutputCapture(OutputCapture.Policy)}:
+ *
+ * <ul>
+ *    <li>{@link #unbounded()} keeps all output in memory.  This is the
+ *        default.</li>
+ *    <li>{@link #lastLines(int)} and {@link #lastChars(int)} keep only the
+ *        end of the output, e.g. for showing the last errors of a
+ *        build.</li>
+ *    <li>{@link #spillToFile(int, File)} keeps output in memory until it
+ *        grows past a threshold, then moves it to a temporary file, so
+ *        that all of it is available without holding it in memory.</li>
+ * </ul>
+ *
+ * For example:
+ *
+ * <pre>
+ * ProcessRunner runner = new ProcessRunner(cmd);
+ * runner.setOutputCapture(OutputCapture.spillToFile(1024*1024, null));
+ * runner.run();
+ * OutputCapture out = runner.getStdoutCapture();
+ * Reader r = out.openReader(); // Streams the output back from disk
+ * ...
+ * r.close();
+ * out.dispose();
+ * </pre>
+ *
+ * A temporary file is deleted by {@link #dispose()}, or when the runner
+ * that created it runs its next process.  It is only held open while the
+ * process's output is being read.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public abstract class OutputCapture {
+
+	private long lineCount;
+	private long length;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * Adds output, counting it.
+	 *
+	 * @param text The output.
+	 * @param line Whether <code>text</code> is a complete line, not
+	 *        including its terminator.  If so, a newline is appended.
+	 */
+	final synchronized void append(String text, boolean line) {
+		if (line) {
+			text = text + '\n';
+			lineCount++;
+		}
+		length += text.length();
+		appendImpl(text);
+	}
+
+
+	/**
+	 * Adds output.
+	 *
+	 * @param text The output.
+	 */
+	abstract void appendImpl(String text);
+
+
+	/**
+	 * Adds a complete line of output.
+	 *
+	 * @param line The line, not including its terminator.
+	 */
+	void appendLine(String line) {
+		append(line, true);
+	}
+
+
+	/**
+	 * Adds text that is not a line of output, such as an error message.
+	 *
+	 * @param text The text.
+	 */
+	void appendText(String text) {
+		append(text, false);
+	}
+
+
+	/**
+	 * Releases any resources held by this capture, such as a temporary file.
+	 * Its output is no longer available afterward.
+	 */
+	public synchronized void dispose() {
+	}
+
+
+	/**
+	 * Called when the end of the output has been read, to release
+	 * resources only needed while adding to it, such as an open temporary
+	 * file.  No more output is added afterward.
+	 */
+	synchronized void finish() {
+	}
+
+
+	/**
+	 * Returns the temporary file output was moved to, if any.
+	 *
+	 * @return The file, or <code>null</code> if output is held in memory.
+	 */
+	public synchronized File getFile() {
+		return null;
+	}
+
+
+	/**
+	 * Returns the total number of characters of output, including any that
+	 * were not kept.
+	 *
+	 * @return The number of characters.
+	 */
+	public synchronized long getLength() {
+		return length;
+	}
+
+
+	/**
+	 * Returns the total number of lines of output, including any that were
+	 * not kept.
+	 *
+	 * @return The number of lines.
+	 */
+	public synchronized long getLineCount() {
+		return lineCount;
+	}
+
+
+	/**
+	 * Returns the output kept.  If output was moved to a temporary file, it
+	 * is read back into memory; use {@link #openReader()} to avoid this.
+	 *
+	 * @return The output.
+	 * @throws IllegalStateException If the temporary file could not be
+	 *         read.
+	 */
+	public abstract String getOutput();
+
+
+	/**
+	 * Returns whether some of the output was not kept.
+	 *
+	 * @return Whether output was discarded.
+	 */
+	public synchronized boolean isTruncated() {
+		return false;
+	}
+
+
+	/**
+	 * Returns a capture policy that keeps only the last characters of
+	 * output.  Whole lines are discarded from the start of the output to
+	 * stay within the limit, and the start of a single line longer than the
+	 * limit is cut off.
+	 *
+	 * @param maxChars The maximum number of characters to keep.
+	 * @return The policy.
+	 * @throws IllegalArgumentException If <code>maxChars</code> is not
+	 *         positive.
+	 */
+	public static Policy lastChars(final int maxChars) {
+		if (maxChars<=0) {
+			throw new IllegalArgumentException("maxChars must be > 0");
+		}
+		return new Policy() {
+			@Override
+			OutputCapture create() {
+				return new RingCapture(Integer.MAX_VALUE, maxChars);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a capture policy that keeps only the last lines of output.
+	 *
+	 * @param maxLines The maximum number of lines to keep.
+	 * @return The policy.
+	 * @throws IllegalArgumentException If <code>maxLines</code> is not
+	 *         positive.
+	 */
+	public static Policy lastLines(final int maxLines) {
+		if (maxLines<=0) {
+			throw new IllegalArgumentException("maxLines must be > 0");
+		}
+		return new Policy() {
+			@Override
+			OutputCapture create() {
+				return new RingCapture(maxLines, Integer.MAX_VALUE);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a reader over the output kept.  If output was moved to a
+	 * temporary file, it is streamed from that file.  The caller should
+	 * close the reader.
+	 *
+	 * @return The reader.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public Reader openReader() throws IOException {
+		return new StringReader(getOutput());
+	}
+
+
+	/**
+	 * Returns a capture policy that keeps output in memory until there are
+	 * more than <code>threshold</code> characters, then moves it to a
+	 * temporary file.  If the file cannot be created, the output is kept in
+	 * memory after all; if writing to it fails later, reading the output
+	 * throws the error.
+	 *
+	 * @param threshold The number of characters to keep in memory.
+	 * @param tempDir The directory to create temporary files in, or
+	 *        <code>null</code> for the system default.
+	 * @return The policy.
+	 * @throws IllegalArgumentException If <code>threshold</code> is
+	 *         negative.
+	 */
+	public static Policy spillToFile(final int threshold, final File tempDir) {
+		if (threshold<0) {
+			throw new IllegalArgumentException("threshold must be >= 0");
+		}
+		return new Policy() {
+			@Override
+			OutputCapture create() {
+				return new SpillCapture(threshold, tempDir);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a capture policy that keeps all output in memory.
+	 *
+	 * @return The policy.
+	 */
+	public static Policy unbounded() {
+		return new Policy() {
+			@Override
+			OutputCapture create() {
+				return new SpillCapture(Integer.MAX_VALUE, null);
+			}
+		};
+	}
+
+
+	/**
+	 * Determines how the output of a process is kept.  Policies are created
+	 * by the static methods of {@link OutputCapture}.
+	 */
+	public abstract static class Policy {
+
+		Policy() {
+		}
+
+		/**
+		 * Returns a new capture for one output stream of one process.
+		 *
+		 * @return The capture.
+		 */
+		abstract OutputCapture create();
+
+	}
+
+
+	/**
+	 * Keeps the last lines of output.
+	 */
+	private static final class RingCapture extends OutputCapture {
+
+		private int maxLines;
+		private int maxChars;
+		private Deque<String> lines;
+		private int chars;
+		private boolean truncated;
+
+		RingCapture(int maxLines, int maxChars) {
+			this.maxLines = maxLines;
+			this.maxChars = maxChars;
+			lines = new ArrayDeque<String>();
+		}
+
+		@Override
+		void appendImpl(String text) {
+			if (text.length()>maxChars) {
+				text = text.substring(text.length()-maxChars);
+				truncated = true;
+			}
+			lines.addLast(text);
+			chars += text.length();
+			while (lines.size()>maxLines || chars>maxChars) {
+				chars -= lines.removeFirst().length();
+				truncated = true;
+			}
+		}
+
+		@Override
+		public synchronized String getOutput() {
+			StringBuilder sb = new StringBuilder(chars);
+			for (String line : lines) {
+				sb.append(line);
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public synchronized boolean isTruncated() {
+			return truncated;
+		}
+
+	}
+
+
+	/**
+	 * Keeps output in memory up to a threshold, then in a temporary file.
+	 */
+	private static final class SpillCapture extends OutputCapture {
+
+		private int threshold;
+		private File tempDir;
+		private StringBuilder buffer;
+		private File file;
+		private Writer w;
+		private String error;	/* from writing the file, if any */
+		private boolean disposed;
+
+		SpillCapture(int threshold, File tempDir) {
+			this.threshold = threshold;
+			this.tempDir = tempDir;
+			buffer = new StringBuilder();
+		}
+
+		@Override
+		void appendImpl(String text) {
+			if (disposed) {
+				return;
+			}
+			if (file!=null) {
+				if (w!=null) {
+					try {
+						w.write(text);
+					} catch (IOException ioe) {
+						error = ioe.getMessage(); // Reported when read
+						closeWriter();
+					}
+				}
+				return;
+			}
+			buffer.append(text);
+			if (buffer.length()>threshold && error==null) {
+				spill();
+			}
+		}
+
+		private void closeWriter() {
+			if (w!=null) {
+				try {
+					w.close();
+				} catch (IOException ioe) {
+					error = ioe.getMessage();
+				}
+				w = null;
+			}
+		}
+
+		@Override
+		public synchronized void dispose() {
+			closeWriter();
+			if (file!=null) {
+				file.delete();
+				file = null;
+			}
+			buffer = new StringBuilder();
+			error = null;
+			disposed = true;
+		}
+
+		@Override
+		synchronized void finish() {
+			closeWriter();
+		}
+
+		private void flush() throws IOException {
+			if (w!=null) {
+				w.flush();
+			}
+			if (error!=null) {
+				throw new IOException(error);
+			}
+		}
+
+		@Override
+		public synchronized File getFile() {
+			return file;
+		}
+
+		@Override
+		public String getOutput() {
+			Reader r = null;
+			try {
+				r = openReader();
+				StringBuilder sb = new StringBuilder();
+				char[] buf = new char[8192];
+				int count;
+				while ((count=r.read(buf))!=-1) {
+					sb.append(buf, 0, count);
+				}
+				return sb.toString();
+			} catch (IOException ioe) {
+				throw new IllegalStateException(ioe);
+			} finally {
+				if (r!=null) {
+					try {
+						r.close();
+					} catch (IOException ioe) {
+						// Ignore
+					}
+				}
+			}
+		}
+
+		@Override
+		public synchronized Reader openReader() throws IOException {
+			if (file==null) {
+				return new StringReader(buffer.toString());
+			}
+			flush();
+			return new InputStreamReader(new FileInputStream(file), UTF8);
+		}
+
+		/**
+		 * Moves the output to a temporary file.  If the file cannot be
+		 * created, output stays in memory.
+		 */
+		private void spill() {
+			try {
+				file = File.createTempFile("output", ".txt", tempDir);
+				w = new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(file), UTF8));
+				w.write(buffer.toString());
+				buffer = new StringBuilder();
+			} catch (IOException ioe) {
+				error = ioe.getMessage();
+				closeWriter();
+				if (file!=null) {
+					file.delete();
+					file = null;
+				}
+			}
+		}
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,364 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessExecutor.java - Runs external processes concurrently, with
+ * limits and timeouts.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs {@link ProcessRunner}s concurrently, with a limit on how many
+ * processes run at once and an optional wall-clock timeout for each.  Each
+ * submission returns a future for its {@link ProcessResult}:
+ *
+ * <pre>
+ * ProcessExecutor executor = new ProcessExecutor(4, 100);
+ * List&lt;Future&lt;ProcessResult&gt;&gt; results = ...;
+ * for (File file : files) {
+ *    ProcessRunner runner = new ProcessRunner(lintCommand(file));
+ *    runner.setOutputPump(ProcessOutputPump.getShared());
+ *    results.add(executor.submit(runner, 30000));
+ * }
+ * for (Future&lt;ProcessResult&gt; result : results) {
+ *    ProcessResult r = result.get();
+ *    if (r.isTimedOut()) { ... }
+ * }
+ * executor.shutdown();
+ * </pre>
+ *
+ * A process that runs longer than its timeout is destroyed, along with any
+ * processes it started (on Java 9 and later), and its result is marked as
+ * timed out.  Cancelling a future with <code>cancel(true)</code> likewise
+ * destroys its running process tree; a process not yet started is simply
+ * never run.  Timeouts are measured from when a process starts, not from
+ * when it is submitted.<p>
+ *
+ * Each runner should be submitted only once at a time, since a
+ * <code>ProcessRunner</code> holds the output of the process it last ran.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public class ProcessExecutor {
+
+	private ThreadPoolExecutor executor;
+	private ScheduledThreadPoolExecutor timer;
+	private Semaphore queueSlots;		/* null if the queue is unbounded */
+	private int maxConcurrent;
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+
+	/**
+	 * Creates an executor with no limit on the number of processes waiting
+	 * to run.
+	 *
+	 * @param maxConcurrent The maximum number of processes to run at once.
+	 * @throws IllegalArgumentException If <code>maxConcurrent</code> is not
+	 *         positive.
+	 */
+	public ProcessExecutor(int maxConcurrent) {
+		this(maxConcurrent, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxConcurrent The maximum number of processes to run at once.
+	 * @param maxQueued The maximum number of processes waiting to run.  Once
+	 *        this many are waiting, {@link #submit(ProcessRunner, long)}
+	 *        blocks until one starts.
+	 * @throws IllegalArgumentException If either limit is not positive.
+	 */
+	public ProcessExecutor(int maxConcurrent, int maxQueued) {
+
+		if (maxConcurrent<=0 || maxQueued<=0) {
+			throw new IllegalArgumentException("Limits must be > 0");
+		}
+		this.maxConcurrent = maxConcurrent;
+		if (maxQueued<Integer.MAX_VALUE - maxConcurrent) {
+			queueSlots = new Semaphore(maxConcurrent + maxQueued);
+		}
+
+		final String prefix = "ProcessExecutor-" +
+								POOL_COUNT.incrementAndGet() + "-";
+		executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+				30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new DaemonThreadFactory(prefix));
+		executor.allowCoreThreadTimeOut(true);
+		timer = new ScheduledThreadPoolExecutor(1,
+				new DaemonThreadFactory(prefix + "timer-"));
+
+	}
+
+
+	/**
+	 * Blocks until all processes have completed after a shutdown, or the
+	 * timeout occurs, or the calling thread is interrupted.
+	 *
+	 * @param timeout The maximum time to wait.
+	 * @param unit The unit of <code>timeout</code>.
+	 * @return Whether all processes completed.
+	 * @throws InterruptedException If the calling thread is interrupted.
+	 * @see #shutdown()
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+									throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+
+	/**
+	 * Returns the number of processes running.
+	 *
+	 * @return The number of processes running.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+
+	/**
+	 * Returns the maximum number of processes run at once.
+	 *
+	 * @return The maximum number of processes.
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+
+	/**
+	 * Returns the number of processes waiting to run.
+	 *
+	 * @return The number of processes waiting.
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+
+	/**
+	 * Returns whether this executor has been shut down.
+	 *
+	 * @return Whether this executor has been shut down.
+	 */
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+
+	/**
+	 * Stops accepting processes.  Processes already submitted still run.
+	 *
+	 * @see #shutdownNow()
+	 * @see #awaitTermination(long, TimeUnit)
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		timer.shutdown();
+	}
+
+
+	/**
+	 * Stops accepting processes, destroys those that are running, and
+	 * cancels those that have not started.
+	 *
+	 * @see #shutdown()
+	 */
+	public void shutdownNow() {
+		for (Runnable r : executor.shutdownNow()) {
+			((Task)r).cancel(false);
+		}
+		timer.shutdownNow();
+	}
+
+
+	/**
+	 * Submits a process with no timeout.
+	 *
+	 * @param runner The process to run.
+	 * @return A future for the result.  Cancelling it with
+	 *         <code>cancel(true)</code> destroys the process.
+	 * @throws InterruptedException If the calling thread is interrupted
+	 *         while waiting for room in the queue.
+	 * @throws java.util.concurrent.RejectedExecutionException If this
+	 *         executor has been shut down.
+	 */
+	public Task submit(ProcessRunner runner) throws InterruptedException {
+		return submit(runner, 0);
+	}
+
+
+	/**
+	 * Submits a process.  If the queue is full, this blocks until there is
+	 * room.
+	 *
+	 * @param runner The process to run.
+	 * @param timeoutMillis The maximum time the process can run, in
+	 *        milliseconds, or <code>0</code> for no limit.
+	 * @return A future for the result.  Cancelling it with
+	 *         <code>cancel(true)</code> destroys the process.
+	 * @throws InterruptedException If the calling thread is interrupted
+	 *         while waiting for room in the queue.
+	 * @throws java.util.concurrent.RejectedExecutionException If this
+	 *         executor has been shut down.
+	 */
+	public Task submit(ProcessRunner runner, long timeoutMillis)
+								throws InterruptedException {
+		if (timeoutMillis<0) {
+			throw new IllegalArgumentException("timeoutMillis must be >= 0");
+		}
+		if (queueSlots!=null) {
+			queueSlots.acquire();
+		}
+		Task task = new Task(new RunCallable(runner, timeoutMillis));
+		try {
+			executor.execute(task);
+		} catch (RuntimeException re) {
+			if (queueSlots!=null) {
+				queueSlots.release();
+			}
+			throw re;
+		}
+		return task;
+	}
+
+
+	/**
+	 * Creates named daemon threads, so pending processes do not keep the
+	 * JVM alive.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private String prefix;
+		private AtomicInteger count;
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+			count = new AtomicInteger();
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+
+	/**
+	 * Runs a process, interrupting it if it runs too long.  Interrupting
+	 * a <code>ProcessRunner</code> destroys its process.
+	 */
+	private class RunCallable implements Callable<ProcessResult> {
+
+		private ProcessRunner runner;
+		private long timeoutMillis;
+		private Thread thread;		/* null when not running */
+		private boolean timedOut;
+
+		RunCallable(ProcessRunner runner, long timeoutMillis) {
+			this.runner = runner;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		@Override
+		public ProcessResult call() {
+
+			synchronized (this) {
+				thread = Thread.currentThread();
+			}
+			ScheduledFuture<?> timeout = null;
+			if (timeoutMillis>0) {
+				timeout = timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						timeOut();
+					}
+				}, timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+
+			long start = System.currentTimeMillis();
+			try {
+				runner.run();
+			} finally {
+				if (timeout!=null) {
+					// A cancelled task stays queued until its delay expires
+					// (Java 6 has no setRemoveOnCancelPolicy()), keeping
+					// this runner and its output reachable until then.
+					timeout.cancel(false);
+					timer.purge();
+				}
+				synchronized (this) {
+					thread = null;
+					if (timedOut) {
+						Thread.interrupted(); // Don't leak into the pool
+					}
+				}
+			}
+
+			return new ProcessResult(runner, timedOut,
+							System.currentTimeMillis() - start);
+
+		}
+
+		synchronized void timeOut() {
+			if (thread!=null) {
+				timedOut = true;
+				thread.interrupt();
+			}
+		}
+
+	}
+
+
+	/**
+	 * A future for the result of a process.
+	 */
+	public final class Task extends FutureTask<ProcessResult> {
+
+		private ProcessRunner runner;
+
+		Task(RunCallable callable) {
+			super(callable);
+			runner = callable.runner;
+		}
+
+		@Override
+		protected void done() {
+			if (queueSlots!=null) {
+				queueSlots.release();
+			}
+		}
+
+		/**
+		 * Returns the runner of the process.
+		 *
+		 * @return The runner.
+		 */
+		public ProcessRunner getRunner() {
+			return runner;
+		}
+
+	}
+
+
+}
\ No newline at end of file
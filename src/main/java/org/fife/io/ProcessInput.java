@@ -0,0 +1,179 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessInput.java - Input to write to the stdin of a process.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Input for a {@link ProcessRunner} to write to the stdin of its process,
+ * so that tools reading large input from stdin (formatters,
+ * <code>ctags -L -</code>, etc.) do not need a temporary file:
+ *
+ * <pre>
+ * ProcessRunner runner = new ProcessRunner(new String[] {
+ *       "ctags", "-L", "-", "-f", "-" });
+ * runner.setInput(ProcessInput.fromProducer(new ProcessInput.Producer() {
+ *    public void writeTo(OutputStream out) throws IOException {
+ *       for (File file : files) {
+ *          out.write((file.getPath() + "\n").getBytes("UTF-8"));
+ *       }
+ *    }
+ * }));
+ * runner.run();
+ * </pre>
+ *
+ * Input is written on a separate thread while the process's output is
+ * read, and the write blocks whenever the process is not keeping up, so
+ * input is never buffered in memory beyond a small fixed amount.  When the
+ * input is exhausted, stdin is closed so the process sees the end of its
+ * input.  If the process exits without reading all of its input, the rest
+ * is discarded, as in a shell.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ * @see ProcessRunner#setInput(ProcessInput)
+ */
+public abstract class ProcessInput {
+
+	private static final int BUFFER_SIZE	= 64 * 1024;
+
+
+	/**
+	 * Constructor.
+	 */
+	ProcessInput() {
+	}
+
+
+	/**
+	 * Copies a stream to process input, closing the stream afterward.
+	 *
+	 * @param in The stream to copy.
+	 * @param out The process input.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void copy(InputStream in, OutputStream out)
+							throws IOException {
+		try {
+			byte[] buf = new byte[BUFFER_SIZE];
+			int count;
+			while ((count=in.read(buf))!=-1) {
+				out.write(buf, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Returns input consisting of bytes in memory.  This input can be used
+	 * any number of times.
+	 *
+	 * @param bytes The bytes to write.  These are not copied.
+	 * @return The input.
+	 */
+	public static ProcessInput fromBytes(final byte[] bytes) {
+		return new ProcessInput() {
+			@Override
+			void writeTo(OutputStream out) throws IOException {
+				copy(new ByteArrayInputStream(bytes), out);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns input read from a file.  The file is opened when a process
+	 * starts, so this input can be used any number of times.
+	 *
+	 * @param file The file.
+	 * @return The input.
+	 */
+	public static ProcessInput fromFile(final File file) {
+		return new ProcessInput() {
+			@Override
+			void writeTo(OutputStream out) throws IOException {
+				copy(new FileInputStream(file), out);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns input generated by a callback as the process runs.  The
+	 * producer is called once per process run.
+	 *
+	 * @param producer The producer.
+	 * @return The input.
+	 */
+	public static ProcessInput fromProducer(final Producer producer) {
+		return new ProcessInput() {
+			@Override
+			void writeTo(OutputStream out) throws IOException {
+				producer.writeTo(out);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns input read from a stream.  The stream is read to its end and
+	 * then closed, so this input can only be used once.  The stream should
+	 * not block indefinitely.
+	 *
+	 * @param in The stream.
+	 * @return The input.
+	 */
+	public static ProcessInput fromStream(final InputStream in) {
+		return new ProcessInput() {
+			@Override
+			void writeTo(OutputStream out) throws IOException {
+				copy(in, out);
+			}
+		};
+	}
+
+
+	/**
+	 * Writes this input to a process.
+	 *
+	 * @param out The stdin of the process.  The caller closes this.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	abstract void writeTo(OutputStream out) throws IOException;
+
+
+	/**
+	 * Generates input for a process.
+	 *
+	 * @see ProcessInput#fromProducer(Producer)
+	 */
+	public interface Producer {
+
+		/**
+		 * Writes input for a process.  Writes block while the process is
+		 * not reading its input.  Do not close the stream.
+		 *
+		 * @param out The stdin of the process.
+		 * @throws IOException If an I/O error occurs.  If the process exits
+		 *         before reading all of its input, writing throws an
+		 *         exception, which should be propagated.
+		 */
+		void writeTo(OutputStream out) throws IOException;
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,532 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessOutputPump.java - Reads the stdout and stderr of many processes
+ * on a few shared threads.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads the output streams of many processes using a small, fixed set of
+ * threads, rather than two new threads per process.  Give a pump to a
+ * <code>ProcessRunner</code> via
+ * {@link ProcessRunner#setOutputPump(ProcessOutputPump)} when running
+ * many short processes, where creating and joining reader threads would
+ * otherwise dominate:
+ *
+ * <pre>
+ * ProcessOutputPump pump = ProcessOutputPump.getShared();
+ * for (String[] cmd : commands) {
+ *    ProcessRunner runner = new ProcessRunner(cmd);
+ *    runner.setOutputPump(pump);
+ *    runner.run();
+ * }
+ * </pre>
+ *
+ * Process streams cannot be selected on, so each pump thread polls the
+ * streams assigned to it, reading whatever is available and backing off
+ * briefly when none of them has output.  Once a process has exited, its
+ * streams are read to the end.  On JVMs with virtual threads (Java 21+),
+ * {@link #createVirtual()} instead reads each stream on its own virtual
+ * thread, which needs no polling.<p>
+ *
+ * Listeners are notified on the pump's threads, so a slow listener delays
+ * the output of other processes read by the same thread.  A process that
+ * exits while a child it spawned still holds its output open will block a
+ * pump thread until the child exits, as it would block a dedicated reader
+ * thread.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public class ProcessOutputPump {
+
+	private PumpThread[] threads;	/* null if using virtual threads */
+	private volatile boolean shutdown;
+
+	private static ProcessOutputPump shared;
+
+	/**
+	 * <code>Thread.startVirtualThread(Runnable)</code>, or <code>null</code>
+	 * if this JVM does not support virtual threads.
+	 */
+	private static final Method START_VIRTUAL_THREAD = getStartVirtualThread();
+
+	private static final int BUFFER_SIZE		= 8192;
+	private static final long MIN_IDLE_SLEEP	= 1;
+	private static final long MAX_IDLE_SLEEP	= 16;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadCount The number of daemon threads to read output with.
+	 * @throws IllegalArgumentException If <code>threadCount</code> is less
+	 *         than <code>1</code>.
+	 * @see #getShared()
+	 */
+	public ProcessOutputPump(int threadCount) {
+		if (threadCount<1) {
+			throw new IllegalArgumentException("threadCount must be > 0");
+		}
+		threads = new PumpThread[threadCount];
+		for (int i=0; i<threadCount; i++) {
+			threads[i] = new PumpThread("ProcessOutputPump-" + i);
+			threads[i].start();
+		}
+	}
+
+
+	/**
+	 * Constructor for a pump using virtual threads.
+	 */
+	private ProcessOutputPump() {
+	}
+
+
+	/**
+	 * Starts reading an output stream of a process.
+	 *
+	 * @param p The process.
+	 * @param in The stream (stdout or stderr) to read.
+	 * @param listener The listener to notify of each line read, or
+	 *        <code>null</code> for none.
+	 * @param isStdout Whether <code>in</code> is stdout.
+	 * @param chunkListener If non-<code>null</code>, the raw output is
+	 *        passed to this listener instead of being split into lines for
+	 *        <code>listener</code> and <code>capture</code>.
+	 * @param capture Receives the output read.
+	 * @return The stream being read.
+	 */
+	Stream add(Process p, InputStream in, ProcessRunnerOutputListener listener,
+				boolean isStdout, ProcessRunnerChunkListener chunkListener,
+				OutputCapture capture) {
+		if (shutdown) {
+			throw new IllegalStateException("Pump has been shut down");
+		}
+		final Stream stream = new Stream(p, in, listener, isStdout,
+										chunkListener, capture);
+		if (threads==null) {
+			startVirtualThread(new Runnable() {
+				@Override
+				public void run() {
+					stream.readFully();
+				}
+			});
+		}
+		else {
+			PumpThread thread = threads[0];
+			for (int i=1; i<threads.length; i++) {
+				if (threads[i].size()<thread.size()) {
+					thread = threads[i];
+				}
+			}
+			stream.thread = thread;
+			thread.add(stream);
+		}
+		return stream;
+	}
+
+
+	/**
+	 * Returns a pump that reads each stream on its own virtual thread.
+	 *
+	 * @return The pump.
+	 * @throws UnsupportedOperationException If this JVM does not support
+	 *         virtual threads.
+	 * @see #isVirtualThreadSupported()
+	 */
+	public static ProcessOutputPump createVirtual() {
+		if (!isVirtualThreadSupported()) {
+			throw new UnsupportedOperationException(
+							"Virtual threads are not supported");
+		}
+		return new ProcessOutputPump();
+	}
+
+
+	/**
+	 * Runs a blocking task, such as writing a process's stdin, on a virtual
+	 * thread if this pump uses them, and otherwise on a new daemon thread.
+	 *
+	 * @param r The task.
+	 */
+	void execute(Runnable r) {
+		if (threads==null) {
+			startVirtualThread(r);
+		}
+		else {
+			Thread t = new Thread(r, "ProcessOutputPump-task");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+
+	/**
+	 * Returns a pump shared by the whole application.  This uses virtual
+	 * threads if they are supported, and otherwise up to two polling
+	 * threads.
+	 *
+	 * @return The shared pump.
+	 */
+	public static synchronized ProcessOutputPump getShared() {
+		if (shared==null) {
+			if (isVirtualThreadSupported()) {
+				shared = createVirtual();
+			}
+			else {
+				int count = Math.min(2,
+						Runtime.getRuntime().availableProcessors());
+				shared = new ProcessOutputPump(count);
+			}
+		}
+		return shared;
+	}
+
+
+	private static Method getStartVirtualThread() {
+		try {
+			return Thread.class.getMethod("startVirtualThread",
+										Runnable.class);
+		} catch (NoSuchMethodException nsme) {
+			return null; // Java 20 or earlier
+		}
+	}
+
+
+	/**
+	 * Returns whether this JVM supports virtual threads.
+	 *
+	 * @return Whether virtual threads are supported.
+	 * @see #createVirtual()
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return START_VIRTUAL_THREAD!=null;
+	}
+
+
+	/**
+	 * Stops this pump's threads.  Streams still being read are closed, and
+	 * end with an error message in their output.  The shared pump cannot
+	 * be shut down.
+	 *
+	 * @throws IllegalStateException If this is the shared pump.
+	 */
+	public void shutdown() {
+		synchronized (ProcessOutputPump.class) {
+			if (this==shared) {
+				throw new IllegalStateException(
+								"The shared pump cannot be shut down");
+			}
+		}
+		shutdown = true;
+		if (threads!=null) {
+			for (PumpThread thread : threads) {
+				thread.interrupt();
+			}
+		}
+	}
+
+
+	private static void startVirtualThread(Runnable r) {
+		try {
+			START_VIRTUAL_THREAD.invoke(null, r);
+		} catch (Exception e) { // Never happens
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * A thread that polls several streams.
+	 */
+	private class PumpThread extends Thread {
+
+		private List<Stream> streams;
+		private boolean woken;
+
+		PumpThread(String name) {
+			super(name);
+			setDaemon(true);
+			streams = new ArrayList<Stream>();
+		}
+
+		synchronized void add(Stream stream) {
+			streams.add(stream);
+			wake();
+		}
+
+		@Override
+		public void run() {
+
+			byte[] buf = new byte[BUFFER_SIZE];
+			long idleSleep = MIN_IDLE_SLEEP;
+			List<Stream> current = new ArrayList<Stream>();
+
+			try {
+				while (!shutdown) {
+
+					synchronized (this) {
+						while (streams.isEmpty() && !shutdown) {
+							wait();
+						}
+						current.clear();
+						current.addAll(streams);
+					}
+
+					boolean progress = false;
+					for (Stream stream : current) {
+						progress |= stream.poll(buf);
+						if (stream.isDone()) {
+							synchronized (this) {
+								streams.remove(stream);
+							}
+						}
+					}
+
+					if (progress) {
+						idleSleep = MIN_IDLE_SLEEP;
+					}
+					else {
+						synchronized (this) {
+							if (!woken) {
+								wait(idleSleep);
+							}
+							idleSleep = woken ? MIN_IDLE_SLEEP :
+									Math.min(idleSleep*2, MAX_IDLE_SLEEP);
+							woken = false;
+						}
+					}
+
+				}
+			} catch (InterruptedException ie) {
+				// Shut down
+			}
+
+			synchronized (this) {
+				for (Stream stream : streams) {
+					stream.close("Output pump was shut down");
+				}
+				streams.clear();
+			}
+
+		}
+
+		synchronized int size() {
+			return streams.size();
+		}
+
+		/**
+		 * Polls the streams again immediately, e.g. because one was added
+		 * or a process has exited.
+		 */
+		synchronized void wake() {
+			woken = true;
+			notify();
+		}
+
+	}
+
+
+	/**
+	 * An output stream of a process being read.  Unless a chunk listener is
+	 * given, bytes are decoded with the platform charset and split into
+	 * lines as <code>BufferedReader.readLine()</code> does.
+	 */
+	static final class Stream {
+
+		private Process p;
+		private InputStream in;
+		private boolean isStdout;
+		private ProcessRunnerChunkListener chunkListener;
+		private LineDecoder decoder;	/* null if delivering chunks */
+		private OutputCapture capture;
+		private boolean done;
+		private PumpThread thread;		/* null if using a virtual thread */
+
+		Stream(final Process p, InputStream in,
+				final ProcessRunnerOutputListener listener,
+				final boolean isStdout,
+				ProcessRunnerChunkListener chunkListener,
+				final OutputCapture capture) {
+			this.p = p;
+			this.in = in;
+			this.isStdout = isStdout;
+			this.chunkListener = chunkListener;
+			this.capture = capture;
+			if (chunkListener==null) {
+				decoder = new LineDecoder(null) {
+					@Override
+					void lineRead(String line) {
+						capture.appendLine(line);
+						if (listener!=null) {
+							listener.outputWritten(p, line, isStdout);
+						}
+					}
+				};
+			}
+		}
+
+		/**
+		 * Waits for the stream to be read to the end.
+		 *
+		 * @throws InterruptedException If the calling thread is
+		 *         interrupted.
+		 */
+		void await() throws InterruptedException {
+			if (thread!=null) {
+				thread.wake(); // The process has likely exited
+			}
+			synchronized (this) {
+				while (!done) {
+					wait();
+				}
+			}
+		}
+
+		/**
+		 * Stops reading this stream, by closing it.  The thread reading it
+		 * will then finish with an error.
+		 */
+		void cancel() {
+			try {
+				in.close();
+			} catch (IOException ioe) {
+				// Ignore
+			}
+		}
+
+		/**
+		 * Stops reading this stream, on the thread reading it.
+		 *
+		 * @param error A message to append to the output.
+		 */
+		void close(String error) {
+			cancel();
+			finish(error);
+		}
+
+		/**
+		 * Delivers the last, unterminated line, if any, or tells the chunk
+		 * listener the stream has ended, and marks this stream as done.
+		 */
+		private void finish(String error) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+			}
+			if (decoder!=null) {
+				decoder.finish();
+			}
+			else {
+				chunkListener.streamClosed(p, isStdout);
+			}
+			if (error!=null) {
+				capture.appendText(error);
+			}
+			capture.finish();
+			synchronized (this) {
+				done = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Returns the output read from this stream.
+		 *
+		 * @return The output.
+		 */
+		OutputCapture getCapture() {
+			return capture;
+		}
+
+		private static boolean hasExited(Process p) {
+			try {
+				p.exitValue();
+				return true;
+			} catch (IllegalThreadStateException itse) {
+				return false;
+			}
+		}
+
+		synchronized boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Reads whatever output is available without blocking, or, if the
+		 * process has exited, reads the stream to the end.
+		 *
+		 * @param buf A buffer to read with.
+		 * @return Whether any progress was made.
+		 */
+		boolean poll(byte[] buf) {
+			try {
+				int avail = in.available();
+				if (avail>0) {
+					int count = in.read(buf, 0, Math.min(avail, buf.length));
+					if (count==-1) {
+						finish(null);
+					}
+					else {
+						write(buf, count);
+					}
+					return true;
+				}
+				if (hasExited(p)) {
+					int count;
+					while ((count=in.read(buf))!=-1) {
+						write(buf, count);
+					}
+					finish(null);
+					return true;
+				}
+			} catch (IOException ioe) {
+				finish("IOException occurred: " + ioe.getMessage());
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the stream to the end, blocking as necessary.
+		 */
+		void readFully() {
+			byte[] buf = new byte[BUFFER_SIZE];
+			try {
+				int count;
+				while ((count=in.read(buf))!=-1) {
+					write(buf, count);
+				}
+				finish(null);
+			} catch (IOException ioe) {
+				finish("IOException occurred: " + ioe.getMessage());
+			}
+		}
+
+		private void write(byte[] buf, int len) {
+			ByteBuffer chunk = ByteBuffer.wrap(buf, 0, len);
+			if (decoder!=null) {
+				decoder.write(chunk);
+			}
+			else {
+				chunkListener.chunkRead(p, chunk, isStdout);
+			}
+		}
+
+	}
+
+
+}
\ No newline at end of file
@@ -0,0 +1,462 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessPipeline.java - Runs external processes with each one's stdout
+ * connected to the next one's stdin.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Runs a pipeline of external processes, like <code>ctags | sort</code>
+ * in a shell, but without needing a shell.  Each process's stdout is
+ * connected directly to the next one's stdin, so intermediate output is
+ * never held in memory.  The pipeline is a <code>ProcessRunner</code>:
+ * the output of the last process is read as configured (captured, passed
+ * to listeners, pumped, etc.), as if it were a single process:
+ *
+ * <pre>
+ * ProcessPipeline pipeline = new ProcessPipeline.Builder().
+ *       add("ctags", "-f", "-", "-R", "src").
+ *       add("sort").
+ *       add("grep", "-v", "^!_").
+ *       build();
+ * pipeline.setOutputCapture(OutputCapture.spillToFile(1024*1024, null));
+ * pipeline.run();
+ * </pre>
+ *
+ * A thread per connection copies data through a small, fixed-size buffer,
+ * so a process that writes faster than the next one reads simply blocks.
+ * If a process exits early (e.g. <code>head</code>), the connection to it
+ * is closed, so the process before it gets a broken pipe, as in a shell.
+ * (<code>ProcessBuilder.startPipeline()</code> in Java 9+ is not used: the
+ * JVM keeps the read ends of its pipes open, so early exits are never
+ * propagated, and the file descriptors leak.)<p>
+ *
+ * The stderr of all processes is merged, a line at a time, into the
+ * pipeline's stderr.  {@link #getReturnCode()} returns the return code of
+ * the last process, as a shell does; {@link #getReturnCodes()} returns
+ * those of all processes.  All processes run in the same directory and
+ * environment.  {@link #setCommandLine(String[])} sets the command line of
+ * the first process only.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public class ProcessPipeline extends ProcessRunner {
+
+	/**
+	 * The command lines of all processes but the first.
+	 */
+	private List<String[]> stages;
+	private PipelineProcess process;		/* the last one run */
+
+	private static final int BUFFER_SIZE	= 64 * 1024;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stages The command lines of the processes, in order.
+	 * @throws IllegalArgumentException If there are no stages, or any
+	 *         stage has no command line arguments.
+	 * @see Builder
+	 */
+	ProcessPipeline(List<String[]> stages) {
+		super(stages.get(0));
+		this.stages = new ArrayList<String[]>();
+		for (int i=1; i<stages.size(); i++) {
+			String[] commandLine = stages.get(i);
+			if (commandLine.length==0) {
+				throw new IllegalArgumentException(
+							"Must have at least 1 command line argument");
+			}
+			this.stages.add(commandLine.clone());
+		}
+	}
+
+
+	private static void close(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException ioe) {
+			// Ignore
+		}
+	}
+
+
+	/**
+	 * Creates a process builder for one stage.
+	 */
+	private ProcessBuilder createBuilder(String[] commandLine,
+										String[] envp) {
+		ProcessBuilder pb = new ProcessBuilder(commandLine);
+		pb.directory(getDirectory());
+		Map<String, String> env = pb.environment();
+		env.clear();
+		for (String var : envp) {
+			int equals = var.indexOf('=', 1);
+			env.put(var.substring(0, equals), var.substring(equals+1));
+		}
+		return pb;
+	}
+
+
+	@Override
+	Process exec(String[] envp) throws IOException {
+
+		List<ProcessBuilder> builders = new ArrayList<ProcessBuilder>();
+		builders.add(createBuilder(getCommandLine(), envp));
+		for (String[] commandLine : stages) {
+			builders.add(createBuilder(commandLine, envp));
+		}
+
+		Process[] procs = new Process[builders.size()];
+		try {
+			for (int i=0; i<procs.length; i++) {
+				procs[i] = builders.get(i).start();
+			}
+		} catch (IOException ioe) {
+			for (Process proc : procs) {
+				if (proc!=null) {
+					destroyTree(proc);
+				}
+			}
+			throw ioe;
+		}
+
+		process = new PipelineProcess(procs);
+		return process;
+
+	}
+
+
+	/**
+	 * Returns the command line of this pipeline as a string.  Parameters are
+	 * wrapped in quotes, and processes are separated by <code>"|"</code>.
+	 *
+	 * @return The command line.
+	 */
+	@Override
+	public String getCommandLineString() {
+		StringBuilder sb = new StringBuilder(super.getCommandLineString());
+		for (String[] commandLine : stages) {
+			sb.append(" |");
+			for (String arg : commandLine) {
+				sb.append(" \"").append(arg).append('\"');
+			}
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Returns the return codes of the processes in the pipeline last run.
+	 *
+	 * @return The return codes, in order.  A process that did not complete
+	 *         has a return code of {@link Integer#MIN_VALUE}.  If the
+	 *         pipeline has not been run, this is <code>null</code>.
+	 * @see #getReturnCode()
+	 */
+	public int[] getReturnCodes() {
+		PipelineProcess process = this.process;
+		return process==null ? null : process.getReturnCodes();
+	}
+
+
+	/**
+	 * Returns the number of processes in the pipeline.
+	 *
+	 * @return The number of processes.
+	 */
+	public int getStageCount() {
+		return stages.size() + 1;
+	}
+
+
+	/**
+	 * Builds a pipeline.
+	 */
+	public static class Builder {
+
+		private List<String[]> stages;
+
+		/**
+		 * Constructor.
+		 */
+		public Builder() {
+			stages = new ArrayList<String[]>();
+		}
+
+		/**
+		 * Adds a process to the end of the pipeline.
+		 *
+		 * @param commandLine The command line to run, with each item being
+		 *        a single parameter.
+		 * @return This builder.
+		 * @throws IllegalArgumentException If <code>commandLine</code> has
+		 *         length <code>0</code>.
+		 */
+		public Builder add(String... commandLine) {
+			if (commandLine.length==0) {
+				throw new IllegalArgumentException(
+							"Must have at least 1 command line argument");
+			}
+			stages.add(commandLine.clone());
+			return this;
+		}
+
+		/**
+		 * Returns a pipeline of the processes added.
+		 *
+		 * @return The pipeline.
+		 * @throws IllegalStateException If no processes were added.
+		 */
+		public ProcessPipeline build() {
+			if (stages.isEmpty()) {
+				throw new IllegalStateException("No processes were added");
+			}
+			return new ProcessPipeline(stages);
+		}
+
+	}
+
+
+	/**
+	 * Copies the stdout of one process to the stdin of the next.  If the
+	 * next process exits early, the rest of the output is discarded.
+	 */
+	private static class Connector extends Thread {
+
+		private InputStream in;
+		private OutputStream out;
+
+		Connector(InputStream in, OutputStream out) {
+			super("ProcessPipeline-connector");
+			setDaemon(true);
+			this.in = in;
+			this.out = out;
+		}
+
+		@Override
+		public void run() {
+			byte[] buf = new byte[BUFFER_SIZE];
+			try {
+				int count;
+				while ((count=in.read(buf))!=-1) {
+					out.write(buf, 0, count);
+					out.flush();
+				}
+			} catch (IOException ioe) {
+				// Either process was destroyed, or the next one exited
+			} finally {
+				close(out);
+				close(in);
+			}
+		}
+
+	}
+
+
+	/**
+	 * The stderr of several processes, merged a line at a time.  Each
+	 * process's stderr is read by a thread that adds complete lines to a
+	 * bounded buffer.
+	 */
+	private static class MergedErrorStream extends InputStream {
+
+		private byte[] buf;
+		private int start;
+		private int count;
+		private int openSources;
+
+		MergedErrorStream(Process[] procs) {
+			buf = new byte[BUFFER_SIZE];
+			openSources = procs.length;
+			for (final Process proc : procs) {
+				Thread t = new Thread("ProcessPipeline-stderr") {
+					@Override
+					public void run() {
+						readLines(proc.getErrorStream());
+					}
+				};
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+
+		@Override
+		public synchronized int available() {
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1)==-1 ? -1 : (b[0]&0xff);
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len)
+									throws IOException {
+			if (len==0) {
+				return 0;
+			}
+			try {
+				while (count==0) {
+					if (openSources==0) {
+						return -1;
+					}
+					wait();
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			int n = Math.min(len, count);
+			for (int i=0; i<n; i++) {
+				b[off+i] = buf[(start+i)%buf.length];
+			}
+			start = (start+n) % buf.length;
+			count -= n;
+			notifyAll();
+			return n;
+		}
+
+		/**
+		 * Copies a process's stderr into this stream, a line at a time, so
+		 * lines from different processes are not interleaved.
+		 */
+		private void readLines(InputStream in) {
+			byte[] line = new byte[BUFFER_SIZE];
+			int len = 0;
+			try {
+				int b;
+				in = new BufferedInputStream(in);
+				while ((b=in.read())!=-1) {
+					line[len++] = (byte)b;
+					if (b=='\n' || len==line.length) {
+						write(line, len);
+						len = 0;
+					}
+				}
+			} catch (IOException ioe) {
+				// Process was destroyed
+			} catch (InterruptedException ie) {
+				// Never happens
+			} finally {
+				try {
+					if (len>0) {
+						write(line, len);
+					}
+				} catch (InterruptedException ie) {
+					// Never happens
+				}
+				ProcessPipeline.close(in);
+				synchronized (this) {
+					openSources--;
+					notifyAll();
+				}
+			}
+		}
+
+		private synchronized void write(byte[] b, int len)
+								throws InterruptedException {
+			while (buf.length-count<len) {
+				wait();
+			}
+			for (int i=0; i<len; i++) {
+				buf[(start+count+i)%buf.length] = b[i];
+			}
+			count += len;
+			notifyAll();
+		}
+
+	}
+
+
+	/**
+	 * The processes of a pipeline, presented as a single process.  Its
+	 * stdin is that of the first process, its stdout is that of the last,
+	 * and its stderr is that of all of them.
+	 */
+	private static class PipelineProcess extends Process {
+
+		private Process[] procs;
+		private int[] rcs;
+		private InputStream err;
+
+		PipelineProcess(Process[] procs) {
+			this.procs = procs;
+			rcs = new int[procs.length];
+			Arrays.fill(rcs, Integer.MIN_VALUE);
+			for (int i=0; i<procs.length-1; i++) {
+				new Connector(procs[i].getInputStream(),
+							procs[i+1].getOutputStream()).start();
+			}
+			err = procs.length==1 ? procs[0].getErrorStream() :
+						new MergedErrorStream(procs);
+		}
+
+		@Override
+		public void destroy() {
+			for (Process proc : procs) {
+				destroyTree(proc);
+			}
+		}
+
+		@Override
+		public synchronized int exitValue() {
+			for (int i=0; i<procs.length; i++) {
+				rcs[i] = procs[i].exitValue();
+			}
+			return rcs[rcs.length-1];
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			return err;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return procs[procs.length-1].getInputStream();
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return procs[0].getOutputStream();
+		}
+
+		synchronized int[] getReturnCodes() {
+			return rcs.clone();
+		}
+
+		@Override
+		public int waitFor() throws InterruptedException {
+			for (int i=0; i<procs.length; i++) {
+				int rc = procs[i].waitFor();
+				synchronized (this) {
+					rcs[i] = rc;
+				}
+			}
+			return rcs[rcs.length-1];
+		}
+
+	}
+
+
+}
\ No newline at end of file
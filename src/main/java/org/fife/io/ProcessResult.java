@@ -0,0 +1,124 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessResult.java - The outcome of a process run by a ProcessExecutor.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+
+/**
+ * The outcome of a process run by a {@link ProcessExecutor}.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public final class ProcessResult {
+
+	private ProcessRunner runner;
+	private int rc;
+	private Throwable error;
+	private boolean timedOut;
+	private long elapsedMillis;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param runner The runner that ran the process.
+	 * @param timedOut Whether the process was destroyed because it ran too
+	 *        long.
+	 * @param elapsedMillis How long the process ran.
+	 */
+	ProcessResult(ProcessRunner runner, boolean timedOut,
+				long elapsedMillis) {
+		this.runner = runner;
+		this.rc = runner.getReturnCode();
+		this.error = runner.getLastError();
+		this.timedOut = timedOut;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+
+	/**
+	 * Returns how long the process ran.
+	 *
+	 * @return The elapsed time, in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+
+	/**
+	 * Returns the error the process ended with, if any.
+	 *
+	 * @return The error, or <code>null</code> if the process ran to
+	 *         completion.  If the process timed out, this is an
+	 *         <code>InterruptedException</code>.
+	 * @see #isTimedOut()
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+
+	/**
+	 * Returns the return code of the process.
+	 *
+	 * @return The return code, or {@link Integer#MIN_VALUE} if the process
+	 *         did not complete.
+	 */
+	public int getReturnCode() {
+		return rc;
+	}
+
+
+	/**
+	 * Returns the runner that ran the process, e.g. for its output.
+	 *
+	 * @return The runner.
+	 * @see ProcessRunner#getStdout()
+	 * @see ProcessRunner#getStderr()
+	 */
+	public ProcessRunner getRunner() {
+		return runner;
+	}
+
+
+	/**
+	 * Returns whether the process ran to completion and returned
+	 * <code>0</code>.
+	 *
+	 * @return Whether the process succeeded.
+	 */
+	public boolean isSuccess() {
+		return error==null && rc==0;
+	}
+
+
+	/**
+	 * Returns whether the process was destroyed because it ran longer than
+	 * its timeout.
+	 *
+	 * @return Whether the process timed out.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+
+	@Override
+	public String toString() {
+		return "[ProcessResult: " +
+			"command=" + runner.getCommandLineString() +
+			", rc=" + rc +
+			", timedOut=" + timedOut +
+			", elapsed=" + elapsedMillis + "ms" +
+			(error!=null ? ", error=" + error : "") +
+			"]";
+	}
+
+
+}
\ No newline at end of file
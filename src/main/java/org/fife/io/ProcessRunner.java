@@ -11,9 +11,13 @@ package org.fife.io;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -33,12 +37,43 @@ public class ProcessRunner implements Runnable {
 	private String[] commandLine;
 	private Map<String, String> envVars;
 	private boolean appendEnv;
-	private String stdout;
-	private String stderr;
+	private OutputCapture stdout;
+	private OutputCapture stderr;
+	private OutputCapture.Policy capturePolicy;
 	private ProcessRunnerOutputListener outputListener;
+	private ProcessRunnerChunkListener chunkListener;
+	private ProcessOutputPump outputPump;
+	private ProcessInput input;
 	private int rc;
 	private Throwable lastError;
 
+	/**
+	 * <code>Process.descendants()</code>, <code>Stream.toArray()</code> and
+	 * <code>ProcessHandle.destroyForcibly()</code>, or <code>null</code>
+	 * before Java 9.
+	 */
+	private static final Method DESCENDANTS;
+	private static final Method TO_ARRAY;
+	private static final Method DESTROY_FORCIBLY;
+
+	static {
+		Method descendants = null;
+		Method toArray = null;
+		Method destroyForcibly = null;
+		try {
+			descendants = Process.class.getMethod("descendants");
+			toArray = Class.forName("java.util.stream.Stream").
+										getMethod("toArray");
+			destroyForcibly = Class.forName("java.lang.ProcessHandle").
+										getMethod("destroyForcibly");
+		} catch (Exception e) { // Java 8 or earlier
+			descendants = null;
+		}
+		DESCENDANTS = descendants;
+		TO_ARRAY = toArray;
+		DESTROY_FORCIBLY = destroyForcibly;
+	}
+
 
 	/**
 	 * Constructor.
@@ -53,19 +88,41 @@ public class ProcessRunner implements Runnable {
 	public ProcessRunner(String[] commandLine) {
 		setCommandLine(commandLine);
 		appendEnv = true;
+		capturePolicy = OutputCapture.unbounded();
 	}
 
 
 	/**
-	 * Clears the <code>stdout</code> and <code>stderr</code> variables.
+	 * Clears the <code>stdout</code> and <code>stderr</code> variables,
+	 * deleting any temporary files they were written to.
 	 */
 	private void clearLastOutput() {
+		if (stdout!=null) {
+			stdout.dispose();
+		}
+		if (stderr!=null) {
+			stderr.dispose();
+		}
 		stdout = stderr = null;
 		rc = Integer.MIN_VALUE;
 		lastError = null;
 	}
 
 
+	/**
+	 * Closes a stream, ignoring any error.
+	 *
+	 * @param in The stream to close.
+	 */
+	private static void close(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException ioe) {
+			// Ignore
+		}
+	}
+
+
 	/**
 	 * Creates an array of "name=value" elements, suitable for
 	 * <code>Runtime.getRuntime().exec()</code>.
@@ -99,6 +156,49 @@ public class ProcessRunner implements Runnable {
 	}
 
 
+	/**
+	 * Destroys a process and, on Java 9 and later, all of its descendants.
+	 * Otherwise, e.g. a compiler launched by a build script could keep
+	 * running, and holding our end of its output open, after the script
+	 * itself is destroyed.
+	 *
+	 * @param proc The process to destroy.
+	 */
+	static void destroyTree(Process proc) {
+		Object[] descendants = null;
+		if (DESCENDANTS!=null) {
+			try {
+				descendants = (Object[])TO_ARRAY.invoke(
+										DESCENDANTS.invoke(proc));
+			} catch (Exception e) {
+				// Not a native process, e.g. a pipeline; destroy() handles it
+			}
+		}
+		proc.destroy();
+		if (descendants!=null) {
+			for (Object handle : descendants) {
+				try {
+					DESTROY_FORCIBLY.invoke(handle);
+				} catch (Exception e) { // Never happens
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Starts the process.
+	 *
+	 * @param envp The environment variables, as "name=value" elements.
+	 * @return The process.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	Process exec(String[] envp) throws IOException {
+		return Runtime.getRuntime().exec(commandLine, envp, dir);
+	}
+
+
 	/**
 	 * Returns whether any extra environment variables defined for this process
 	 * to run with should be appended to the parent process's environment (as
@@ -113,6 +213,28 @@ public class ProcessRunner implements Runnable {
 	}
 
 
+	/**
+	 * Returns the listener receiving the raw output of processes, if any.
+	 *
+	 * @return The chunk listener, or <code>null</code> if output is split
+	 *         into lines.
+	 * @see #setChunkListener(ProcessRunnerChunkListener)
+	 */
+	public ProcessRunnerChunkListener getChunkListener() {
+		return chunkListener;
+	}
+
+
+	/**
+	 * Returns the command line this external process runner will run.
+	 *
+	 * @return The command line.  This should not be modified.
+	 */
+	String[] getCommandLine() {
+		return commandLine;
+	}
+
+
 	/**
 	 * Returns the command line this external process runner will run as a
 	 * string.  Parameters are wrapped in quotes.
@@ -161,6 +283,18 @@ public class ProcessRunner implements Runnable {
 	}
 
 
+	/**
+	 * Returns the input written to the stdin of processes, if any.
+	 *
+	 * @return The input, or <code>null</code> if stdin is closed
+	 *         immediately.
+	 * @see #setInput(ProcessInput)
+	 */
+	public ProcessInput getInput() {
+		return input;
+	}
+
+
 	/**
 	 * Returns the last error thrown when trying to run a process, or
 	 * <code>null</code> if the last process ran successfully.
@@ -172,6 +306,29 @@ public class ProcessRunner implements Runnable {
 	}
 
 
+	/**
+	 * Returns how the stdout and stderr of processes are kept.
+	 *
+	 * @return The capture policy.
+	 * @see #setOutputCapture(OutputCapture.Policy)
+	 */
+	public OutputCapture.Policy getOutputCapture() {
+		return capturePolicy;
+	}
+
+
+	/**
+	 * Returns the pump used to read the output of processes, if any.
+	 *
+	 * @return The output pump, or <code>null</code> if each process's
+	 *         output is read with two new threads.
+	 * @see #setOutputPump(ProcessOutputPump)
+	 */
+	public ProcessOutputPump getOutputPump() {
+		return outputPump;
+	}
+
+
 	/**
 	 * Returns the return code of the last process ran.
 	 *
@@ -183,27 +340,62 @@ public class ProcessRunner implements Runnable {
 
 
 	/**
-	 * Returns the stderr of the process last ran.
+	 * Returns the stderr of the process last ran.  Depending on the capture
+	 * policy, this may be only the end of the output.
 	 *
 	 * @return The stderr of the last process ran.
+	 * @see #getStderrCapture()
+	 * @see #setOutputCapture(OutputCapture.Policy)
 	 */
 	public String getStderr() {
+		return stderr==null ? null : stderr.getOutput();
+	}
+
+
+	/**
+	 * Returns the stderr of the process last ran, for reading without
+	 * loading it into a <code>String</code>.
+	 *
+	 * @return The stderr of the last process ran, or <code>null</code> if
+	 *         it did not complete.
+	 * @see #getStderr()
+	 */
+	public OutputCapture getStderrCapture() {
 		return stderr;
 	}
 
 
 	/**
-	 * Returns the stdout of the process last ran.
+	 * Returns the stdout of the process last ran.  Depending on the capture
+	 * policy, this may be only the end of the output.
 	 *
 	 * @return The stdout of the last process ran.
+	 * @see #getStdoutCapture()
+	 * @see #setOutputCapture(OutputCapture.Policy)
 	 */
 	public String getStdout() {
+		return stdout==null ? null : stdout.getOutput();
+	}
+
+
+	/**
+	 * Returns the stdout of the process last ran, for reading without
+	 * loading it into a <code>String</code>.
+	 *
+	 * @return The stdout of the last process ran, or <code>null</code> if
+	 *         it did not complete.
+	 * @see #getStdout()
+	 */
+	public OutputCapture getStdoutCapture() {
 		return stdout;
 	}
 
 
 	/**
-	 * Runs the current external process.
+	 * Runs the current external process.  If the calling thread is
+	 * interrupted, the process and any processes it started are destroyed,
+	 * and this method returns with an <code>InterruptedException</code> as
+	 * the last error.
 	 *
 	 * @see #getStdout()
 	 * @see #getStderr()
@@ -216,7 +408,7 @@ public class ProcessRunner implements Runnable {
 		Process proc = null;
 		String[] envp = createEnvVarArray();
 		try {
-			proc = Runtime.getRuntime().exec(commandLine, envp, dir);
+			proc = exec(envp);
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			lastError = ioe;
@@ -226,22 +418,122 @@ public class ProcessRunner implements Runnable {
 			return;
 		}
 
-		// Create threads to read the stdout and stderr of the external
-		// process.  If we do not do it this way, the process may
-		// deadlock.
+		// Write stdin on another thread, since the process may not read
+		// more input until we read its output.  If there is no input, close
+		// stdin so the process does not wait for input that never comes.
+		StdinWriter stdinWriter = null;
+		if (input!=null) {
+			stdinWriter = new StdinWriter(proc.getOutputStream(), input);
+			if (outputPump!=null) {
+				outputPump.execute(stdinWriter);
+			}
+			else {
+				Thread t = new Thread(stdinWriter, "ProcessRunner-stdin");
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+		else {
+			try {
+				proc.getOutputStream().close();
+			} catch (IOException ioe) {
+				// Process has already exited
+			}
+		}
+
+		// Read the stdout and stderr of the external process while it runs,
+		// either on threads of our own or on a shared pump.  If we do not
+		// do it this way, the process may deadlock.
+		boolean completed = outputPump!=null ? runWithPump(proc) :
+										runWithThreads(proc);
+
+		if (stdinWriter!=null) {
+			if (completed) {
+				try {
+					stdinWriter.await();
+					if (lastError==null) {
+						lastError = stdinWriter.getError();
+					}
+				} catch (InterruptedException ie) {
+					stdinWriter.cancel();
+					lastError = ie;
+				}
+			}
+			else {
+				stdinWriter.cancel();
+			}
+		}
+
+		if (outputListener!=null) {
+			outputListener.processCompleted(completed ? null : proc, rc,
+											lastError);
+		}
+
+	}
+
+
+	/**
+	 * Waits for a process to complete, reading its output with this
+	 * runner's output pump.
+	 *
+	 * @param proc The process.
+	 * @return Whether the process completed, as opposed to being destroyed
+	 *         because this thread was interrupted.
+	 * @see #setOutputPump(ProcessOutputPump)
+	 */
+	private boolean runWithPump(Process proc) {
+
+		ProcessOutputPump.Stream out = outputPump.add(proc,
+							proc.getInputStream(), outputListener, true,
+							chunkListener, capturePolicy.create());
+		ProcessOutputPump.Stream err = outputPump.add(proc,
+							proc.getErrorStream(), outputListener, false,
+							chunkListener, capturePolicy.create());
+
+		try {
+			rc = proc.waitFor();
+			out.await();
+			err.await();
+			stdout = out.getCapture();
+			stderr = err.getCapture();
+			return true;
+		} catch (InterruptedException ie) {
+			destroyTree(proc);
+			out.cancel();
+			err.cancel();
+			out.getCapture().dispose();
+			err.getCapture().dispose();
+			lastError = ie;
+			return false;
+		}
+
+	}
+
+
+	/**
+	 * Waits for a process to complete, reading its output with two new
+	 * threads.
+	 *
+	 * @param proc The process.
+	 * @return Whether the process completed, as opposed to being destroyed
+	 *         because this thread was interrupted.
+	 */
+	private boolean runWithThreads(Process proc) {
+
 		InputStream errStream = proc.getErrorStream();
 		InputStream outStream = proc.getInputStream();
 		StreamReaderThread stdoutThread = new StreamReaderThread(proc,
-										outStream, outputListener, true);
+				outStream, outputListener, true, chunkListener,
+				capturePolicy.create());
 		StreamReaderThread stderrThread = new StreamReaderThread(proc,
-										errStream, outputListener, false);
+				errStream, outputListener, false, chunkListener,
+				capturePolicy.create());
 		stdoutThread.start();
 		stderrThread.start();
 
 		try {
 
 			rc = proc.waitFor();
-			proc = null;
 
 			// Save the stdout and stderr. Don't interrupt reader threads;
 			// just wait for them to terminate normally.
@@ -249,24 +541,45 @@ public class ProcessRunner implements Runnable {
 			//stderrThread.interrupt();
 			stdoutThread.join();
 			stderrThread.join();
-			stdout = stdoutThread.getStreamOutput();
-			stderr = stderrThread.getStreamOutput();
+			stdout = stdoutThread.getCapture();
+			stderr = stderrThread.getCapture();
+			return true;
 
 		} catch (InterruptedException ie) {
+			// Interrupted while waiting for the process, or for its output
+			// (e.g. a child process still has the pipes open).  Either way,
+			// treat it as not completed, as runWithPump() does.
 			//ie.printStackTrace();
+			destroyTree(proc);
 			stdoutThread.interrupt();
 			stderrThread.interrupt();
+			close(outStream);
+			close(errStream);
+			stdoutThread.getCapture().dispose();
+			stderrThread.getCapture().dispose();
 			lastError = ie;
-		} finally {
-			if (proc!=null) {
-				proc.destroy();
-			}
+			return false;
 		}
 
-		if (outputListener!=null) {
-			outputListener.processCompleted(proc, rc, lastError);
-		}
+	}
 
+
+	/**
+	 * Sets a listener to receive the raw output of processes, as chunks of
+	 * bytes.  While one is set, output is not decoded or split into lines:
+	 * the output listener is not notified of output (though it is still
+	 * notified when processes complete), and no output is captured, so
+	 * {@link #getStdout()} and {@link #getStderr()} return only error
+	 * messages, if any.  This is much faster for processes that write a
+	 * lot of output, and is the only way to read binary output intact.
+	 *
+	 * @param listener The listener, or <code>null</code> to split output
+	 *        into lines.
+	 * @see #getChunkListener()
+	 * @see LineFramer
+	 */
+	public void setChunkListener(ProcessRunnerChunkListener listener) {
+		this.chunkListener = listener;
 	}
 
 
@@ -326,6 +639,42 @@ public class ProcessRunner implements Runnable {
 	}
 
 
+	/**
+	 * Sets the input to write to the stdin of processes.  Input is written
+	 * on a separate thread (a virtual thread, if the output pump uses
+	 * them), and stdin is closed once it has all been written.  If the
+	 * input cannot be read, e.g. a file is missing, the error becomes the
+	 * last error, though the process still runs.
+	 *
+	 * @param input The input, or <code>null</code> to close stdin as soon
+	 *        as each process starts.  This is the default.
+	 * @see #getInput()
+	 */
+	public void setInput(ProcessInput input) {
+		this.input = input;
+	}
+
+
+	/**
+	 * Sets how the stdout and stderr of processes are kept.  By default,
+	 * all output is kept in memory, which may be a lot for a chatty
+	 * process.
+	 *
+	 * @param policy The capture policy.
+	 * @throws NullPointerException If <code>policy</code> is
+	 *         <code>null</code>.
+	 * @see #getOutputCapture()
+	 * @see OutputCapture#lastLines(int)
+	 * @see OutputCapture#spillToFile(int, File)
+	 */
+	public void setOutputCapture(OutputCapture.Policy policy) {
+		if (policy==null) {
+			throw new NullPointerException("policy cannot be null");
+		}
+		this.capturePolicy = policy;
+	}
+
+
 	/**
 	 * Sets the output listener to receive notification when stdout or
 	 * stderr is written to.  This listener will be used for all
@@ -340,6 +689,146 @@ public class ProcessRunner implements Runnable {
 	}
 
 
+	/**
+	 * Sets the pump used to read the stdout and stderr of processes.  By
+	 * default, two new threads are created to read the output of each
+	 * process; a pump shared by many runners avoids this overhead when
+	 * running many short processes.  Output listeners are notified as
+	 * before, though on the pump's threads.
+	 *
+	 * @param pump The output pump, or <code>null</code> to read each
+	 *        process's output with two new threads.
+	 * @see #getOutputPump()
+	 * @see ProcessOutputPump#getShared()
+	 */
+	public void setOutputPump(ProcessOutputPump pump) {
+		this.outputPump = pump;
+	}
+
+
+	/**
+	 * Writes input to the stdin of an external process, then closes it.
+	 */
+	static class StdinWriter implements Runnable {
+
+		private WriteTrackingStream out;
+		private ProcessInput input;
+		private Throwable error;
+		private boolean done;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param out The stdin of the process.
+		 * @param input The input to write.
+		 */
+		StdinWriter(OutputStream out, ProcessInput input) {
+			this.out = new WriteTrackingStream(out);
+			this.input = input;
+		}
+
+		/**
+		 * Waits for all input to be written.
+		 *
+		 * @throws InterruptedException If the calling thread is
+		 *         interrupted.
+		 */
+		synchronized void await() throws InterruptedException {
+			while (!done) {
+				wait();
+			}
+		}
+
+		/**
+		 * Stops writing input by closing stdin.
+		 */
+		void cancel() {
+			try {
+				out.close();
+			} catch (IOException ioe) {
+				// Ignore
+			}
+		}
+
+		/**
+		 * Returns the error that occurred reading the input, if any.
+		 *
+		 * @return The error, or <code>null</code> if none occurred.
+		 */
+		synchronized Throwable getError() {
+			return error;
+		}
+
+		@Override
+		public void run() {
+			Throwable error = null;
+			try {
+				input.writeTo(out);
+			} catch (IOException ioe) {
+				if (!out.failed) { // Else the process did not read it all
+					error = ioe;
+				}
+			} catch (RuntimeException re) {
+				error = re;
+			} finally {
+				cancel();
+				synchronized (this) {
+					this.error = error;
+					done = true;
+					notifyAll();
+				}
+			}
+		}
+
+	}
+
+
+	/**
+	 * Notes whether writing to the stdin of a process failed, to tell
+	 * errors writing to the process (it exited early) from errors reading
+	 * the input.
+	 */
+	private static class WriteTrackingStream extends FilterOutputStream {
+
+		private volatile boolean failed;
+
+		WriteTrackingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			try {
+				out.flush();
+			} catch (IOException ioe) {
+				failed = true;
+				throw ioe;
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			try {
+				out.write(b);
+			} catch (IOException ioe) {
+				failed = true;
+				throw ioe;
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			try {
+				out.write(b, off, len);
+			} catch (IOException ioe) {
+				failed = true;
+				throw ioe;
+			}
+		}
+
+	}
+
+
 	/**
 	 * A thread dedicated to reading either the stdout or stderr stream of
 	 * an external process.  These streams are read in a dedicated thread
@@ -353,9 +842,10 @@ public class ProcessRunner implements Runnable {
 	static class StreamReaderThread extends Thread {
 
 		private Process p;
-		private BufferedReader r;
-		private StringBuilder buffer;
+		private InputStream in;
+		private OutputCapture capture;
 		private ProcessRunnerOutputListener listener;
+		private ProcessRunnerChunkListener chunkListener;
 		private boolean isStdout;
 
 		/**
@@ -367,13 +857,19 @@ public class ProcessRunner implements Runnable {
 		 *        read.  This can be <code>null</code>.
 		 * @param isStdout Whether this thread is reading stdout (as opposed
 		 *        to stderr).
+		 * @param chunkListener If non-<code>null</code>, the raw output is
+		 *        passed to this listener instead of being split into lines.
+		 * @param capture Receives the output read.
 		 */
 		StreamReaderThread(Process p, InputStream in,
 							ProcessRunnerOutputListener listener,
-							boolean isStdout) {
+							boolean isStdout,
+							ProcessRunnerChunkListener chunkListener,
+							OutputCapture capture) {
 			this.p = p;
-			r = new BufferedReader(new InputStreamReader(in));
-			this.buffer = new StringBuilder();
+			this.in = in;
+			this.chunkListener = chunkListener;
+			this.capture = capture;
 			this.listener = listener;
 			this.isStdout = isStdout;
 		}
@@ -381,10 +877,10 @@ public class ProcessRunner implements Runnable {
 		/**
 		 * Returns the output read from the stream.
 		 *
-		 * @return The stream's output, as a <code>String</code>.
+		 * @return The stream's output.
 		 */
-		public String getStreamOutput() {
-			return buffer.toString();
+		public OutputCapture getCapture() {
+			return capture;
 		}
 
 		/**
@@ -393,17 +889,43 @@ public class ProcessRunner implements Runnable {
 		 */
 		@Override
 		public void run() {
+			if (chunkListener!=null) {
+				readChunks();
+				return;
+			}
+			BufferedReader r = new BufferedReader(new InputStreamReader(in));
 			String line;
 			try {
 				while ((line=r.readLine())!=null) {
-					buffer.append(line).append('\n');
+					capture.appendLine(line);
 					if (listener!=null) {
 						listener.outputWritten(p, line, isStdout);
 					}
 				}
 			} catch (IOException ioe) {
-				buffer.append("IOException occurred: " + ioe.getMessage());
+				capture.appendText("IOException occurred: " + ioe.getMessage());
+			}
+			capture.finish();
+		}
+
+		/**
+		 * Passes the raw output to the chunk listener until the stream
+		 * ends.
+		 */
+		private void readChunks() {
+			byte[] buf = new byte[8192];
+			ByteBuffer chunk = ByteBuffer.wrap(buf);
+			try {
+				int count;
+				while ((count=in.read(buf))!=-1) {
+					chunk.clear().limit(count);
+					chunkListener.chunkRead(p, chunk, isStdout);
+				}
+			} catch (IOException ioe) {
+				capture.appendText("IOException occurred: " + ioe.getMessage());
 			}
+			capture.finish();
+			chunkListener.streamClosed(p, isStdout);
 		}
 
 	}
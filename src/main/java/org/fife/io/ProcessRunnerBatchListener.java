@@ -0,0 +1,45 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessRunnerBatchListener.java - Receives notification of lines
+ * written to stdout/stderr from a ProcessRunner, in batches.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+
+/**
+ * Listens for lines being written to stdout and stderr by a
+ * <code>ProcessRunner</code>, a batch at a time.  A listener receives
+ * batches through a {@link BatchingOutputListener}.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ */
+public interface ProcessRunnerBatchListener {
+
+
+	/**
+	 * Called when output was written to stdout or stderr.
+	 *
+	 * @param batch The lines written.
+	 */
+	void outputWritten(OutputBatch batch);
+
+
+	/**
+	 * Called when the process completes, after all of its output has been
+	 * delivered.
+	 *
+	 * @param p The process that completed.
+	 * @param rc The return code, or {@link Integer#MIN_VALUE} if the process
+	 *        terminated abnormally.
+	 * @param e An exception.  This will be <code>null</code> if the process
+	 *        terminated normally, or ended abruptly but somehow without
+	 *        throwing an exception.
+	 */
+	void processCompleted(Process p, int rc, Throwable e);
+
+
+}
\ No newline at end of file
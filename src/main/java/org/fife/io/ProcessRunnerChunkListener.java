@@ -0,0 +1,51 @@
+/*
+ * 10/17/2026
+ *
+ * ProcessRunnerChunkListener.java - Receives the raw bytes written to
+ * stdout/stderr by a ProcessRunner.
+ *
+ * This class is public domain.  Use however you see fit.
+ */
+package org.fife.io;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Listens for the raw bytes written to stdout and stderr by a
+ * <code>ProcessRunner</code>, as they are read.  This avoids decoding and
+ * splitting output into lines, for binary output or output with very long
+ * lines.  To receive lines anyway, for example in a charset other than the
+ * platform default, use a {@link LineFramer}.
+ *
+ * @author Robert Futrell
+ * @version 1.0
+ * @see ProcessRunner#setChunkListener(ProcessRunnerChunkListener)
+ */
+public interface ProcessRunnerChunkListener {
+
+
+	/**
+	 * Called when output was read from stdout or stderr.
+	 *
+	 * @param p The process running.
+	 * @param chunk The output read, from its position to its limit.  This
+	 *        buffer is only valid during this call; its contents should be
+	 *        copied if they are needed later.
+	 * @param stdout If <code>true</code>, this is stdout output.
+	 *        If <code>false</code>, it is stderr.
+	 */
+	void chunkRead(Process p, ByteBuffer chunk, boolean stdout);
+
+
+	/**
+	 * Called when all of stdout or stderr has been read.
+	 *
+	 * @param p The process running.
+	 * @param stdout If <code>true</code>, stdout has ended.
+	 *        If <code>false</code>, stderr has.
+	 */
+	void streamClosed(Process p, boolean stdout);
+
+
+}
\ No newline at end of file